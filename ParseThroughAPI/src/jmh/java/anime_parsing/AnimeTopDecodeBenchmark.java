@@ -0,0 +1,40 @@
+package anime_parsing;
+
+import bench.Fixtures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one Jikan /top/anime page (25 items) with the mapper FetchTop.createDefault builds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnimeTopDecodeBenchmark {
+
+    private ObjectReader reader;
+    private byte[] page;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = new ObjectMapper()
+                .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+                .findAndRegisterModules();
+        reader = mapper.readerFor(AnimeTopResult.class);
+        page = Fixtures.topAnimePage(Fixtures.TOP_ANIME_PAGE_SIZE, 42L).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public AnimeTopResult decodePage() throws IOException {
+        return reader.readValue(page);
+    }
+}
@@ -0,0 +1,136 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * Deterministic payloads shaped like the real responses: a MAL load.json page carries 300 entries
+ * with ~40 fields each (most of them ignored by UserAnimeEntry), a Jikan /top/anime page 25 items
+ * with nested producers, genres and a long synopsis.
+ */
+public final class Fixtures {
+
+    public static final int LOAD_JSON_PAGE_SIZE = 300;
+    public static final int TOP_ANIME_PAGE_SIZE = 25;
+
+    private static final String[] SEASONS = {"winter", "spring", "summer", "fall"};
+    private static final String[] STUDIOS = {"Madhouse", "Bones", "Sunrise", "Kyoto Animation", "MAPPA", "Wit Studio"};
+    private static final String[] GENRES = {"Action", "Comedy", "Drama", "Fantasy", "Romance", "Sci-Fi", "Slice of Life"};
+
+    private Fixtures() {}
+
+    public static String loadJsonPage(int entries, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder(entries * 1_400);
+        sb.append('[');
+        long now = 1_717_000_000L;
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) sb.append(',');
+            int animeId = 1 + rnd.nextInt(60_000);
+            int episodes = 1 + rnd.nextInt(64);
+            long updated = now - (long) i * 3_600 - rnd.nextInt(3_600);
+            sb.append('{')
+                    .append("\"status\":").append(1 + rnd.nextInt(4)).append(',')
+                    .append("\"score\":").append(rnd.nextInt(11)).append(',')
+                    .append("\"tags\":\"\",")
+                    .append("\"is_rewatching\":0,")
+                    .append("\"num_watched_episodes\":").append(rnd.nextInt(episodes + 1)).append(',')
+                    .append("\"created_at\":").append(updated - 86_400L * rnd.nextInt(900)).append(',')
+                    .append("\"updated_at\":").append(updated).append(',')
+                    .append("\"anime_title\":\"Title ").append(animeId).append("\",")
+                    .append("\"anime_title_eng\":\"English Title ").append(animeId).append("\",")
+                    .append("\"anime_num_episodes\":").append(episodes).append(',')
+                    .append("\"anime_airing_status\":2,")
+                    .append("\"anime_id\":").append(animeId).append(',')
+                    .append("\"anime_studios\":null,")
+                    .append("\"anime_licensors\":null,")
+                    .append("\"anime_season\":{\"year\":").append(1990 + rnd.nextInt(35))
+                    .append(",\"season\":\"").append(SEASONS[rnd.nextInt(4)]).append("\"},")
+                    .append("\"anime_total_members\":").append(rnd.nextInt(3_000_000)).append(',')
+                    .append("\"anime_total_scores\":").append(rnd.nextInt(2_000_000)).append(',')
+                    .append("\"anime_score_val\":").append(5 + rnd.nextInt(500) / 100.0).append(',')
+                    .append("\"has_episode_video\":false,")
+                    .append("\"has_promotion_video\":true,")
+                    .append("\"has_video\":true,")
+                    .append("\"video_url\":\"/anime/").append(animeId).append("/video\",")
+                    .append("\"genres\":[{\"id\":1,\"name\":\"Action\"},{\"id\":8,\"name\":\"Drama\"}],")
+                    .append("\"demographics\":[],")
+                    .append("\"title_localized\":null,")
+                    .append("\"anime_url\":\"/anime/").append(animeId).append("/Title_").append(animeId).append("\",")
+                    .append("\"anime_image_path\":\"https://cdn.myanimelist.net/r/192x272/images/anime/")
+                    .append(rnd.nextInt(1_000)).append('/').append(animeId).append(".webp\",")
+                    .append("\"is_added_to_list\":false,")
+                    .append("\"anime_media_type_string\":\"TV\",")
+                    .append("\"anime_mpaa_rating_string\":\"PG-13\",")
+                    .append("\"start_date_string\":null,")
+                    .append("\"finish_date_string\":null,")
+                    .append("\"anime_start_date_string\":\"04-01-").append(10 + rnd.nextInt(15)).append("\",")
+                    .append("\"anime_end_date_string\":\"09-30-").append(10 + rnd.nextInt(15)).append("\",")
+                    .append("\"days_string\":null,")
+                    .append("\"storage_string\":\"\",")
+                    .append("\"priority_string\":\"Low\",")
+                    .append("\"notes\":\"\",")
+                    .append("\"editable_notes\":\"\"")
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    public static String topAnimePage(int items, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder(items * 4_000);
+        sb.append("{\"pagination\":{\"last_visible_page\":1100,\"has_next_page\":true,\"current_page\":1,")
+                .append("\"items\":{\"count\":").append(items).append(",\"total\":27500,\"per_page\":").append(items)
+                .append("}},\"data\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) sb.append(',');
+            int id = 1 + rnd.nextInt(60_000);
+            sb.append('{')
+                    .append("\"mal_id\":").append(id).append(',')
+                    .append("\"url\":\"https://myanimelist.net/anime/").append(id).append("/Title_").append(id).append("\",")
+                    .append("\"images\":{\"jpg\":{\"image_url\":\"https://cdn.myanimelist.net/images/anime/1/").append(id)
+                    .append(".jpg\"}},")
+                    .append("\"approved\":true,")
+                    .append("\"title\":\"Title ").append(id).append("\",")
+                    .append("\"title_english\":\"English Title ").append(id).append("\",")
+                    .append("\"title_japanese\":\"\\u30bf\\u30a4\\u30c8\\u30eb\",")
+                    .append("\"type\":\"TV\",\"source\":\"Manga\",")
+                    .append("\"episodes\":").append(1 + rnd.nextInt(64)).append(',')
+                    .append("\"status\":\"Finished Airing\",\"airing\":false,")
+                    .append("\"aired\":{\"from\":\"2009-04-05T00:00:00+00:00\",\"to\":\"2010-07-04T00:00:00+00:00\"},")
+                    .append("\"duration\":\"24 min per ep\",")
+                    .append("\"rating\":\"R - 17+ (violence & profanity)\",")
+                    .append("\"score\":").append(7 + rnd.nextInt(300) / 100.0).append(',')
+                    .append("\"scored_by\":").append(rnd.nextInt(2_500_000)).append(',')
+                    .append("\"rank\":").append(i + 1).append(',')
+                    .append("\"popularity\":").append(1 + rnd.nextInt(20_000)).append(',')
+                    .append("\"members\":").append(rnd.nextInt(4_000_000)).append(',')
+                    .append("\"synopsis\":\"").append("Long synopsis sentence about the story. ".repeat(30)).append("\",")
+                    .append("\"background\":\"").append("Background note. ".repeat(10)).append("\",")
+                    .append("\"season\":\"").append(SEASONS[rnd.nextInt(4)]).append("\",")
+                    .append("\"year\":").append(1990 + rnd.nextInt(35)).append(',');
+            appendRefs(sb, "producers", "anime", STUDIOS, 3, rnd).append(',');
+            appendRefs(sb, "licensors", "anime", STUDIOS, 1, rnd).append(',');
+            appendRefs(sb, "studios", "anime", STUDIOS, 1, rnd).append(',');
+            appendRefs(sb, "genres", "anime", GENRES, 3, rnd).append(',');
+            appendRefs(sb, "themes", "anime", GENRES, 1, rnd).append(',');
+            appendRefs(sb, "demographics", "anime", new String[]{"Shounen", "Seinen"}, 1, rnd);
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static StringBuilder appendRefs(StringBuilder sb, String field, String type, String[] names,
+                                            int count, Random rnd) {
+        sb.append('"').append(field).append("\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            int id = 1 + rnd.nextInt(names.length * 10);
+            String name = names[rnd.nextInt(names.length)];
+            sb.append("{\"mal_id\":").append(id)
+                    .append(",\"type\":\"").append(type)
+                    .append("\",\"name\":\"").append(name)
+                    .append("\",\"url\":\"https://myanimelist.net/anime/producer/").append(id).append("\"}");
+        }
+        return sb.append(']');
+    }
+}
@@ -0,0 +1,99 @@
+package bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+
+/**
+ * Read-only in-memory ResultSet with the column mix of the eval export
+ * (user_id, anime_id, score, status, episodes_watched, rating, last_updated), about 10% NULL cells.
+ * Values are generated up front, so a benchmark measures the consumer, not the generator.
+ * Only the getters used by ColumnWriterPlan are implemented; {@link #rewind()} restarts iteration.
+ */
+public final class SyntheticResultSet implements InvocationHandler {
+
+    private static final String[] LABELS =
+            {"user_id", "anime_id", "score", "status", "episodes_watched", "rating", "last_updated"};
+    private static final int[] TYPES =
+            {Types.INTEGER, Types.BIGINT, Types.INTEGER, Types.VARCHAR, Types.INTEGER, Types.DOUBLE, Types.TIMESTAMP};
+    private static final String[] TYPE_NAMES = {"int4", "int8", "int4", "varchar", "int4", "float8", "timestamp"};
+    private static final String[] STATUSES = {"watching", "completed", "on_hold", "dropped", "plan_to_watch"};
+
+    private final Object[][] rows;
+    private final ResultSetMetaData metaData;
+    private int cursor = -1;
+    private boolean lastNull;
+
+    private SyntheticResultSet(int rowCount, long seed) {
+        Random rnd = new Random(seed);
+        rows = new Object[rowCount][];
+        long base = 1_700_000_000_000L;
+        for (int r = 0; r < rowCount; r++) {
+            boolean nulls = rnd.nextInt(10) == 0;
+            rows[r] = new Object[]{
+                    1 + rnd.nextInt(500_000),
+                    (long) (1 + rnd.nextInt(60_000)),
+                    nulls ? null : 1 + rnd.nextInt(10),
+                    STATUSES[rnd.nextInt(STATUSES.length)],
+                    rnd.nextInt(64),
+                    nulls ? null : rnd.nextInt(1_000) / 100.0,
+                    nulls ? null : new Timestamp(base - rnd.nextInt(1_000_000_000))
+            };
+        }
+        metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getColumnCount" -> LABELS.length;
+                    case "getColumnLabel", "getColumnName" -> LABELS[(Integer) args[0] - 1];
+                    case "getColumnType" -> TYPES[(Integer) args[0] - 1];
+                    case "getColumnTypeName" -> TYPE_NAMES[(Integer) args[0] - 1];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    public static SyntheticResultSet create(int rowCount, long seed) {
+        return new SyntheticResultSet(rowCount, seed);
+    }
+
+    public ResultSet resultSet() {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, this);
+    }
+
+    public void rewind() {
+        cursor = -1;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "next":
+                return ++cursor < rows.length;
+            case "wasNull":
+                return lastNull;
+            case "getMetaData":
+                return metaData;
+            case "close":
+                return null;
+            case "isClosed":
+                return false;
+            default:
+                break;
+        }
+        Object v = rows[cursor][(Integer) args[0] - 1];
+        lastNull = v == null;
+        return switch (method.getName()) {
+            case "getInt" -> v == null ? 0 : ((Number) v).intValue();
+            case "getLong" -> v == null ? 0L : ((Number) v).longValue();
+            case "getDouble" -> v == null ? 0.0 : ((Number) v).doubleValue();
+            case "getBoolean" -> v != null && (Boolean) v;
+            case "getString" -> v == null ? null : v.toString();
+            case "getTimestamp", "getObject" -> v;
+            default -> throw new UnsupportedOperationException(method.getName());
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package mapper;
+
+import bench.Fixtures;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import data.UserAnimeStat;
+import org.openjdk.jmh.annotations.*;
+import user_parsing.UserAnimeEntry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserAnimeStatMapper.apply over one decoded load.json page: score and status mapping
+ * and the updated_at conversion, without the EntityManager lookup around it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserAnimeStatMapperBenchmark {
+
+    private List<UserAnimeEntry> entries;
+    private UserAnimeStat[] entities;
+
+    @Setup
+    public void setUp() throws IOException {
+        entries = new ObjectMapper().readValue(Fixtures.loadJsonPage(Fixtures.LOAD_JSON_PAGE_SIZE, 42L),
+                new TypeReference<List<UserAnimeEntry>>() {});
+        entities = new UserAnimeStat[entries.size()];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new UserAnimeStat();
+            entities[i].setUserId(7);
+            entities[i].setAnimeId(entries.get(i).animeId);
+        }
+    }
+
+    @Benchmark
+    public UserAnimeStat[] applyPage() {
+        for (int i = 0; i < entities.length; i++) UserAnimeStatMapper.apply(entities[i], entries.get(i));
+        return entities;
+    }
+}
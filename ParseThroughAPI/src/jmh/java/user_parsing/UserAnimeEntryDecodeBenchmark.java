@@ -0,0 +1,42 @@
+package user_parsing;
+
+import bench.Fixtures;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one load.json page (300 entries) with the reader configuration FetchUsers uses.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserAnimeEntryDecodeBenchmark {
+
+    private ObjectReader reader;
+    private byte[] page;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = new ObjectMapper()
+                .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+                .findAndRegisterModules();
+        reader = mapper.readerFor(new TypeReference<List<UserAnimeEntry>>() {});
+        page = Fixtures.loadJsonPage(Fixtures.LOAD_JSON_PAGE_SIZE, 42L).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<UserAnimeEntry> decodePage() throws IOException {
+        return reader.readValue(page);
+    }
+}
@@ -0,0 +1,70 @@
+package utils;
+
+import bench.SyntheticResultSet;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-cell conversion of the Parquet export: ColumnWriterPlan.write over 1000 synthetic rows into a
+ * RecordConsumer that only hands values to a Blackhole, so encoding and compression are left out.
+ * The synthetic ResultSet is a dynamic proxy; its dispatch cost is the same in every run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnWriterPlanBenchmark {
+
+    private static final int ROWS = 1_000;
+
+    @Param({"false", "true"})
+    public boolean anonymizeUserId;
+
+    private SyntheticResultSet source;
+    private ResultSet rs;
+    private ColumnWriterPlan plan;
+
+    @Setup
+    public void setUp() throws SQLException {
+        source = SyntheticResultSet.create(ROWS, 42L);
+        rs = source.resultSet();
+        plan = ColumnWriterPlan.fromMetaData(rs.getMetaData(), anonymizeUserId ? Set.of("user_id") : null);
+    }
+
+    @Benchmark
+    public void writeRows(Blackhole bh) throws SQLException {
+        source.rewind();
+        RecordConsumer rc = new BlackholeConsumer(bh);
+        while (rs.next()) plan.write(rs, rc);
+    }
+
+    private static final class BlackholeConsumer extends RecordConsumer {
+        private final Blackhole bh;
+
+        BlackholeConsumer(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override public void startMessage() {}
+        @Override public void endMessage() {}
+        @Override public void startField(String field, int index) {}
+        @Override public void endField(String field, int index) {}
+        @Override public void startGroup() {}
+        @Override public void endGroup() {}
+        @Override public void addInteger(int value) { bh.consume(value); }
+        @Override public void addLong(long value) { bh.consume(value); }
+        @Override public void addBoolean(boolean value) { bh.consume(value); }
+        @Override public void addBinary(Binary value) { bh.consume(value); }
+        @Override public void addFloat(float value) { bh.consume(value); }
+        @Override public void addDouble(double value) { bh.consume(value); }
+    }
+}
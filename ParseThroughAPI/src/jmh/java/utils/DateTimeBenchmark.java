@@ -0,0 +1,75 @@
+package utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parseToOffsetDateTime per input shape; the shapes are the ones seen on ingest:
+ * epoch seconds from load.json, ISO instants and offsets from Jikan, and local date-times.
+ * rfc1123 is the java.time fallback; parseToLocalDate is measured on the MM-dd-yy birthdays.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateTimeBenchmark {
+
+    @Param({"epoch", "instant", "offset", "local", "rfc1123"})
+    public String shape;
+
+    private String[] inputs;
+    private Long[] epochs;
+    private long[] primitiveEpochs;
+    private String[] birthdays;
+
+    @Setup
+    public void setUp() {
+        inputs = new String[64];
+        epochs = new Long[64];
+        primitiveEpochs = new long[64];
+        birthdays = new String[64];
+        for (int i = 0; i < inputs.length; i++) {
+            long epoch = 1_700_000_000L + i * 86_413L;
+            epochs[i] = epoch;
+            primitiveEpochs[i] = epoch;
+            OffsetDateTime t = OffsetDateTime.ofInstant(Instant.ofEpochSecond(epoch), ZoneOffset.UTC);
+            inputs[i] = switch (shape) {
+                case "epoch" -> Long.toString(epoch);
+                case "instant" -> t.toInstant().toString();
+                case "offset" -> t.withOffsetSameInstant(ZoneOffset.ofHours(9)).toString();
+                case "local" -> t.toLocalDateTime().toString();
+                case "rfc1123" -> DateTimeFormatter.RFC_1123_DATE_TIME.format(t);
+                default -> throw new IllegalArgumentException(shape);
+            };
+            birthdays[i] = DateTimeFormatter.ofPattern("MM-dd-yy").format(t);
+        }
+    }
+
+    @Benchmark
+    public void parseString(Blackhole bh) {
+        for (String s : inputs) bh.consume(DateTime.parseToOffsetDateTime(s));
+    }
+
+    @Benchmark
+    public void parseEpochLong(Blackhole bh) {
+        for (Long e : epochs) bh.consume(DateTime.parseToOffsetDateTime(e));
+    }
+
+    @Benchmark
+    public void parseEpochPrimitive(Blackhole bh) {
+        for (long e : primitiveEpochs) bh.consume(DateTime.parseToOffsetDateTime(e));
+    }
+
+    @Benchmark
+    public void parseLocalDate(Blackhole bh) {
+        for (String s : birthdays) bh.consume(DateTime.parseToLocalDate(s));
+    }
+}
@@ -0,0 +1,63 @@
+import recommendation.ItemNeighbours;
+import recommendation.ItemSimilarity;
+import recommendation.RatingLoader;
+import recommendation.RatingMatrix;
+import utils.Metrics;
+import utils.SimpleDataExtract;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+public class BuildingItemRecommendations {
+
+    public static void main(String[] args) throws Exception {
+        Metrics.start();
+        Properties dbProps = new Properties();
+        String dbUrl = System.getProperty("hibernate.hikari.dataSource.url",
+                System.getenv().getOrDefault("DB_URL", "jdbc:postgresql://localhost:5432/anime_db"));
+        String dbUser = System.getProperty("hibernate.hikari.dataSource.user",
+                System.getenv().getOrDefault("DB_USER", "rudeus"));
+        String dbPass = System.getProperty("hibernate.hikari.dataSource.password",
+                System.getenv().getOrDefault("DB_PASS", "sylphi_pants"));
+
+        int neighbours = Integer.parseInt(System.getenv().getOrDefault(
+                "ITEM_NEIGHBOURS", "50"));
+        int minCommonUsers = Integer.parseInt(System.getenv().getOrDefault(
+                "ITEM_MIN_COMMON_USERS", "5"));
+        ItemSimilarity.Measure measure = ItemSimilarity.Measure.valueOf(System.getenv().getOrDefault(
+                "ITEM_SIMILARITY", "adjusted_cosine").toUpperCase(Locale.ROOT));
+        int threads = Integer.parseInt(System.getenv().getOrDefault(
+                "RECOMMENDER_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        dbProps.setProperty("jdbc.url", dbUrl);
+        dbProps.setProperty("jdbc.user", dbUser);
+        dbProps.setProperty("jdbc.password", dbPass);
+
+        System.out.println("CONFIG:");
+        System.out.println(" DB_URL=" + dbUrl);
+        System.out.println(" DB_USER=" + dbUser);
+        System.out.println(" neighbours=" + neighbours + ", similarity=" + measure
+                + ", minCommonUsers=" + minCommonUsers + ", threads=" + threads);
+
+        RatingMatrix matrix;
+        try (SimpleDataExtract extractor = new SimpleDataExtract(dbProps, 10_000)) {
+            matrix = RatingLoader.fromDatabase(extractor);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ItemNeighbours result = ItemSimilarity.topK(matrix, neighbours, measure, minCommonUsers, pool);
+            File outDir = new File("out");
+            if (!outDir.exists() && !outDir.mkdirs()) {
+                throw new IllegalStateException("Cannot create output directory " + outDir.getAbsolutePath());
+            }
+            File out = new File(outDir, "item_neighbours.tsv");
+            long pairs = result.writeTsv(out.toPath());
+            System.out.println("Wrote " + pairs + " neighbour pairs to " + out.getPath());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 import scripts.FetchAndPersist;
+import utils.Metrics;
 
 public class FetchingListOfAnime {
 
     public static void main(String[] args) {
+        Metrics.start();
         String dbUrl = System.getProperty("hibernate.hikari.dataSource.url",
                 System.getenv().getOrDefault("DB_URL", "jdbc:postgresql://localhost:5432/anime_db"));
 
@@ -1,8 +1,11 @@
 import scripts.FetchAndPersist;
+import user_parsing.UserCrawler;
+import utils.Metrics;
 
 public class FetchingUserAndStats {
 
     public static void main(String[] args) {
+        Metrics.start();
         String dbUrl = System.getProperty("hibernate.hikari.dataSource.url",
                 System.getenv().getOrDefault("DB_URL", "jdbc:postgresql://localhost:5432/anime_db"));
 
@@ -21,6 +24,7 @@ public class FetchingUserAndStats {
         System.out.println(" numberOfUsers=" + numberOfUsers);
         System.out.println(" minAnimeInLists=" + minNumberOfAnimeInLists);
         System.out.println(" minNumberOfCompletedAnimeInLists=" + minNumberOfCompletedAnimeInLists);
+        System.out.println(" crawlerMaxInFlight=" + UserCrawler.maxInFlightFromEnv());
 
         FetchAndPersist fetching;
         fetching = new FetchAndPersist(numberOfUsers, minNumberOfAnimeInLists,
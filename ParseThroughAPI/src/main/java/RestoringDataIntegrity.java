@@ -1,24 +1,29 @@
 import scripts.DataIntegrityRestorer;
+import utils.Metrics;
 
 public class RestoringDataIntegrity {
 
     public static void main(String[] args) {
+        Metrics.start();
         String dbUrl = System.getProperty("hibernate.hikari.dataSource.url",
                 System.getenv().getOrDefault("DB_URL", "jdbc:postgresql://localhost:5432/anime_db"));
 
         int batchSize = Integer.parseInt(System.getenv().getOrDefault("BATCH_SIZE", "50"));
         double thresholdPercentage = Double.parseDouble(System.getenv().getOrDefault(
                 "THRESHOLD_PERCENTAGE", "0.05"));
+        int workers = Integer.parseInt(System.getenv().getOrDefault("RESTORE_WORKERS", "1"));
 
 
         System.out.println("CONFIG:");
         System.out.println(" DB_URL=" + dbUrl);
         System.out.println(" batchSize=" + batchSize);
         System.out.println(" thresholdPercentage=" + thresholdPercentage);
+        System.out.println(" workers=" + workers);
 
         System.out.println("Run restoring data integrity (DataIntegrityRestorer)");
         DataIntegrityRestorer dataIntegrityRestorer = new DataIntegrityRestorer(thresholdPercentage,
                 batchSize, 500);
+        dataIntegrityRestorer.setWorkers(workers);
         dataIntegrityRestorer.run();
     }
 
@@ -1,4 +1,5 @@
 import scripts.DataOutputToFile;
+import utils.Metrics;
 
 import java.io.File;
 import java.util.List;
@@ -7,6 +8,7 @@ import java.util.Properties;
 public class SaveDataFromSQLToParquetFile {
 
     public static void main(String[] args) {
+        Metrics.start();
         System.setProperty("java.security.manager", "allow");
         Properties dbProps = new Properties();
         String dbUrl = System.getProperty("hibernate.hikari.dataSource.url",
@@ -32,6 +34,12 @@ public class SaveDataFromSQLToParquetFile {
                 "ANIME_EVALUATION_FILTERS", null);
         boolean showSQL = Boolean.parseBoolean(System.getenv().getOrDefault(
                 "SHOW_SQL", "true"));
+        boolean incremental = "incremental".equalsIgnoreCase(System.getenv().getOrDefault(
+                "EXPORT_MODE", "full"));
+        int partitions = Integer.parseInt(System.getenv().getOrDefault(
+                "EXPORT_PARTITIONS", "1"));
+        int exportThreads = Integer.parseInt(System.getenv().getOrDefault(
+                "EXPORT_THREADS", String.valueOf(DataOutputToFile.DEFAULT_EXPORT_THREADS)));
 
         dbProps.setProperty("jdbc.url", dbUrl);
         dbProps.setProperty("jdbc.user", dbUser);
@@ -63,6 +71,14 @@ public class SaveDataFromSQLToParquetFile {
             outFile.setAnimeEvaluationFilters(List.of(userFilters.split(",")));
             System.out.println("New users evaluation filters are set up: " + outFile.getAnimeEvaluationFilters());
         }
+        if (incremental) {
+            outFile.setIncremental(true);
+            System.out.println("Evaluations are exported incrementally (base + delta parts)");
+        } else if (partitions > 1) {
+            outFile.setPartitions(partitions);
+            outFile.setExportThreads(exportThreads);
+            System.out.println("Evaluations are exported in " + partitions + " parts by " + exportThreads + " threads");
+        }
         if (showSQL) {
             outFile.setIsShowSql(true);
             System.out.println("SQl will be displayed in the terminal");
@@ -0,0 +1,66 @@
+import recommendation.AlsModel;
+import recommendation.AlsTrainer;
+import recommendation.RatingFiles;
+import recommendation.RatingLoader;
+import utils.Metrics;
+import utils.SimpleDataExtract;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+public class TrainingAlsModel {
+
+    public static void main(String[] args) throws Exception {
+        Metrics.start();
+        String input = System.getenv().getOrDefault(
+                "ALS_INPUT", "");
+        AlsTrainer.Options defaults = AlsTrainer.Options.defaults();
+        AlsTrainer.Options options = new AlsTrainer.Options(
+                Integer.parseInt(System.getenv().getOrDefault("ALS_FACTORS", String.valueOf(defaults.factors()))),
+                Integer.parseInt(System.getenv().getOrDefault("ALS_ITERATIONS", String.valueOf(defaults.iterations()))),
+                Float.parseFloat(System.getenv().getOrDefault("ALS_LAMBDA", String.valueOf(defaults.lambda()))),
+                Boolean.parseBoolean(System.getenv().getOrDefault("ALS_IMPLICIT", String.valueOf(defaults.implicit()))),
+                Float.parseFloat(System.getenv().getOrDefault("ALS_ALPHA", String.valueOf(defaults.alpha()))),
+                defaults.seed());
+        int threads = Integer.parseInt(System.getenv().getOrDefault(
+                "RECOMMENDER_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        System.out.println("CONFIG:");
+        System.out.println(" input=" + (input.isBlank() ? "database" : input));
+        System.out.println(" " + options + ", threads=" + threads);
+
+        RatingFiles.Ratings ratings;
+        if (input.isBlank()) {
+            Properties dbProps = new Properties();
+            dbProps.setProperty("jdbc.url", System.getProperty("hibernate.hikari.dataSource.url",
+                    System.getenv().getOrDefault("DB_URL", "jdbc:postgresql://localhost:5432/anime_db")));
+            dbProps.setProperty("jdbc.user", System.getProperty("hibernate.hikari.dataSource.user",
+                    System.getenv().getOrDefault("DB_USER", "rudeus")));
+            dbProps.setProperty("jdbc.password", System.getProperty("hibernate.hikari.dataSource.password",
+                    System.getenv().getOrDefault("DB_PASS", "sylphi_pants")));
+            try (SimpleDataExtract extractor = new SimpleDataExtract(dbProps, 10_000)) {
+                ratings = new RatingFiles.Ratings(RatingLoader.fromDatabase(extractor), null);
+            }
+        } else {
+            ratings = RatingFiles.read(Path.of(input));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            AlsModel model = AlsTrainer.train(ratings.matrix(), options, pool);
+            File outDir = new File("out");
+            if (!outDir.exists() && !outDir.mkdirs()) {
+                throw new IllegalStateException("Cannot create output directory " + outDir.getAbsolutePath());
+            }
+            File users = new File(outDir, "als_user_factors.tsv");
+            File items = new File(outDir, "als_item_factors.tsv");
+            model.writeUserFactors(users.toPath(), ratings::userKey);
+            model.writeItemFactors(items.toPath());
+            System.out.println("Wrote factors to " + users.getPath() + " and " + items.getPath());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,5 +1,27 @@
 package anime_parsing;
 
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
 interface AnimePersister {
     void save(Anime anime) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * Saves a whole page. The default falls back to one save() per anime, skipping the ones that fail.
+     * @return number of anime saved
+     */
+    default int saveAll(List<Anime> animes) {
+        int saved = 0;
+        for (Anime anime : animes) {
+            try {
+                save(anime);
+                saved++;
+            } catch (Exception e) {
+                LoggerFactory.getLogger(AnimePersister.class)
+                        .error("Error saving anime malId={}: {}", anime.malId, e.getMessage(), e);
+            }
+        }
+        return saved;
+    }
+}
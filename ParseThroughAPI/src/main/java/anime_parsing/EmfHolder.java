@@ -5,6 +5,7 @@ import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import utils.Metrics;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -52,7 +53,9 @@ public final class EmfHolder {
         try {
             Map<String, Object> props = new HashMap<>();
             props.put("hibernate.bytecode.provider", "javassist");
-            return Persistence.createEntityManagerFactory("animePU", props);
+            EntityManagerFactory created = Persistence.createEntityManagerFactory("animePU", props);
+            Metrics.hikariGauges("db.anime", created);
+            return created;
         } catch (Exception e) {
             throw new ParserException("Failed to initialize EntityManagerFactory", e);
         }
@@ -5,6 +5,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import utils.CrawlCheckpoint;
+import utils.FlightEvents;
+import utils.HostRateLimiters;
+import utils.Metrics;
+import utils.ResponseArchive;
+import utils.TokenBucketRateLimiter;
 
 import java.io.IOException;
 import java.net.URI;
@@ -33,12 +39,16 @@ public class FetchTop {
     private final long taskGetTimeoutSec;
     private final long awaitTerminationSec;
     private final String baseUrl;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final String host;
 
     private final HttpClient client;
     final ObjectMapper mapper;
     private final AnimePersister persister;
     private final ExecutorService executor;
     private final boolean executorOwned;
+    private ResponseArchive archive = ResponseArchive.get();
+    private volatile CrawlCheckpoint checkpoint;
 
     public FetchTop(HttpClient client,
                     ObjectMapper mapper,
@@ -60,6 +70,8 @@ public class FetchTop {
         this.taskGetTimeoutSec = taskGetTimeoutSec;
         this.awaitTerminationSec = awaitTerminationSec;
         this.baseUrl = Objects.requireNonNull(baseUrl);
+        this.rateLimiter = HostRateLimiters.forUrl(baseUrl);
+        this.host = HostRateLimiters.hostOf(baseUrl);
 
         if (executor != null) {
             this.executor = executor;
@@ -96,6 +108,7 @@ public class FetchTop {
             submitted = submitPages(cs, numberOfPages);
             int completed = collectResults(cs, submitted);
             LOGGER.info("Total submitted pages: {}, completed (successful tasks observed) {}", submitted, completed);
+            completeCheckpointIfDone(numberOfPages);
         } finally {
             if (executorOwned) {
                 shutdownExecutor();
@@ -105,7 +118,9 @@ public class FetchTop {
 
     private int submitPages(CompletionService<Integer> cs, int numberOfPages) {
         int submitted = 0;
+        CrawlCheckpoint cp = checkpoint;
         for (int page = 1; page <= numberOfPages; page++) {
+            if (cp != null && cp.isPageDone(page)) continue;
             final int currentPage = page;
             cs.submit(() -> fetchAndSavePageWithRetries(currentPage));
             submitted++;
@@ -124,19 +139,38 @@ public class FetchTop {
 
     private Integer fetchAndSavePageWithRetries(int page) throws Exception {
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            FlightEvents.TopPage event = new FlightEvents.TopPage();
+            event.begin();
+            event.page = page;
+            event.attempt = attempt;
             try {
                 AnimeTopResult res = fetchTopAnimePage(page);
-                if (res != null && res.data != null) {
-                    for (Anime anime : res.data) {
-                        try {
-                            persister.save(anime);
-                        } catch (Exception e) {
-                            LOGGER.error("Error saving anime (page {}): {}", page, e.getMessage(), e);
+                event.succeeded = true;
+                if (res != null && res.data != null && !res.data.isEmpty()) {
+                    event.anime = res.data.size();
+                    long persistStart = System.nanoTime();
+                    try {
+                        int saved = persister.saveAll(res.data);
+                        event.persistTime = System.nanoTime() - persistStart;
+                        event.saved = saved;
+                        Metrics.timer("anime.top.persist").record(event.persistTime);
+                        Metrics.counter("anime.top.pages").inc();
+                        Metrics.counter("anime.top.saved").add(saved);
+                        if (saved < res.data.size()) {
+                            LOGGER.warn("Page {}: saved {} of {} anime", page, saved, res.data.size());
                         }
+                        CrawlCheckpoint cp = checkpoint;
+                        if (cp != null) cp.markPageDone(page);
+                    } catch (RuntimeException e) {
+                        event.succeeded = false;
+                        LOGGER.error("Error saving anime (page {}): {}", page, e.getMessage(), e);
                     }
                 }
+                event.commit();
                 return page;
             } catch (Exception e) {
+                // committed before the backoff sleep, so the event covers only the attempt
+                event.commit();
                 LOGGER.warn("Fetch page {} failed (attempt {})", page, attempt);
                 if (attempt == maxAttempts) {
                     throw e;
@@ -153,6 +187,28 @@ public class FetchTop {
         return page;
     }
 
+    /**
+     * Resumes from a crawl journal: completed pages are not submitted again, and the journal
+     * is removed once every page of the run is done.
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    private void completeCheckpointIfDone(int numberOfPages) {
+        CrawlCheckpoint cp = checkpoint;
+        if (cp == null) return;
+        int missing = 0;
+        for (int page = 1; page <= numberOfPages; page++) {
+            if (!cp.isPageDone(page)) missing++;
+        }
+        if (missing == 0) {
+            cp.complete();
+        } else {
+            LOGGER.info("{} of {} pages are not done yet, keeping crawl state for the next run", missing, numberOfPages);
+        }
+    }
+
     private int collectResults(CompletionService<Integer> cs, int submitted) {
         int completed = 0;
         for (int i = 0; i < submitted; i++) {
@@ -251,19 +307,74 @@ public class FetchTop {
 
     public AnimeTopResult fetchTopAnimePage(int page) throws IOException, InterruptedException {
         String url = String.format("%s/top/anime?page=%d", baseUrl, page);
-        HttpRequest request = HttpRequest.newBuilder()
+        ResponseArchive.Entry archived = archive.isEnabled() ? archive.lookup(url) : null;
+        FlightEvents.HttpFetch event = new FlightEvents.HttpFetch();
+        event.begin();
+        event.host = host;
+        event.url = url;
+        try {
+            return fetchTopAnimePage(url, archived, event);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private AnimeTopResult fetchTopAnimePage(String url, ResponseArchive.Entry archived,
+                                             FlightEvents.HttpFetch event) throws IOException, InterruptedException {
+        if (archive.isReplay()) {
+            if (archived == null) throw new IOException("Not in response archive: " + url);
+            Metrics.counter("http." + host + ".replayed").inc();
+            event.replayed = true;
+            return readArchived(archived, event);
+        }
+
+        if (rateLimiter != null) {
+            event.rateLimitWait = rateLimiter.acquire();
+            Metrics.timer("ratelimit." + host + ".wait").record(event.rateLimitWait);
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
                 .timeout(Duration.ofSeconds(10))
-                .GET()
-                .build();
+                .GET();
+        if (archived != null) {
+            if (archived.header("ETag") != null) request.header("If-None-Match", archived.header("ETag"));
+            if (archived.header("Last-Modified") != null) request.header("If-Modified-Since", archived.header("Last-Modified"));
+        }
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        long requestStart = System.nanoTime();
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        Metrics.recordHttp(host, response.statusCode(), System.nanoTime() - requestStart);
+        event.status = response.statusCode();
+        if (response.body() != null) {
+            Metrics.counter("http." + host + ".bytes").add(response.body().length);
+            event.bytes = response.body().length;
+        }
+        if (response.statusCode() == 304 && archived != null) {
+            return readArchived(archived, event);
+        }
+        if (archive.isEnabled()) {
+            archive.store(url, response.statusCode(), response.headers().map(), response.body());
+        }
         if (response.statusCode() != 200) {
             throw new HttpRequestException("HTTP " + response.statusCode());
         }
         return mapper.readValue(response.body(), AnimeTopResult.class);
     }
 
+    private AnimeTopResult readArchived(ResponseArchive.Entry entry, FlightEvents.HttpFetch event) throws IOException {
+        event.status = entry.status();
+        if (entry.status() != 200) {
+            throw new HttpRequestException("HTTP " + entry.status());
+        }
+        byte[] body = archive.readBody(entry);
+        event.bytes = body.length;
+        return mapper.readValue(body, AnimeTopResult.class);
+    }
+
+    void setArchive(ResponseArchive archive) {
+        this.archive = Objects.requireNonNull(archive);
+    }
+
     public void close() {
         if (executorOwned) {
             shutdownExecutor();
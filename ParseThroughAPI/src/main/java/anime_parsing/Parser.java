@@ -2,10 +2,17 @@ package anime_parsing;
 
 import exeptions.ParserException;
 import mapper.AnimeMapper;
+import mapper.KnownAnimeIds;
 import jakarta.persistence.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import utils.FlightEvents;
+import utils.Metrics;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public final class Parser {
@@ -38,6 +45,7 @@ public final class Parser {
                     em.persist(newAnime);
                 }
                 tx.commit();
+                KnownAnimeIds.get().add(dto.malId);
             } catch (RuntimeException e) {
                 if (tx.isActive()) {
                     try {
@@ -54,4 +62,82 @@ public final class Parser {
             throw new ParserException("Persistence error saving anime: " + dto.title, e);
         }
     }
+
+    /**
+     * Saves a page of anime in one transaction, so inserts go out as JDBC batches on a single commit.
+     * If the batch fails, every anime is retried with its own saveAnimeToDB() transaction
+     * and only the bad rows are lost.
+     * @return number of anime saved
+     */
+    public static int saveAnimeBatch(List<Anime> dtos) {
+        Objects.requireNonNull(dtos, "dtos must not be null");
+        List<Anime> valid = new ArrayList<>(dtos.size());
+        for (Anime dto : dtos) {
+            if (dto == null) continue;
+            if (dto.title == null || dto.title.isBlank()) {
+                LOGGER.info("Skipping anime with empty title, malId={}", dto.malId);
+                continue;
+            }
+            valid.add(dto);
+        }
+        if (valid.isEmpty()) return 0;
+
+        long start = System.nanoTime();
+        try (EntityManager em = getEmf().createEntityManager()) {
+            EntityTransaction tx = em.getTransaction();
+            try {
+                tx.begin();
+                Map<Integer, data.Anime> managed = findExisting(em, valid);
+                for (Anime dto : valid) {
+                    data.Anime existingAnime = managed.get(dto.malId);
+                    if (existingAnime != null) {
+                        AnimeMapper.update(existingAnime, dto, em);
+                    } else {
+                        data.Anime newAnime = AnimeMapper.map(dto, em);
+                        em.persist(newAnime);
+                        managed.put(dto.malId, newAnime);
+                    }
+                }
+                FlightEvents.flush(em, "anime.batch", valid.size());
+                tx.commit();
+                Metrics.timer("anime.persist.batch").recordSince(start);
+                for (Anime dto : valid) KnownAnimeIds.get().add(dto.malId);
+                return valid.size();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    try {
+                        tx.rollback();
+                    } catch (RuntimeException re) {
+                        LOGGER.warn("Rollback failed for batch of {} anime", valid.size(), re);
+                    }
+                }
+                LOGGER.warn("Batch of {} anime failed, saving one by one: {}", valid.size(), e.getMessage());
+            }
+        } catch (PersistenceException e) {
+            LOGGER.warn("Persistence error on batch of {} anime, saving one by one: {}", valid.size(), e.getMessage());
+        }
+
+        Metrics.counter("anime.persist.fallback_batches").inc();
+        int saved = 0;
+        for (Anime dto : valid) {
+            try {
+                saveAnimeToDB(dto);
+                saved++;
+            } catch (ParserException e) {
+                LOGGER.error("Skipping anime malId={} after failed batch", dto.malId);
+            }
+        }
+        return saved;
+    }
+
+    private static Map<Integer, data.Anime> findExisting(EntityManager em, List<Anime> dtos) {
+        List<Integer> ids = dtos.stream().map(d -> d.malId).distinct().toList();
+        Map<Integer, data.Anime> byId = new HashMap<>();
+        for (data.Anime a : em.createQuery("SELECT a FROM Anime a WHERE a.malId IN :ids", data.Anime.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            byId.put(a.getMalId(), a);
+        }
+        return byId;
+    }
 }
@@ -1,8 +1,15 @@
 package anime_parsing;
 
+import java.util.List;
+
 public class ParserBackedPersister implements AnimePersister {
     @Override
     public void save(Anime anime) throws Exception {
         Parser.saveAnimeToDB(anime);
     }
+
+    @Override
+    public int saveAll(List<Anime> animes) {
+        return Parser.saveAnimeBatch(animes);
+    }
 }
@@ -95,9 +95,15 @@ public class AnimeMapper {
             EntityManager em,
             java.util.function.ToIntFunction<D> idExtractor,
             java.util.function.Supplier<T> creator,
-            java.util.function.BiConsumer<T, D> initializer) {
+            java.util.function.BiConsumer<T, D> initializer,
+            ReferenceCache.Table<T> table,
+            ReferenceCache.RowBinder binder) {
 
         Integer id = idExtractor.applyAsInt(dto);
+        ReferenceCache cache = ReferenceCache.get();
+        if (cache.isLoaded()) {
+            return cache.resolve(em, table, id, binder);
+        }
         T existing = em.find(entityClass, id);
         if (existing != null) return existing;
 
@@ -119,6 +125,13 @@ public class AnimeMapper {
                     p.setName(d.name);
                     p.setType(d.type);
                     p.setUrl(d.url);
+                },
+                ReferenceCache.PRODUCERS,
+                ps -> {
+                    ps.setInt(1, dto.malId);
+                    ps.setString(2, dto.type);
+                    ps.setString(3, dto.name);
+                    ps.setString(4, dto.url);
                 }
         );
     }
@@ -135,6 +148,13 @@ public class AnimeMapper {
                     g.setName(d.name);
                     g.setType(d.type);
                     g.setUrl(d.url);
+                },
+                ReferenceCache.GENRES,
+                ps -> {
+                    ps.setInt(1, dto.malId);
+                    ps.setString(2, dto.type);
+                    ps.setString(3, dto.name);
+                    ps.setString(4, dto.url);
                 }
         );
     }
@@ -150,6 +170,12 @@ public class AnimeMapper {
                     x.setMalId(d.malId);
                     x.setName(d.name);
                     x.setUrl(d.url);
+                },
+                ReferenceCache.DEMOGRAPHICS,
+                ps -> {
+                    ps.setInt(1, dto.malId);
+                    ps.setString(2, dto.name);
+                    ps.setString(3, dto.url);
                 }
         );
     }
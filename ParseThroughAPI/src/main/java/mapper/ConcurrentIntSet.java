@@ -0,0 +1,62 @@
+package mapper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Growable bitset of non-negative ints for dense id spaces such as MAL ids.
+ * Reads are lock-free array reads; adds (rare) and growth happen under a lock.
+ */
+final class ConcurrentIntSet {
+
+    private static final int INITIAL_CAPACITY_BITS = 1 << 17;
+
+    private final Object lock = new Object();
+    private volatile AtomicLongArray words = new AtomicLongArray(INITIAL_CAPACITY_BITS >>> 6);
+    private int size;
+
+    boolean contains(int id) {
+        if (id < 0) return false;
+        AtomicLongArray w = words;
+        int word = id >>> 6;
+        if (word >= w.length()) return false;
+        return (w.get(word) & (1L << id)) != 0;
+    }
+
+    void add(int id) {
+        if (id < 0) throw new IllegalArgumentException("id must be >= 0: " + id);
+        synchronized (lock) {
+            AtomicLongArray w = ensureCapacity(id);
+            int word = id >>> 6;
+            long bit = 1L << id;
+            long old = w.get(word);
+            if ((old & bit) == 0) {
+                w.set(word, old | bit);
+                size++;
+            }
+        }
+    }
+
+    int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    void clear() {
+        synchronized (lock) {
+            words = new AtomicLongArray(INITIAL_CAPACITY_BITS >>> 6);
+            size = 0;
+        }
+    }
+
+    private AtomicLongArray ensureCapacity(int id) {
+        AtomicLongArray w = words;
+        int needed = (id >>> 6) + 1;
+        if (needed <= w.length()) return w;
+        int newLength = Math.max(needed, w.length() * 2);
+        AtomicLongArray grown = new AtomicLongArray(newLength);
+        for (int i = 0; i < w.length(); i++) grown.set(i, w.get(i));
+        words = grown;
+        return grown;
+    }
+}
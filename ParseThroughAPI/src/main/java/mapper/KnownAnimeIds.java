@@ -0,0 +1,139 @@
+package mapper;
+
+import data.Anime;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide set of anime.mal_id values kept as a bitset. MAL ids are dense and small,
+ * so a lookup is one array read with no boxing and no DB round-trip.
+ * Loaded once from the database on first use; anime_parsing.Parser adds ids as it inserts rows.
+ * Anime inserted by another process (FetchingListOfAnime runs as a separate job) are found by looking
+ * misses up in the database; an id that is still missing is not looked up again for MISS_RECHECK_NANOS.
+ * Reads are lock-free; writes (rare) and growth happen under a lock (see ConcurrentIntSet).
+ */
+public final class KnownAnimeIds {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KnownAnimeIds.class);
+    private static final KnownAnimeIds INSTANCE = new KnownAnimeIds();
+    private static final long MISS_RECHECK_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Object lock = new Object();
+    private final ConcurrentIntSet ids = new ConcurrentIntSet();
+    private final Map<Integer, Long> missCheckedAt = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private KnownAnimeIds() {}
+
+    public static KnownAnimeIds get() {
+        return INSTANCE;
+    }
+
+    public boolean contains(int id) {
+        return ids.contains(id);
+    }
+
+    public void add(int id) {
+        ids.add(id);
+    }
+
+    /**
+     * Like contains(id), but a miss is checked with em.find and a hit is added to the set.
+     */
+    public boolean contains(EntityManager em, int id) {
+        if (ids.contains(id)) return true;
+        long now = System.nanoTime();
+        if (!shouldLookUp(id, now)) return false;
+        boolean found = em.find(Anime.class, id) != null;
+        recordLookUp(id, found, now);
+        return found;
+    }
+
+    /**
+     * Looks up in one query the candidates missing from the set and adds those found,
+     * so contains(id) can be used for them afterwards.
+     */
+    public void lookUpMissing(EntityManager em, Collection<Integer> candidates) {
+        long now = System.nanoTime();
+        Set<Integer> lookUp = new LinkedHashSet<>();
+        for (Integer id : candidates) {
+            if (id != null && id >= 0 && !ids.contains(id) && shouldLookUp(id, now)) lookUp.add(id);
+        }
+        if (lookUp.isEmpty()) return;
+        Set<Integer> found = new HashSet<>(em.createQuery(
+                        "SELECT a.malId FROM Anime a WHERE a.malId IN :ids", Integer.class)
+                .setParameter("ids", lookUp)
+                .getResultList());
+        for (Integer id : lookUp) recordLookUp(id, found.contains(id), now);
+        if (!found.isEmpty()) LOGGER.info("Found {} anime ids added since the set was loaded", found.size());
+    }
+
+    private boolean shouldLookUp(int id, long now) {
+        Long checkedAt = missCheckedAt.get(id);
+        return checkedAt == null || now - checkedAt >= MISS_RECHECK_NANOS;
+    }
+
+    private void recordLookUp(int id, boolean found, long now) {
+        if (found) {
+            add(id);
+            missCheckedAt.remove(id);
+        } else {
+            missCheckedAt.put(id, now);
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Loads every anime id from the database unless this was already done.
+     */
+    public void ensureLoaded(EntityManager em) {
+        if (loaded) return;
+        synchronized (lock) {
+            if (loaded) return;
+            long start = System.nanoTime();
+            em.createQuery("SELECT a.malId FROM Anime a", Integer.class)
+                    .getResultStream()
+                    .forEach(this::add);
+            loaded = true;
+            LOGGER.info("Loaded {} known anime ids in {} ms", ids.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Drops the content, so the next ensureLoaded() re-reads the table.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            ids.clear();
+            missCheckedAt.clear();
+            loaded = false;
+        }
+    }
+
+    /**
+     * Replaces the content with the given ids and marks the set as loaded, for tests.
+     */
+    void resetForTests(int... values) {
+        synchronized (lock) {
+            invalidate();
+            for (int id : values) add(id);
+            loaded = true;
+        }
+    }
+}
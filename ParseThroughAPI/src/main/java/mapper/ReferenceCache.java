@@ -0,0 +1,172 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide set of producer, genre and demographic ids that are known to exist in the database.
+ * Once preloaded, AnimeMapper attaches those rows with em.getReference instead of an em.find per row.
+ * A new id is inserted on the caller's connection with INSERT ... ON CONFLICT DO NOTHING, so several threads
+ * meeting the same new studio at once don't fail on the primary key, and no second pooled connection is
+ * held while the caller's transaction is open. The id is cached only once that transaction has committed.
+ */
+public final class ReferenceCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceCache.class);
+    private static final ReferenceCache INSTANCE = new ReferenceCache();
+
+    public static final Table<data.Producer> PRODUCERS = new Table<>(data.Producer.class, "Producer",
+            "INSERT INTO producer (mal_id, type, name, url) VALUES (?, ?, ?, ?) ON CONFLICT (mal_id) DO NOTHING");
+    public static final Table<data.Genre> GENRES = new Table<>(data.Genre.class, "Genre",
+            "INSERT INTO genre (mal_id, type, name, url) VALUES (?, ?, ?, ?) ON CONFLICT (mal_id) DO NOTHING");
+    public static final Table<data.Demographic> DEMOGRAPHICS = new Table<>(data.Demographic.class, "Demographic",
+            "INSERT INTO demographic (mal_id, name, url) VALUES (?, ?, ?) ON CONFLICT (mal_id) DO NOTHING");
+
+    private static final List<Table<?>> TABLES = List.of(PRODUCERS, GENRES, DEMOGRAPHICS);
+
+    private final Object lock = new Object();
+    // ids inserted by transactions that have not completed yet, per session
+    private final Map<Session, Set<PendingId>> pending = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private record PendingId(Table<?> table, int malId) {}
+
+    private ReferenceCache() {}
+
+    public static ReferenceCache get() {
+        return INSTANCE;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads every id of the three reference tables, one query per table, unless this was already done.
+     */
+    public void preload(EntityManagerFactory emf) {
+        if (loaded) return;
+        synchronized (lock) {
+            if (loaded) return;
+            long start = System.nanoTime();
+            try (EntityManager em = emf.createEntityManager()) {
+                for (Table<?> table : TABLES) {
+                    em.createQuery("SELECT e.malId FROM " + table.entityName + " e", Integer.class)
+                            .getResultStream()
+                            .forEach(table.ids::add);
+                }
+            }
+            loaded = true;
+            LOGGER.info("Preloaded {} producers, {} genres, {} demographics in {} ms",
+                    PRODUCERS.size(), GENRES.size(), DEMOGRAPHICS.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Must be called inside em's transaction.
+     * @return a reference attached to em; the row is inserted first if the id is not known yet
+     */
+    public <T> T resolve(EntityManager em, Table<T> table, int malId, RowBinder binder) {
+        if (!table.ids.contains(malId)) {
+            Session session = em.unwrap(Session.class);
+            PendingId id = new PendingId(table, malId);
+            Set<PendingId> inTx = pending.get(session);
+            if (inTx == null || !inTx.contains(id)) {
+                session.doWork(conn -> {
+                    try (PreparedStatement ps = conn.prepareStatement(table.insertSql)) {
+                        binder.bind(ps);
+                        ps.executeUpdate();
+                    }
+                });
+                if (inTx == null) {
+                    inTx = new HashSet<>();
+                    pending.put(session, inTx);
+                    session.getTransaction().registerSynchronization(new PublishOnCommit(session));
+                }
+                inTx.add(id);
+            }
+        }
+        return em.getReference(table.type, malId);
+    }
+
+    /**
+     * Other threads may rely on a cached id only once the row is committed; a rollback forgets the ids.
+     */
+    private final class PublishOnCommit implements Synchronization {
+        private final Session session;
+
+        PublishOnCommit(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            Set<PendingId> ids = pending.remove(session);
+            if (ids == null || status != Status.STATUS_COMMITTED) return;
+            for (PendingId id : ids) id.table().ids.add(id.malId());
+        }
+    }
+
+    /**
+     * Drops the content, so the mapper falls back to em.find until the next preload().
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            for (Table<?> table : TABLES) table.ids.clear();
+            loaded = false;
+        }
+    }
+
+    /**
+     * Marks the cache as loaded with empty tables, for tests.
+     */
+    void resetForTests() {
+        synchronized (lock) {
+            invalidate();
+            loaded = true;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RowBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    public static final class Table<T> {
+        private final Class<T> type;
+        private final String entityName;
+        private final String insertSql;
+        private final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+        private Table(Class<T> type, String entityName, String insertSql) {
+            this.type = type;
+            this.entityName = entityName;
+            this.insertSql = insertSql;
+        }
+
+        public boolean contains(int malId) {
+            return ids.contains(malId);
+        }
+
+        public int size() {
+            return ids.size();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide filter for /random/users results: users already in the users table, and users that
+ * recently failed the min-entries threshold, are dropped right after the random call, before the
+ * stats request and the list download. Stored users are kept in a bitset of mal_ids seeded from the
+ * database; rejections expire after a TTL (user.rejectTtlHours / USER_REJECT_TTL_HOURS, default 24),
+ * since a small list can grow past the threshold. Crawler pipelines claim a user with tryClaim, so two
+ * pipelines that draw the same random user don't both fetch and save it.
+ */
+public final class SeenUserFilter {
+
+    public static final Duration DEFAULT_REJECT_TTL = Duration.ofHours(24);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeenUserFilter.class);
+    private static final SeenUserFilter INSTANCE = new SeenUserFilter(rejectTtlFromEnv(), System::currentTimeMillis);
+
+    private final Object lock = new Object();
+    private final ConcurrentIntSet stored = new ConcurrentIntSet();
+    private final ConcurrentHashMap<Integer, Long> rejectedUntil = new ConcurrentHashMap<>();
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong skipped = new AtomicLong();
+    private final long rejectTtlMillis;
+    private final LongSupplier clock;
+    private volatile boolean loaded;
+
+    SeenUserFilter(Duration rejectTtl, LongSupplier clock) {
+        this.rejectTtlMillis = rejectTtl.toMillis();
+        this.clock = clock;
+    }
+
+    public static SeenUserFilter get() {
+        return INSTANCE;
+    }
+
+    static Duration rejectTtlFromEnv() {
+        String v = System.getProperty("user.rejectTtlHours");
+        if (v == null || v.isBlank()) v = System.getenv("USER_REJECT_TTL_HOURS");
+        try {
+            return v == null || v.isBlank() ? DEFAULT_REJECT_TTL : Duration.ofHours(Math.max(0, Long.parseLong(v.trim())));
+        } catch (NumberFormatException e) {
+            return DEFAULT_REJECT_TTL;
+        }
+    }
+
+    /**
+     * Loads every users.mal_id unless this was already done.
+     */
+    public void ensureLoaded(EntityManagerFactory emf) {
+        if (loaded) return;
+        synchronized (lock) {
+            if (loaded) return;
+            long start = System.nanoTime();
+            try (EntityManager em = emf.createEntityManager()) {
+                em.createQuery("SELECT u.malId FROM Users u", Integer.class)
+                        .getResultStream()
+                        .forEach(this::markStored);
+            }
+            loaded = true;
+            LOGGER.info("Loaded {} known user ids in {} ms", stored.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * @return true when the user is already stored or was rejected within the TTL; counted as a skip
+     */
+    public boolean shouldSkip(int malId) {
+        boolean skip = stored.contains(malId) || isRecentlyRejected(malId);
+        if (skip) skipped.incrementAndGet();
+        return skip;
+    }
+
+    /**
+     * Atomic variant of shouldSkip for the crawler: claims the user for the caller unless it is stored,
+     * recently rejected or already claimed by another pipeline (each counted as a skip).
+     * A successful claim must be given back with release once the user was stored, rejected or failed.
+     */
+    public boolean tryClaim(int malId) {
+        if (shouldSkip(malId)) return false;
+        if (!inFlight.add(malId)) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        // markStored/markRejected happen before release, so a pipeline that finished the user
+        // between the check above and the claim is seen here
+        if (stored.contains(malId) || isRecentlyRejected(malId)) {
+            inFlight.remove(malId);
+            skipped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void release(int malId) {
+        inFlight.remove(malId);
+    }
+
+    private boolean isRecentlyRejected(int malId) {
+        Long until = rejectedUntil.get(malId);
+        if (until == null) return false;
+        if (until > clock.getAsLong()) return true;
+        rejectedUntil.remove(malId, until);
+        return false;
+    }
+
+    public void markStored(int malId) {
+        if (malId < 0) return;
+        stored.add(malId);
+        rejectedUntil.remove(malId);
+    }
+
+    public void markRejected(int malId) {
+        if (rejectTtlMillis <= 0) return;
+        rejectedUntil.put(malId, clock.getAsLong() + rejectTtlMillis);
+    }
+
+    public int storedCount() {
+        return stored.size();
+    }
+
+    public long skippedCount() {
+        return skipped.get();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Drops the content, so the next ensureLoaded() re-reads the table.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            stored.clear();
+            rejectedUntil.clear();
+            skipped.set(0);
+            loaded = false;
+        }
+    }
+}
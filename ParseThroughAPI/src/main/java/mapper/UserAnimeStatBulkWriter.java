@@ -0,0 +1,156 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import user_parsing.UserAnimeEntry;
+import utils.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Writes a user's list into user_anime_stat with multi-row INSERT ... ON CONFLICT statements,
+ * instead of an em.find per anime and per (user, anime) row followed by dirty checking.
+ * Entries whose anime is not in the catalogue are filtered against KnownAnimeIds.
+ */
+public final class UserAnimeStatBulkWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserAnimeStatBulkWriter.class);
+
+    static final int ROWS_PER_STATEMENT = 500;
+    private static final int COLUMNS = 6;
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO user_anime_stat (user_id, anime_id, score, status, episodes_watched, last_updated) VALUES ";
+    private static final String ON_CONFLICT =
+            " ON CONFLICT (user_id, anime_id) DO UPDATE SET" +
+            " score = EXCLUDED.score," +
+            " status = EXCLUDED.status," +
+            " episodes_watched = EXCLUDED.episodes_watched," +
+            " last_updated = EXCLUDED.last_updated" +
+            // an unchanged row is left alone and not counted, so a refresh that changes nothing writes nothing
+            " WHERE (user_anime_stat.score, user_anime_stat.status, user_anime_stat.episodes_watched," +
+            " user_anime_stat.last_updated) IS DISTINCT FROM" +
+            " (EXCLUDED.score, EXCLUDED.status, EXCLUDED.episodes_watched, EXCLUDED.last_updated)";
+    private static final String FULL_CHUNK_SQL = buildSql(ROWS_PER_STATEMENT);
+    private static final String TOUCH_USER_SQL = "UPDATE users SET updated_at = CURRENT_TIMESTAMP WHERE mal_id = ?";
+
+    private UserAnimeStatBulkWriter() {}
+
+    /**
+     * Upserts through the connection of the current persistence context, so it joins the caller's transaction.
+     * The user is stamped only when a row was inserted or changed.
+     * @return number of rows inserted or changed
+     */
+    public static int upsert(EntityManager em, int userId, Collection<UserAnimeEntry> entries) {
+        if (entries == null || entries.isEmpty()) return 0;
+        KnownAnimeIds knownAnime = KnownAnimeIds.get();
+        knownAnime.ensureLoaded(em);
+        List<Integer> animeIds = new ArrayList<>(entries.size());
+        for (UserAnimeEntry e : entries) if (e != null) animeIds.add(e.animeId);
+        knownAnime.lookUpMissing(em, animeIds);
+        return em.unwrap(Session.class).doReturningWork(conn -> {
+            int written = upsert(conn, userId, entries, knownAnime::contains);
+            if (written > 0) touchUser(conn, userId);
+            return written;
+        });
+    }
+
+    /**
+     * Stamps users.updated_at with the DB clock in the transaction that writes the list, so the incremental
+     * export sees the user even when the entries carry MAL times older than its watermark.
+     */
+    public static void touchUser(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(TOUCH_USER_SQL)) {
+            ps.setInt(1, userId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @return number of rows inserted or changed, as reported by the database
+     */
+    public static int upsert(Connection conn, int userId, Collection<UserAnimeEntry> entries,
+                             IntPredicate knownAnime) throws SQLException {
+        LinkedHashMap<Integer, UserAnimeEntry> unique = new LinkedHashMap<>();
+        int skipped = 0;
+        for (UserAnimeEntry e : entries) {
+            if (e == null || e.animeId == null) continue;
+            if (!knownAnime.test(e.animeId)) {
+                skipped++;
+                continue;
+            }
+            // ON CONFLICT can't touch the same row twice in one statement, the last entry wins
+            unique.put(e.animeId, e);
+        }
+        if (skipped > 0) {
+            LOGGER.warn("Skipping {} entries of user {} - anime not found in database", skipped, userId);
+            Metrics.counter("mapper.user_anime_stat.unknown_anime").add(skipped);
+        }
+        if (unique.isEmpty()) return 0;
+
+        long start = System.nanoTime();
+
+        List<UserAnimeEntry> rows = new ArrayList<>(unique.values());
+        int written = 0;
+        int fullChunks = rows.size() / ROWS_PER_STATEMENT;
+        if (fullChunks > 0) {
+            try (PreparedStatement ps = conn.prepareStatement(FULL_CHUNK_SQL)) {
+                for (int c = 0; c < fullChunks; c++) {
+                    int from = c * ROWS_PER_STATEMENT;
+                    bindRows(ps, userId, rows.subList(from, from + ROWS_PER_STATEMENT));
+                    written += ps.executeUpdate();
+                }
+            }
+        }
+        int tail = rows.size() - fullChunks * ROWS_PER_STATEMENT;
+        if (tail > 0) {
+            try (PreparedStatement ps = conn.prepareStatement(buildSql(tail))) {
+                bindRows(ps, userId, rows.subList(rows.size() - tail, rows.size()));
+                written += ps.executeUpdate();
+            }
+        }
+        Metrics.timer("mapper.user_anime_stat.upsert").recordSince(start);
+        Metrics.counter("mapper.user_anime_stat.rows").add(written);
+        return written;
+    }
+
+    private static void bindRows(PreparedStatement ps, int userId, List<UserAnimeEntry> rows) throws SQLException {
+        int i = 1;
+        for (UserAnimeEntry dto : rows) {
+            ps.setInt(i++, userId);
+            ps.setInt(i++, dto.animeId);
+            Integer score = UserAnimeStatMapper.scoreOf(dto);
+            if (score == null) ps.setNull(i++, Types.INTEGER); else ps.setInt(i++, score);
+            String status = UserAnimeStatMapper.statusToString(dto.status);
+            if (status == null) ps.setNull(i++, Types.VARCHAR); else ps.setString(i++, status);
+            if (dto.numWatchedEpisodes == null) ps.setNull(i++, Types.INTEGER); else ps.setInt(i++, dto.numWatchedEpisodes);
+            ps.setObject(i++, UserAnimeStatMapper.lastUpdatedOf(dto, userId));
+        }
+    }
+
+    static String buildSql(int rows) {
+        StringBuilder sb = new StringBuilder(INSERT_PREFIX.length() + rows * 20 + ON_CONFLICT.length());
+        sb.append(INSERT_PREFIX);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sb.append(", ");
+            sb.append('(');
+            for (int c = 0; c < COLUMNS; c++) {
+                if (c > 0) sb.append(", ");
+                sb.append('?');
+            }
+            sb.append(')');
+        }
+        sb.append(ON_CONFLICT);
+        return sb.toString();
+    }
+}
@@ -24,7 +24,7 @@ public final class UserAnimeStatMapper {
 
     private UserAnimeStatMapper() {}
 
-    private static String statusToString(Integer code) {
+    static String statusToString(Integer code) {
         if (code == null) return null;
         return STATUS_MAP.getOrDefault(code, "status_" + code);
     }
@@ -35,8 +35,9 @@ public final class UserAnimeStatMapper {
             return;
         }
 
-        data.Anime animeEntity = em.find(data.Anime.class, dto.animeId);
-        if (animeEntity == null) {
+        KnownAnimeIds knownAnime = KnownAnimeIds.get();
+        knownAnime.ensureLoaded(em);
+        if (!knownAnime.contains(em, dto.animeId)) {
             LOGGER.warn("Skipping anime with malId={} - not found in database", dto.animeId);
             return;
         }
@@ -56,13 +57,18 @@ public final class UserAnimeStatMapper {
         apply(entity, dto);
     }
 
-    private static void apply(UserAnimeStat entity, UserAnimeEntry dto) {
-        Integer scoreToSet = (dto.score != null && dto.score > 0) ? dto.score : null;
-        entity.setScore(scoreToSet);
-
+    static void apply(UserAnimeStat entity, UserAnimeEntry dto) {
+        entity.setScore(scoreOf(dto));
         entity.setStatus(statusToString(dto.status));
         entity.setEpisodesWatched(dto.numWatchedEpisodes);
+        entity.setLastUpdated(lastUpdatedOf(dto, entity.getUserId()));
+    }
+
+    static Integer scoreOf(UserAnimeEntry dto) {
+        return (dto.score != null && dto.score > 0) ? dto.score : null;
+    }
 
+    static OffsetDateTime lastUpdatedOf(UserAnimeEntry dto, Integer userId) {
         OffsetDateTime last = null;
         try {
             if (dto.updatedAt != null) {
@@ -72,8 +78,8 @@ public final class UserAnimeStatMapper {
             }
         } catch (Exception e) {
             LOGGER.warn("Failed to parse dates for userAnime (animeId={}, userId={}), will use now(): {}",
-                    entity.getAnimeId(), entity.getUserId(), e.getMessage());
+                    dto.animeId, userId, e.getMessage());
         }
-        entity.setLastUpdated(last != null ? last : OffsetDateTime.now());
+        return last != null ? last : OffsetDateTime.now();
     }
 }
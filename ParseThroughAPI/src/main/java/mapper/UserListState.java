@@ -0,0 +1,54 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * What is stored for one user's list: the number of user_anime_stat rows and the newest last_updated.
+ * The incremental list sync uses the watermark to know where to stop paging, and the count to decide
+ * whether it still has to fall back to a full fetch.
+ * @param watermarkEpochSec newest last_updated in epoch seconds, or null when nothing is stored
+ */
+public record UserListState(long storedEntries, Long watermarkEpochSec) {
+
+    public static final double DEFAULT_TOLERANCE = 0.05;
+
+    private static final String SQL =
+            "SELECT COUNT(*), MAX(last_updated) FROM user_anime_stat WHERE user_id = ?";
+
+    public static UserListState read(EntityManagerFactory emf, int userId) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.unwrap(Session.class).doReturningWork(conn -> read(conn, userId));
+        } finally {
+            em.close();
+        }
+    }
+
+    public static UserListState read(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL)) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                Timestamp last = rs.getTimestamp(2);
+                return new UserListState(rs.getLong(1), last == null ? null : last.toInstant().getEpochSecond());
+            }
+        }
+    }
+
+    /**
+     * Same relative difference as the integrity check: |stored - reported| / reported,
+     * or 100% when nothing is reported but rows are stored.
+     */
+    public boolean agreesWith(int reported, double tolerance) {
+        if (reported <= 0) return storedEntries == 0;
+        return Math.abs(storedEntries - reported) / (double) reported <= tolerance;
+    }
+}
@@ -0,0 +1,113 @@
+package recommendation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * User and anime embeddings trained by AlsTrainer. The factors of user u are
+ * userFactors()[u * factors() .. (u + 1) * factors()), same for anime; indices are those of the RatingMatrix.
+ */
+public final class AlsModel {
+
+    private final RatingMatrix matrix;
+    private final int factors;
+    private final float[] userFactors;
+    private final float[] itemFactors;
+
+    AlsModel(RatingMatrix matrix, int factors, float[] userFactors, float[] itemFactors) {
+        this.matrix = matrix;
+        this.factors = factors;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+    }
+
+    public RatingMatrix matrix() {
+        return matrix;
+    }
+
+    public int factors() {
+        return factors;
+    }
+
+    public float[] userFactors() {
+        return userFactors;
+    }
+
+    public float[] itemFactors() {
+        return itemFactors;
+    }
+
+    /**
+     * @return the predicted score (explicit) or preference (implicit) of user u for anime i
+     */
+    public float predict(int u, int i) {
+        return (float) dot(userFactors, u * factors, itemFactors, i * factors, factors);
+    }
+
+    /**
+     * @return at most n anime the user has not scored, highest prediction first; empty for an unknown user
+     */
+    public List<Recommendation> recommend(int userId, int n) {
+        int u = matrix.userIndex(userId);
+        if (u < 0 || n <= 0) return List.of();
+        float[] scores = new float[matrix.items()];
+        for (int i = 0; i < scores.length; i++) scores[i] = predict(u, i);
+        int[] rowItems = matrix.rowItems();
+        for (int p = matrix.rowStart(u); p < matrix.rowEnd(u); p++) scores[rowItems[p]] = Float.NEGATIVE_INFINITY;
+
+        List<Recommendation> out = new ArrayList<>(n);
+        for (int r = 0; r < n; r++) {
+            int best = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] != Float.NEGATIVE_INFINITY && (best < 0 || scores[i] > scores[best])) best = i;
+            }
+            if (best < 0) break;
+            out.add(new Recommendation(matrix.itemId(best), scores[best]));
+            scores[best] = Float.NEGATIVE_INFINITY;
+        }
+        return out;
+    }
+
+    /**
+     * Writes "id, f0 f1 ..." lines, tab-separated with the factors space-separated, one per user.
+     * @param userKey the id to write for a user index, e.g. RatingFiles.Ratings::userKey
+     */
+    public void writeUserFactors(Path file, IntFunction<String> userKey) throws IOException {
+        write(file, "user_id", matrix.users(), userKey, userFactors);
+    }
+
+    /**
+     * Writes "anime_id, f0 f1 ..." lines like writeUserFactors.
+     */
+    public void writeItemFactors(Path file) throws IOException {
+        write(file, "anime_id", matrix.items(), i -> Integer.toString(matrix.itemId(i)), itemFactors);
+    }
+
+    private void write(Path file, String idColumn, int rows, IntFunction<String> id, float[] values) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(idColumn + "\tfactors\n");
+            for (int r = 0; r < rows; r++) {
+                out.write(id.apply(r));
+                out.write('\t');
+                int off = r * factors;
+                for (int x = 0; x < factors; x++) {
+                    if (x > 0) out.write(' ');
+                    out.write(Float.toString(values[off + x]));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    static double dot(float[] a, int aOff, float[] b, int bOff, int f) {
+        double s = 0;
+        for (int x = 0; x < f; x++) s += a[aOff + x] * b[bOff + x];
+        return s;
+    }
+}
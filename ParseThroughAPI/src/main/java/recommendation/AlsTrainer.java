@@ -0,0 +1,301 @@
+package recommendation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Alternating least squares matrix factorization of a RatingMatrix. User and anime factors live in two
+ * contiguous float[] arrays (row r is [r * factors, (r + 1) * factors)). Each iteration solves every user
+ * against fixed anime factors, then every anime against fixed user factors; rows are independent, so a
+ * half-step is split over a ForkJoinPool. A row is solved with a Cholesky factorization of its factors x factors
+ * normal equations in double precision, in scratch buffers that are reused between tasks: the solve loop
+ * allocates nothing.
+ * - explicit: fits the scores, with the regularization scaled by the number of ratings of the row
+ *   (weighted-lambda, Zhou et al. 2008)
+ * - implicit: treats every rating as a preference with confidence 1 + alpha * score and every missing pair
+ *   as preference 0 with confidence 1 (Hu, Koren, Volinsky 2008); the missing pairs enter through the
+ *   Gram matrix of the fixed side, computed once per half-step
+ */
+public final class AlsTrainer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlsTrainer.class);
+
+    // rows per leaf task; a row costs ratings x factors^2, heavy users and popular anime are stolen around
+    private static final int LEAF_ROWS = 32;
+    private static final float INIT_SCALE = 0.1f;
+
+    public record Options(int factors, int iterations, float lambda, boolean implicit, float alpha, long seed) {
+        public Options {
+            if (factors <= 0) throw new IllegalArgumentException("factors must be positive: " + factors);
+            if (iterations < 0) throw new IllegalArgumentException("iterations must not be negative: " + iterations);
+            if (lambda <= 0f) throw new IllegalArgumentException("lambda must be positive: " + lambda);
+        }
+
+        public static Options defaults() {
+            return new Options(64, 10, 0.05f, false, 1f, 42L);
+        }
+    }
+
+    private AlsTrainer() {}
+
+    public static AlsModel train(RatingMatrix matrix, Options options, ForkJoinPool pool) {
+        int f = options.factors();
+        float[] userFactors = new float[Math.multiplyExact(matrix.users(), f)];
+        float[] itemFactors = new float[Math.multiplyExact(matrix.items(), f)];
+        Random random = new Random(options.seed());
+        for (int k = 0; k < itemFactors.length; k++) itemFactors[k] = (float) (random.nextGaussian() * INIT_SCALE);
+
+        Side users = new Side(matrix.users(), matrix.rowPtr(), matrix.rowItems(), matrix.rowValues());
+        Side items = new Side(matrix.items(), matrix.colPtr(), matrix.colUsers(), matrix.colValues());
+        Queue<Scratch> idle = new ConcurrentLinkedQueue<>();
+
+        long start = System.nanoTime();
+        for (int it = 1; it <= options.iterations(); it++) {
+            long iterationStart = System.nanoTime();
+            halfStep(users, itemFactors, userFactors, options, pool, idle);
+            halfStep(items, userFactors, itemFactors, options, pool, idle);
+            if (options.implicit()) {
+                LOGGER.info("ALS iteration {}/{}: {} ms", it, options.iterations(),
+                        (System.nanoTime() - iterationStart) / 1_000_000);
+            } else {
+                LOGGER.info("ALS iteration {}/{}: {} ms, train RMSE {}", it, options.iterations(),
+                        (System.nanoTime() - iterationStart) / 1_000_000,
+                        String.format(java.util.Locale.ROOT, "%.4f", rmse(matrix, userFactors, itemFactors, f, pool)));
+            }
+        }
+        LOGGER.info("ALS with {} factors on {} ratings trained in {} ms on {} threads", f, matrix.nnz(),
+                (System.nanoTime() - start) / 1_000_000, pool.getParallelism());
+        return new AlsModel(matrix, f, userFactors, itemFactors);
+    }
+
+    /**
+     * Root-mean-square error of the predictions on the ratings of the matrix.
+     */
+    public static double rmse(RatingMatrix matrix, float[] userFactors, float[] itemFactors, int f, ForkJoinPool pool) {
+        double sum = pool.invoke(new SquaredError(matrix, userFactors, itemFactors, f, 0, matrix.users()));
+        return matrix.nnz() == 0 ? 0 : Math.sqrt(sum / matrix.nnz());
+    }
+
+    /**
+     * The rows being solved (users in CSR, or anime in CSC) with their ratings.
+     */
+    private record Side(int rows, int[] ptr, int[] index, float[] values) {}
+
+    private record HalfStep(Side side, float[] fixed, float[] target, double[] gram, Options options,
+                            Queue<Scratch> idle) {}
+
+    private static void halfStep(Side side, float[] fixed, float[] target, Options options, ForkJoinPool pool,
+                                 Queue<Scratch> idle) {
+        int f = options.factors();
+        double[] gram = options.implicit() ? pool.invoke(new Gram(fixed, f, 0, fixed.length / f)) : null;
+        pool.invoke(new SolveRange(new HalfStep(side, fixed, target, gram, options, idle), 0, side.rows()));
+    }
+
+    // fork-join tasks are never serialized, their state is transient
+    private static final class SolveRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient HalfStep step;
+        private final int from;
+        private final int to;
+
+        SolveRange(HalfStep step, int from, int to) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_ROWS) {
+                int f = step.options.factors();
+                Scratch scratch = step.idle.poll();
+                if (scratch == null || scratch.b.length != f) scratch = new Scratch(f);
+                for (int r = from; r < to; r++) scratch.solveRow(step, r);
+                step.idle.offer(scratch);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SolveRange(step, from, mid), new SolveRange(step, mid, to));
+        }
+    }
+
+    /**
+     * Normal equations of one row, used by one thread at a time. Only the lower triangle of a is filled.
+     */
+    private static final class Scratch {
+        private final double[] a;
+        private final double[] b;
+
+        Scratch(int f) {
+            a = new double[f * f];
+            b = new double[f];
+        }
+
+        void solveRow(HalfStep step, int r) {
+            int f = b.length;
+            Side side = step.side;
+            float[] fixed = step.fixed;
+            boolean implicit = step.options.implicit();
+            float alpha = step.options.alpha();
+
+            if (implicit) System.arraycopy(step.gram, 0, a, 0, a.length);
+            else Arrays.fill(a, 0d);
+            Arrays.fill(b, 0d);
+
+            int from = side.ptr[r];
+            int to = side.ptr[r + 1];
+            for (int p = from; p < to; p++) {
+                int off = side.index[p] * f;
+                double weight;
+                double rhs;
+                if (implicit) {
+                    double confidence = 1d + alpha * side.values[p];
+                    weight = confidence - 1d;
+                    rhs = confidence;
+                } else {
+                    weight = 1d;
+                    rhs = side.values[p];
+                }
+                for (int x = 0; x < f; x++) {
+                    double yx = fixed[off + x];
+                    b[x] += rhs * yx;
+                    double wy = weight * yx;
+                    int row = x * f;
+                    for (int z = 0; z <= x; z++) a[row + z] += wy * fixed[off + z];
+                }
+            }
+            double reg = implicit ? step.options.lambda() : step.options.lambda() * Math.max(1, to - from);
+            for (int x = 0; x < f; x++) a[x * f + x] += reg;
+
+            choleskySolve(a, b, f);
+            int out = r * f;
+            for (int x = 0; x < f; x++) step.target[out + x] = (float) b[x];
+        }
+    }
+
+    /**
+     * Solves a x = b in place for a symmetric positive definite a given by its lower triangle;
+     * a is overwritten with its Cholesky factor L, b with x.
+     */
+    static void choleskySolve(double[] a, double[] b, int f) {
+        for (int j = 0; j < f; j++) {
+            int rowJ = j * f;
+            double d = a[rowJ + j];
+            for (int k = 0; k < j; k++) d -= a[rowJ + k] * a[rowJ + k];
+            // the regularization keeps d positive; the floor only guards against rounding
+            double ljj = Math.sqrt(Math.max(d, 1e-12));
+            a[rowJ + j] = ljj;
+            for (int i = j + 1; i < f; i++) {
+                int rowI = i * f;
+                double s = a[rowI + j];
+                for (int k = 0; k < j; k++) s -= a[rowI + k] * a[rowJ + k];
+                a[rowI + j] = s / ljj;
+            }
+        }
+        // L y = b
+        for (int i = 0; i < f; i++) {
+            int rowI = i * f;
+            double s = b[i];
+            for (int k = 0; k < i; k++) s -= a[rowI + k] * b[k];
+            b[i] = s / a[rowI + i];
+        }
+        // L^T x = y
+        for (int i = f - 1; i >= 0; i--) {
+            double s = b[i];
+            for (int k = i + 1; k < f; k++) s -= a[k * f + i] * b[k];
+            b[i] = s / a[i * f + i];
+        }
+    }
+
+    /**
+     * Y^T Y of the fixed factors (lower triangle), summed over row ranges.
+     */
+    private static final class Gram extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF = 4096;
+
+        private final float[] factors;
+        private final int f;
+        private final int from;
+        private final int to;
+
+        Gram(float[] factors, int f, int from, int to) {
+            this.factors = factors;
+            this.f = f;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from <= LEAF) {
+                double[] g = new double[f * f];
+                for (int r = from; r < to; r++) {
+                    int off = r * f;
+                    for (int x = 0; x < f; x++) {
+                        double yx = factors[off + x];
+                        int row = x * f;
+                        for (int z = 0; z <= x; z++) g[row + z] += yx * factors[off + z];
+                    }
+                }
+                return g;
+            }
+            int mid = (from + to) >>> 1;
+            Gram right = new Gram(factors, f, mid, to);
+            right.fork();
+            double[] g = new Gram(factors, f, from, mid).compute();
+            double[] other = right.join();
+            for (int k = 0; k < g.length; k++) g[k] += other[k];
+            return g;
+        }
+    }
+
+    private static final class SquaredError extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RatingMatrix matrix;
+        private final float[] users;
+        private final float[] items;
+        private final int f;
+        private final int from;
+        private final int to;
+
+        SquaredError(RatingMatrix matrix, float[] users, float[] items, int f, int from, int to) {
+            this.matrix = matrix;
+            this.users = users;
+            this.items = items;
+            this.f = f;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= LEAF_ROWS * 8) {
+                int[] rowItems = matrix.rowItems();
+                float[] values = matrix.rowValues();
+                double sum = 0;
+                for (int u = from; u < to; u++) {
+                    for (int p = matrix.rowStart(u); p < matrix.rowEnd(u); p++) {
+                        double e = values[p] - AlsModel.dot(users, u * f, items, rowItems[p] * f, f);
+                        sum += e * e;
+                    }
+                }
+                return sum;
+            }
+            int mid = (from + to) >>> 1;
+            SquaredError right = new SquaredError(matrix, users, items, f, mid, to);
+            right.fork();
+            return new SquaredError(matrix, users, items, f, from, mid).compute() + right.join();
+        }
+    }
+}
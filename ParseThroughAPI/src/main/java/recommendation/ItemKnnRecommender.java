@@ -0,0 +1,64 @@
+package recommendation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Top-N recommendations from item neighbours: every anime the user scored votes for its neighbours with
+ * similarity x how far the score is above the user's mean. Anime the user already scored are skipped.
+ * Works on the user's own row and the precomputed neighbours only, so a request costs O(ratings x k).
+ */
+public final class ItemKnnRecommender {
+
+    private final ItemNeighbours neighbours;
+
+    public ItemKnnRecommender(ItemNeighbours neighbours) {
+        this.neighbours = neighbours;
+    }
+
+    /**
+     * @return at most n anime, best first; empty for an unknown user or one without scores above their mean
+     */
+    public List<Recommendation> recommend(int userId, int n) {
+        RatingMatrix m = neighbours.matrix();
+        int u = m.userIndex(userId);
+        if (u < 0 || n <= 0) return List.of();
+
+        int[] rowItems = m.rowItems();
+        float[] rowValues = m.rowValues();
+        int from = m.rowStart(u);
+        int to = m.rowEnd(u);
+        double sum = 0;
+        for (int p = from; p < to; p++) sum += rowValues[p];
+        float mean = (float) (sum / (to - from));
+
+        float[] scores = new float[m.items()];
+        for (int p = from; p < to; p++) {
+            float weight = rowValues[p] - mean;
+            if (weight <= 0f) continue;
+            int i = rowItems[p];
+            for (int r = 0; r < neighbours.count(i); r++) {
+                scores[neighbours.neighbour(i, r)] += weight * neighbours.similarity(i, r);
+            }
+        }
+        for (int p = from; p < to; p++) scores[rowItems[p]] = 0f;
+
+        return best(m, scores, n);
+    }
+
+    private static List<Recommendation> best(RatingMatrix m, float[] scores, int n) {
+        // selection over the candidates; n is small compared to the number of anime
+        List<Recommendation> out = new ArrayList<>(n);
+        boolean[] taken = new boolean[scores.length];
+        for (int r = 0; r < n; r++) {
+            int bestItem = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (!taken[i] && scores[i] > 0f && (bestItem < 0 || scores[i] > scores[bestItem])) bestItem = i;
+            }
+            if (bestItem < 0) break;
+            taken[bestItem] = true;
+            out.add(new Recommendation(m.itemId(bestItem), scores[bestItem]));
+        }
+        return out;
+    }
+}
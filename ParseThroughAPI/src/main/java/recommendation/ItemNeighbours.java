@@ -0,0 +1,101 @@
+package recommendation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Up to k neighbours per anime, best first, in flat arrays: the neighbours of anime i (dense index of the
+ * RatingMatrix) are neighbour(i, r) / similarity(i, r) for r in [0, count(i)).
+ */
+public final class ItemNeighbours {
+
+    private final RatingMatrix matrix;
+    private final int k;
+    private final int[] counts;
+    private final int[] neighbours;
+    private final float[] similarities;
+
+    ItemNeighbours(RatingMatrix matrix, int k) {
+        this.matrix = matrix;
+        this.k = k;
+        this.counts = new int[matrix.items()];
+        this.neighbours = new int[Math.multiplyExact(matrix.items(), k)];
+        this.similarities = new float[neighbours.length];
+    }
+
+    /**
+     * Each anime is written by exactly one task, so no synchronisation is needed.
+     */
+    void set(int i, int[] items, float[] sims, int count) {
+        System.arraycopy(items, 0, neighbours, i * k, count);
+        System.arraycopy(sims, 0, similarities, i * k, count);
+        counts[i] = count;
+    }
+
+    public RatingMatrix matrix() {
+        return matrix;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public int count(int i) {
+        return counts[i];
+    }
+
+    /**
+     * @return dense index of the r-th neighbour of anime i
+     */
+    public int neighbour(int i, int r) {
+        return neighbours[i * k + r];
+    }
+
+    public float similarity(int i, int r) {
+        return similarities[i * k + r];
+    }
+
+    /**
+     * @return mal_ids of the most similar anime, best first; empty for an unknown anime
+     */
+    public int[] similarTo(int animeId) {
+        int i = matrix.itemIndex(animeId);
+        if (i < 0) return new int[0];
+        int[] ids = new int[counts[i]];
+        for (int r = 0; r < ids.length; r++) ids[r] = matrix.itemId(neighbour(i, r));
+        return ids;
+    }
+
+    /**
+     * Writes "anime_id, neighbour_id, similarity" lines, tab-separated with a header, best neighbour first.
+     * @return number of pairs written
+     */
+    public long writeTsv(Path file) throws IOException {
+        long pairs = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("anime_id\tneighbour_id\tsimilarity\n");
+            for (int i = 0; i < counts.length; i++) {
+                for (int r = 0; r < counts[i]; r++) {
+                    out.write(Integer.toString(matrix.itemId(i)));
+                    out.write('\t');
+                    out.write(Integer.toString(matrix.itemId(neighbour(i, r))));
+                    out.write('\t');
+                    out.write(Float.toString(similarity(i, r)));
+                    out.write('\n');
+                    pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemNeighbours{items=" + counts.length + ", k=" + k
+                + ", pairs=" + Arrays.stream(counts).asLongStream().sum() + "}";
+    }
+}
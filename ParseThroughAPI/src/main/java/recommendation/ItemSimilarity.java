@@ -0,0 +1,255 @@
+package recommendation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Top-K item-item neighbours over a RatingMatrix.
+ * For one anime i the dot products with every other anime are accumulated by walking the users who rated i
+ * (CSC column) and everything those users rated (CSR rows), into a dense accumulator. Only anime
+ * that share a user with i are touched, and nothing is allocated per anime.
+ * Anime are split into ranges that a ForkJoinPool works through; ranges are stolen, so a few very popular
+ * anime (the expensive ones) do not leave the other threads idle.
+ */
+public final class ItemSimilarity {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ItemSimilarity.class);
+
+    // anime per leaf task; small, because the cost of one anime ranges over several orders of magnitude
+    private static final int LEAF_ITEMS = 8;
+
+    public enum Measure {
+        /** cosine of the raw score vectors */
+        COSINE,
+        /** cosine after subtracting each user's mean score, which removes lenient vs strict raters */
+        ADJUSTED_COSINE
+    }
+
+    private ItemSimilarity() {}
+
+    /**
+     * Anime with a similarity of zero or below are not neighbours.
+     * @param k              neighbours kept per anime
+     * @param minCommonUsers pairs rated together by fewer users are not neighbours either
+     */
+    public static ItemNeighbours topK(RatingMatrix matrix, int k, Measure measure, int minCommonUsers,
+                                      ForkJoinPool pool) {
+        if (k <= 0) throw new IllegalArgumentException("k must be positive: " + k);
+        long start = System.nanoTime();
+        float[] rowValues = matrix.rowValues();
+        float[] colValues = matrix.colValues();
+        if (measure == Measure.ADJUSTED_COSINE) {
+            float[] means = userMeans(matrix);
+            rowValues = centeredRows(matrix, means);
+            colValues = centeredColumns(matrix, means);
+        }
+        float[] norms = norms(matrix, colValues);
+
+        ItemNeighbours result = new ItemNeighbours(matrix, k);
+        Job job = new Job(matrix, rowValues, colValues, norms, k, Math.max(1, minCommonUsers), result,
+                new ConcurrentLinkedQueue<>());
+        pool.invoke(new ItemRange(job, 0, matrix.items()));
+        LOGGER.info("Top-{} {} neighbours of {} anime computed in {} ms on {} threads", k, measure,
+                matrix.items(), (System.nanoTime() - start) / 1_000_000, pool.getParallelism());
+        return result;
+    }
+
+    static float[] userMeans(RatingMatrix m) {
+        float[] means = new float[m.users()];
+        float[] values = m.rowValues();
+        for (int u = 0; u < m.users(); u++) {
+            double sum = 0;
+            for (int p = m.rowStart(u); p < m.rowEnd(u); p++) sum += values[p];
+            int n = m.rowEnd(u) - m.rowStart(u);
+            means[u] = n == 0 ? 0f : (float) (sum / n);
+        }
+        return means;
+    }
+
+    private static float[] centeredRows(RatingMatrix m, float[] means) {
+        float[] values = m.rowValues();
+        float[] centered = new float[values.length];
+        for (int u = 0; u < m.users(); u++) {
+            for (int p = m.rowStart(u); p < m.rowEnd(u); p++) centered[p] = values[p] - means[u];
+        }
+        return centered;
+    }
+
+    private static float[] centeredColumns(RatingMatrix m, float[] means) {
+        float[] values = m.colValues();
+        int[] users = m.colUsers();
+        float[] centered = new float[values.length];
+        for (int p = 0; p < values.length; p++) centered[p] = values[p] - means[users[p]];
+        return centered;
+    }
+
+    private static float[] norms(RatingMatrix m, float[] colValues) {
+        float[] norms = new float[m.items()];
+        for (int i = 0; i < m.items(); i++) {
+            double sum = 0;
+            for (int p = m.colStart(i); p < m.colEnd(i); p++) sum += (double) colValues[p] * colValues[p];
+            norms[i] = (float) Math.sqrt(sum);
+        }
+        return norms;
+    }
+
+    /**
+     * One run. Scratch buffers are handed between the leaf tasks through a queue instead of a ThreadLocal,
+     * so no worker thread keeps the matrix reachable after the run; there are about as many as threads.
+     */
+    private record Job(RatingMatrix matrix, float[] rowValues, float[] colValues, float[] norms,
+                       int k, int minCommonUsers, ItemNeighbours result, Queue<Scratch> idle) {}
+
+    // never serialized, the job is transient
+    private static final class ItemRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Job job;
+        private final int from;
+        private final int to;
+
+        ItemRange(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_ITEMS) {
+                Scratch scratch = job.idle.poll();
+                if (scratch == null) scratch = new Scratch(job);
+                for (int i = from; i < to; i++) scratch.neighboursOf(i);
+                job.idle.offer(scratch);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ItemRange(job, from, mid), new ItemRange(job, mid, to));
+        }
+    }
+
+    /**
+     * Accumulator used by one thread at a time: a dense dot-product row, co-rating counts that double as
+     * the "touched" marker, the list of touched anime and a bounded min-heap for the best k.
+     */
+    private static final class Scratch {
+        private final Job job;
+        private final float[] dots;
+        private final int[] common;
+        private final int[] touched;
+        private final float[] heapSim;
+        private final int[] heapItem;
+        private int heapSize;
+
+        Scratch(Job job) {
+            this.job = job;
+            int items = job.matrix.items();
+            dots = new float[items];
+            common = new int[items];
+            touched = new int[items];
+            heapSim = new float[job.k];
+            heapItem = new int[job.k];
+        }
+
+        void neighboursOf(int i) {
+            float normI = job.norms[i];
+            if (normI == 0f) return;
+            RatingMatrix m = job.matrix;
+            int[] colUsers = m.colUsers();
+            float[] colValues = job.colValues;
+            int[] rowItems = m.rowItems();
+            float[] rowValues = job.rowValues;
+
+            int n = 0;
+            for (int p = m.colStart(i); p < m.colEnd(i); p++) {
+                int u = colUsers[p];
+                float a = colValues[p];
+                for (int q = m.rowStart(u); q < m.rowEnd(u); q++) {
+                    int j = rowItems[q];
+                    if (common[j]++ == 0) touched[n++] = j;
+                    dots[j] += a * rowValues[q];
+                }
+            }
+
+            heapSize = 0;
+            float[] norms = job.norms;
+            for (int t = 0; t < n; t++) {
+                int j = touched[t];
+                if (j != i && common[j] >= job.minCommonUsers && norms[j] != 0f) {
+                    float sim = dots[j] / (normI * norms[j]);
+                    if (sim > 0f) offer(sim, j);
+                }
+                dots[j] = 0f;
+                common[j] = 0;
+            }
+            job.result.set(i, heapItem, heapSim, drainDescending());
+        }
+
+        private void offer(float sim, int item) {
+            if (heapSize < heapSim.length) {
+                int c = heapSize++;
+                heapSim[c] = sim;
+                heapItem[c] = item;
+                siftUp(c);
+            } else if (worse(heapSim[0], heapItem[0], sim, item)) {
+                heapSim[0] = sim;
+                heapItem[0] = item;
+                siftDown(0, heapSize);
+            }
+        }
+
+        /**
+         * Sorts the heap in place, best first.
+         * @return the number of neighbours
+         */
+        private int drainDescending() {
+            int size = heapSize;
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return size;
+        }
+
+        // lower similarity is worse; on a tie the higher index is worse, so the result is deterministic
+        private static boolean worse(float simA, int itemA, float simB, int itemB) {
+            return simA < simB || (simA == simB && itemA > itemB);
+        }
+
+        private void siftUp(int c) {
+            while (c > 0) {
+                int parent = (c - 1) >>> 1;
+                if (!worse(heapSim[c], heapItem[c], heapSim[parent], heapItem[parent])) break;
+                swap(c, parent);
+                c = parent;
+            }
+        }
+
+        private void siftDown(int c, int size) {
+            while (true) {
+                int child = 2 * c + 1;
+                if (child >= size) return;
+                if (child + 1 < size && worse(heapSim[child + 1], heapItem[child + 1], heapSim[child], heapItem[child])) {
+                    child++;
+                }
+                if (!worse(heapSim[child], heapItem[child], heapSim[c], heapItem[c])) return;
+                swap(c, child);
+                c = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            float s = heapSim[a];
+            heapSim[a] = heapSim[b];
+            heapSim[b] = s;
+            int i = heapItem[a];
+            heapItem[a] = heapItem[b];
+            heapItem[b] = i;
+        }
+    }
+}
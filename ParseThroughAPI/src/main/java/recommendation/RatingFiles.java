@@ -0,0 +1,318 @@
+package recommendation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Reads the evaluations written by DataOutputToFile back into a RatingMatrix. Only user_id, anime_id and score
+ * are decoded, straight into the matrix builder, without a record object per row. Accepted layouts:
+ * - a single file (out/evaluations.parquet)
+ * - a partitioned directory (out/evaluations/part-*.parquet); it must contain _SUCCESS
+ * - an incremental directory (out/evaluations_incremental); parts are applied in manifest order and
+ *   a user's rows come from the newest part that contains the user
+ * user_id may be an anonymized string, then users get sequential ids and userKey() returns the string,
+ * or an int (dense id or raw id), then it is used as is.
+ */
+public final class RatingFiles {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RatingFiles.class);
+
+    static final String SUCCESS_FILE = "_SUCCESS";
+    static final String MANIFEST_FILE = "manifest.json";
+
+    public record Ratings(RatingMatrix matrix, List<String> userKeys) {
+        /**
+         * @return the user_id as it appears in the export
+         */
+        public String userKey(int u) {
+            int id = matrix.userId(u);
+            return userKeys == null ? Integer.toString(id) : userKeys.get(id);
+        }
+    }
+
+    private RatingFiles() {}
+
+    public static Ratings read(Path path) throws IOException {
+        long start = System.nanoTime();
+        Reader reader = new Reader();
+        if (Files.isRegularFile(path)) {
+            reader.readPart(path, null);
+        } else if (Files.isRegularFile(path.resolve(MANIFEST_FILE))) {
+            List<Path> parts = incrementalParts(path);
+            // newest first: users seen in a newer part are skipped in every older one
+            BitSet done = new BitSet();
+            for (int p = parts.size() - 1; p >= 0; p--) {
+                BitSet seen = new BitSet();
+                reader.readPart(parts.get(p), new UserFilter(done, seen));
+                done.or(seen);
+            }
+        } else if (Files.isDirectory(path)) {
+            if (!Files.exists(path.resolve(SUCCESS_FILE))) {
+                throw new IllegalStateException("Export in " + path + " is incomplete, " + SUCCESS_FILE + " is missing");
+            }
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path part : files.filter(f -> f.getFileName().toString().endsWith(".parquet")).sorted().toList()) {
+                    reader.readPart(part, null);
+                }
+            }
+        } else {
+            throw new IOException("No exported ratings at " + path);
+        }
+        RatingMatrix matrix = reader.builder.build();
+        LOGGER.info("Read {} ratings of {} users for {} anime from {} in {} ms", matrix.nnz(), matrix.users(),
+                matrix.items(), path, (System.nanoTime() - start) / 1_000_000);
+        return new Ratings(matrix, Boolean.TRUE.equals(reader.stringIds) ? reader.keys : null);
+    }
+
+    private static List<Path> incrementalParts(Path dir) throws IOException {
+        JsonNode manifest = new ObjectMapper().readTree(dir.resolve(MANIFEST_FILE).toFile());
+        List<Path> parts = new ArrayList<>();
+        for (JsonNode part : manifest.path("parts")) parts.add(dir.resolve(part.get("file").asText()));
+        return parts;
+    }
+
+    /**
+     * Rows of users in done are dropped, every user of the part is collected in seen.
+     */
+    private record UserFilter(BitSet done, BitSet seen) {
+        boolean accept(int user) {
+            seen.set(user);
+            return !done.get(user);
+        }
+    }
+
+    /**
+     * The current row, reused for every record.
+     */
+    private static final class Row {
+        int user;
+        int anime;
+        float score;
+        boolean hasScore;
+    }
+
+    private static final class Reader {
+        final RatingMatrix.Builder builder = RatingMatrix.builder();
+        final List<String> keys = new ArrayList<>();
+        final Map<String, Integer> keyIndex = new HashMap<>();
+        // null until the first part is opened
+        Boolean stringIds;
+        Path current;
+
+        void readPart(Path file, UserFilter filter) throws IOException {
+            current = file;
+            InputFile in = HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(file.toAbsolutePath().toString()),
+                    new Configuration());
+            try (ParquetReader<Row> reader = new Builder(in, this).build()) {
+                for (Row row = reader.read(); row != null; row = reader.read()) {
+                    if (filter != null && !filter.accept(row.user)) continue;
+                    if (!row.hasScore || row.score <= 0f) continue;
+                    builder.add(row.user, row.anime, row.score);
+                }
+            }
+        }
+
+        void userIdType(boolean isString) {
+            if (stringIds != null && stringIds != isString) {
+                throw new IllegalStateException("user_id of " + current + " is " + (isString ? "a string" : "a number")
+                        + ", other parts differ");
+            }
+            stringIds = isString;
+        }
+
+        int intern(Binary key) {
+            String s = key.toStringUsingUTF8();
+            Integer id = keyIndex.get(s);
+            if (id == null) {
+                id = keys.size();
+                keys.add(s);
+                keyIndex.put(s, id);
+            }
+            return id;
+        }
+    }
+
+    private static final class Builder extends ParquetReader.Builder<Row> {
+        private final Reader reader;
+
+        Builder(InputFile file, Reader reader) {
+            super(file);
+            this.reader = reader;
+        }
+
+        @Override
+        protected ReadSupport<Row> getReadSupport() {
+            return new RatingReadSupport(reader);
+        }
+    }
+
+    private static final class RatingReadSupport extends ReadSupport<Row> {
+        private final Reader reader;
+
+        RatingReadSupport(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ReadContext init(InitContext context) {
+            MessageType file = context.getFileSchema();
+            List<Type> projected = new ArrayList<>(3);
+            for (String name : List.of("user_id", "anime_id", "score")) {
+                projected.add(field(file, name));
+            }
+            return new ReadContext(new MessageType(file.getName(), projected));
+        }
+
+        @Override
+        public RecordMaterializer<Row> prepareForRead(ParquetConfiguration configuration,
+                                                      Map<String, String> keyValueMetaData,
+                                                      MessageType fileSchema, ReadContext readContext) {
+            MessageType schema = readContext.getRequestedSchema();
+            Type user = schema.getType(0);
+            boolean stringIds = user.asPrimitiveType().getPrimitiveTypeName() == PrimitiveTypeName.BINARY;
+            reader.userIdType(stringIds);
+            return new RowMaterializer(reader, stringIds);
+        }
+
+        // still abstract in ReadSupport, readers given a Hadoop Configuration call this one
+        @Override
+        @Deprecated
+        public RecordMaterializer<Row> prepareForRead(Configuration configuration, Map<String, String> keyValueMetaData,
+                                                      MessageType fileSchema, ReadContext readContext) {
+            return prepareForRead(new HadoopParquetConfiguration(configuration), keyValueMetaData, fileSchema,
+                    readContext);
+        }
+
+        // column names follow the JDBC labels, lower case on PostgreSQL and upper case on H2
+        private static Type field(MessageType schema, String name) {
+            for (Type t : schema.getFields()) {
+                if (t.getName().equalsIgnoreCase(name)) return t;
+            }
+            throw new IllegalStateException("Exported ratings have no " + name + " column: " + schema);
+        }
+    }
+
+    private static final class RowMaterializer extends RecordMaterializer<Row> {
+        private final Row row = new Row();
+        private final GroupConverter root;
+
+        RowMaterializer(Reader reader, boolean stringIds) {
+            PrimitiveConverter user = stringIds
+                    ? new PrimitiveConverter() {
+                        // rows of one user usually come together, so most lookups hit the previous key
+                        private Binary last;
+                        private int lastId;
+
+                        @Override
+                        public void addBinary(Binary value) {
+                            if (!value.equals(last)) {
+                                lastId = reader.intern(value);
+                                last = value.copy();
+                            }
+                            row.user = lastId;
+                        }
+                    }
+                    : new PrimitiveConverter() {
+                        @Override
+                        public void addInt(int value) {
+                            row.user = value;
+                        }
+
+                        @Override
+                        public void addLong(long value) {
+                            row.user = Math.toIntExact(value);
+                        }
+                    };
+            PrimitiveConverter anime = new PrimitiveConverter() {
+                @Override
+                public void addInt(int value) {
+                    row.anime = value;
+                }
+
+                @Override
+                public void addLong(long value) {
+                    row.anime = Math.toIntExact(value);
+                }
+            };
+            PrimitiveConverter score = new PrimitiveConverter() {
+                @Override
+                public void addInt(int value) {
+                    row.score = value;
+                    row.hasScore = true;
+                }
+
+                @Override
+                public void addLong(long value) {
+                    row.score = value;
+                    row.hasScore = true;
+                }
+
+                @Override
+                public void addFloat(float value) {
+                    row.score = value;
+                    row.hasScore = true;
+                }
+
+                @Override
+                public void addDouble(double value) {
+                    row.score = (float) value;
+                    row.hasScore = true;
+                }
+            };
+            Converter[] fields = {user, anime, score};
+            root = new GroupConverter() {
+                @Override
+                public Converter getConverter(int fieldIndex) {
+                    return fields[fieldIndex];
+                }
+
+                @Override
+                public void start() {
+                    row.hasScore = false;
+                }
+
+                @Override
+                public void end() {
+                }
+            };
+        }
+
+        @Override
+        public Row getCurrentRecord() {
+            return row;
+        }
+
+        @Override
+        public GroupConverter getRootConverter() {
+            return root;
+        }
+    }
+}
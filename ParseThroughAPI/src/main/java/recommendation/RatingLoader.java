@@ -0,0 +1,41 @@
+package recommendation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.SimpleDataExtract;
+
+import java.util.List;
+
+/**
+ * Reads scored user_anime_stat rows into a RatingMatrix. MAL stores "not scored" as 0 or NULL,
+ * those rows carry no preference and are left out.
+ */
+public final class RatingLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RatingLoader.class);
+
+    static final String SCORED_RATINGS_SQL =
+            "SELECT user_id, anime_id, score FROM user_anime_stat WHERE score > 0";
+
+    private RatingLoader() {}
+
+    /**
+     * Streams every scored rating with the extractor's fetch size, so the rows never sit in memory as objects.
+     */
+    public static RatingMatrix fromDatabase(SimpleDataExtract extractor) throws Exception {
+        return fromQuery(extractor, SCORED_RATINGS_SQL, List.of());
+    }
+
+    /**
+     * @param sql a query whose first three columns are user id, anime id and score
+     */
+    public static RatingMatrix fromQuery(SimpleDataExtract extractor, String sql, List<Object> params) throws Exception {
+        long start = System.nanoTime();
+        RatingMatrix.Builder builder = RatingMatrix.builder();
+        extractor.streamQuery(sql, params, rs -> builder.add(rs.getInt(1), rs.getInt(2), rs.getFloat(3)));
+        RatingMatrix matrix = builder.build();
+        LOGGER.info("Loaded {} ratings of {} users for {} anime in {} ms",
+                matrix.nnz(), matrix.users(), matrix.items(), (System.nanoTime() - start) / 1_000_000);
+        return matrix;
+    }
+}
@@ -0,0 +1,240 @@
+package recommendation;
+
+import java.util.Arrays;
+
+/**
+ * Sparse user x anime score matrix, stored twice in primitive arrays:
+ * CSR (rows = users, for "what did this user rate") and CSC (columns = anime, for "who rated this anime").
+ * Users and anime are addressed by dense indices 0..users()-1 / 0..items()-1; userId(u) / itemId(i) give
+ * the mal_id back and userIndex / itemIndex look it up (binary search, the ids are sorted).
+ * Within a row the item indices are ascending, within a column the user indices are ascending.
+ * 50M ratings take about 400 MB per layout (int index + float value per entry).
+ */
+public final class RatingMatrix {
+
+    private final int[] userIds;
+    private final int[] itemIds;
+
+    private final int[] rowPtr;
+    private final int[] rowItems;
+    private final float[] rowValues;
+
+    private final int[] colPtr;
+    private final int[] colUsers;
+    private final float[] colValues;
+
+    private RatingMatrix(int[] userIds, int[] itemIds, int[] rowPtr, int[] rowItems, float[] rowValues) {
+        this.userIds = userIds;
+        this.itemIds = itemIds;
+        this.rowPtr = rowPtr;
+        this.rowItems = rowItems;
+        this.rowValues = rowValues;
+
+        // transpose; rows are visited in order, so every column comes out sorted by user
+        int nnz = rowItems.length;
+        colPtr = new int[itemIds.length + 1];
+        for (int p = 0; p < nnz; p++) colPtr[rowItems[p] + 1]++;
+        for (int i = 0; i < itemIds.length; i++) colPtr[i + 1] += colPtr[i];
+        colUsers = new int[nnz];
+        colValues = new float[nnz];
+        int[] next = Arrays.copyOf(colPtr, itemIds.length);
+        for (int u = 0; u < userIds.length; u++) {
+            for (int p = rowPtr[u]; p < rowPtr[u + 1]; p++) {
+                int q = next[rowItems[p]]++;
+                colUsers[q] = u;
+                colValues[q] = rowValues[p];
+            }
+        }
+    }
+
+    public int users() {
+        return userIds.length;
+    }
+
+    public int items() {
+        return itemIds.length;
+    }
+
+    public int nnz() {
+        return rowItems.length;
+    }
+
+    public int userId(int u) {
+        return userIds[u];
+    }
+
+    public int itemId(int i) {
+        return itemIds[i];
+    }
+
+    /**
+     * @return the dense index of the user, or -1 if the user has no ratings
+     */
+    public int userIndex(int userId) {
+        int u = Arrays.binarySearch(userIds, userId);
+        return u >= 0 ? u : -1;
+    }
+
+    /**
+     * @return the dense index of the anime, or -1 if nobody rated it
+     */
+    public int itemIndex(int animeId) {
+        int i = Arrays.binarySearch(itemIds, animeId);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * Ratings of user u are rowItems()[p] / rowValues()[p] for p in [rowStart(u), rowEnd(u)).
+     * The arrays are shared, not copied, so the hot loops can index them directly.
+     */
+    public int rowStart(int u) {
+        return rowPtr[u];
+    }
+
+    public int rowEnd(int u) {
+        return rowPtr[u + 1];
+    }
+
+    int[] rowPtr() {
+        return rowPtr;
+    }
+
+    public int[] rowItems() {
+        return rowItems;
+    }
+
+    public float[] rowValues() {
+        return rowValues;
+    }
+
+    /**
+     * Ratings of anime i are colUsers()[p] / colValues()[p] for p in [colStart(i), colEnd(i)).
+     */
+    public int colStart(int i) {
+        return colPtr[i];
+    }
+
+    public int colEnd(int i) {
+        return colPtr[i + 1];
+    }
+
+    int[] colPtr() {
+        return colPtr;
+    }
+
+    public int[] colUsers() {
+        return colUsers;
+    }
+
+    public float[] colValues() {
+        return colValues;
+    }
+
+    /**
+     * @return the score user u gave anime i, or NaN if there is none
+     */
+    public float get(int u, int i) {
+        int p = Arrays.binarySearch(rowItems, rowPtr[u], rowPtr[u + 1], i);
+        return p >= 0 ? rowValues[p] : Float.NaN;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Collects (user, anime, score) triplets in growable primitive arrays. The same pair added twice keeps
+     * the score added last, so a delta export can be applied on top of its base.
+     */
+    public static final class Builder {
+        private int[] users = new int[1024];
+        private int[] items = new int[1024];
+        private float[] values = new float[1024];
+        private int size;
+
+        private Builder() {}
+
+        public Builder add(int userId, int animeId, float score) {
+            if (size == users.length) {
+                int capacity = Math.max(size + 1, size + (size >> 1));
+                users = Arrays.copyOf(users, capacity);
+                items = Arrays.copyOf(items, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            users[size] = userId;
+            items[size] = animeId;
+            values[size] = score;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public RatingMatrix build() {
+            int[] userIds = distinctSorted(users, size);
+            int[] itemIds = distinctSorted(items, size);
+
+            // counting sort by user; stable, so within a row the insertion order is kept
+            int[] rowPtr = new int[userIds.length + 1];
+            int[] userOf = new int[size];
+            for (int k = 0; k < size; k++) {
+                int u = Arrays.binarySearch(userIds, users[k]);
+                userOf[k] = u;
+                rowPtr[u + 1]++;
+            }
+            for (int u = 0; u < userIds.length; u++) rowPtr[u + 1] += rowPtr[u];
+            int[] rowItems = new int[size];
+            float[] rowValues = new float[size];
+            int[] next = Arrays.copyOf(rowPtr, userIds.length);
+            int maxRow = 0;
+            for (int k = 0; k < size; k++) {
+                int p = next[userOf[k]]++;
+                rowItems[p] = Arrays.binarySearch(itemIds, items[k]);
+                rowValues[p] = values[k];
+            }
+            for (int u = 0; u < userIds.length; u++) maxRow = Math.max(maxRow, rowPtr[u + 1] - rowPtr[u]);
+
+            // sort each row by item and drop repeated pairs, keeping the last one added
+            long[] keys = new long[maxRow];
+            float[] scratch = new float[maxRow];
+            int out = 0;
+            int rowStart = 0;
+            for (int u = 0; u < userIds.length; u++) {
+                int from = rowStart;
+                int len = rowPtr[u + 1] - from;
+                rowStart = rowPtr[u + 1];
+                for (int k = 0; k < len; k++) {
+                    keys[k] = ((long) rowItems[from + k] << 32) | k;
+                    scratch[k] = rowValues[from + k];
+                }
+                Arrays.sort(keys, 0, len);
+                rowPtr[u] = out;
+                for (int k = 0; k < len; k++) {
+                    int item = (int) (keys[k] >>> 32);
+                    if (k + 1 < len && (int) (keys[k + 1] >>> 32) == item) continue;
+                    rowItems[out] = item;
+                    rowValues[out] = scratch[(int) keys[k]];
+                    out++;
+                }
+            }
+            rowPtr[userIds.length] = out;
+            if (out < size) {
+                rowItems = Arrays.copyOf(rowItems, out);
+                rowValues = Arrays.copyOf(rowValues, out);
+            }
+            return new RatingMatrix(userIds, itemIds, rowPtr, rowItems, rowValues);
+        }
+
+        private static int[] distinctSorted(int[] ids, int size) {
+            int[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            int n = 0;
+            for (int k = 0; k < size; k++) {
+                if (n == 0 || sorted[k] != sorted[n - 1]) sorted[n++] = sorted[k];
+            }
+            return Arrays.copyOf(sorted, n);
+        }
+    }
+}
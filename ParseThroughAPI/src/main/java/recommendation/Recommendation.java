@@ -0,0 +1,6 @@
+package recommendation;
+
+/**
+ * One recommended anime with the score it was ranked by; scores are only comparable within one list.
+ */
+public record Recommendation(int animeId, float score) {}
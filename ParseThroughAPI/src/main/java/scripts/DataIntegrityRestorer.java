@@ -12,8 +12,22 @@ import user_parsing.StatsData;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
+import org.hibernate.Session;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class DataIntegrityRestorer {
 
@@ -22,6 +36,8 @@ public class DataIntegrityRestorer {
     private final int batchSize;
     private final UserResyncService resyncService;
     private final boolean deleteOnFailure;
+    private final boolean refreshInSync;
+    private int workers = 1;
     private static final Logger LOGGER = LoggerFactory.getLogger(DataIntegrityRestorer.class);
 
     public DataIntegrityRestorer(double thresholdPercent, int batchSize, int resyncPersistBatchSize) {
@@ -34,33 +50,205 @@ public class DataIntegrityRestorer {
         this.batchSize = batchSize;
         this.resyncService = new UserResyncService(resyncPersistBatchSize);
         this.deleteOnFailure = deleteOnFailure;
+        this.refreshInSync = FetchUsers.isIncrementalSyncEnabled();
     }
 
+    static final long PROGRESS_INTERVAL_SEC = 30;
+
+    static final String MISMATCH_PAGE_SQL = """
+            WITH page AS (
+                SELECT mal_id, username, url FROM users WHERE mal_id > ? ORDER BY mal_id LIMIT ?
+            )
+            SELECT p.mal_id, p.username, p.url IS NULL AS missing_profile,
+                   COALESCE(s.total_entries, 0) AS reported, COUNT(r.anime_id) AS native_count
+            FROM page p
+            LEFT JOIN user_stat s ON s.user_id = p.mal_id
+            LEFT JOIN user_anime_stat r ON r.user_id = p.mal_id
+            GROUP BY p.mal_id, p.username, p.url, s.total_entries
+            ORDER BY p.mal_id
+            """;
+
+    /**
+     * A user whose stored list disagrees with user_stat.total_entries, or whose profile is incomplete,
+     * or, in incremental sync mode, whose list agrees and only gets a routine refresh.
+     */
+    public record Mismatch(int malId, String username, long nativeCount, int reported,
+                           double diffPercent, boolean missingProfile) {}
+
     public void run() {
+        long start = System.nanoTime();
+        List<Mismatch> worklist = findMismatches();
+        long resyncs = worklist.stream().filter(m -> m.diffPercent() > thresholdPercent).count();
+        long refreshes = worklist.stream().filter(m -> m.diffPercent() <= thresholdPercent && isRefreshed(m)).count();
+        LOGGER.info("Detection found {} users to resync, {} list refreshes and {} profile-only refreshes in {} ms",
+                resyncs, refreshes, worklist.size() - resyncs - refreshes, (System.nanoTime() - start) / 1_000_000);
+
+        RestoreProgress progress = processWorklist(worklist, workers, this::processMismatch);
+        LOGGER.info("Restore finished: {}", progress.summary(System.nanoTime()));
+    }
+
+    /**
+     * Number of threads that pull users from the worklist. HTTP calls go through the
+     * process-wide HostRateLimiters, so extra workers only overlap backoff sleeps and DB work.
+     */
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Runs the action for every entry, in worklist order, on up to {@code workers} threads.
+     * An action that throws is counted as failed and does not stop the others.
+     */
+    static RestoreProgress processWorklist(List<Mismatch> worklist, int workers, Predicate<Mismatch> action) {
+        RestoreProgress progress = new RestoreProgress(worklist.size());
+        Queue<Mismatch> queue = new ConcurrentLinkedQueue<>(worklist);
+        Runnable worker = () -> {
+            Mismatch m;
+            while (!Thread.currentThread().isInterrupted() && (m = queue.poll()) != null) {
+                boolean ok = false;
+                try {
+                    ok = action.test(m);
+                } catch (Exception ex) {
+                    LOGGER.error("Error processing user {} ({})", m.malId(), m.username(), ex);
+                }
+                progress.record(ok);
+            }
+        };
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "restore-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(progress::log, PROGRESS_INTERVAL_SEC, PROGRESS_INTERVAL_SEC, TimeUnit.SECONDS);
+        try {
+            int threads = Math.min(Math.max(1, workers), Math.max(1, worklist.size()));
+            if (threads == 1) {
+                worker.run();
+                return progress;
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) pool.execute(worker);
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ie) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Restore interrupted after {}", progress.summary(System.nanoTime()));
+            }
+            return progress;
+        } finally {
+            reporter.shutdownNow();
+        }
+    }
+
+    /**
+     * Detection phase: compares COUNT(user_anime_stat) with user_stat.total_entries for every user,
+     * one grouped query per keyset page of users.
+     * @return users above the threshold ranked by relative difference, then users that only miss profile fields
+     */
+    public List<Mismatch> findMismatches() {
         EntityManager em = emf.createEntityManager();
         try {
-            int offset = 0;
+            return em.unwrap(Session.class)
+                    .doReturningWork(conn -> findMismatches(conn, batchSize, thresholdPercent, refreshInSync));
+        } finally {
+            em.close();
+        }
+    }
+
+    static List<Mismatch> findMismatches(Connection conn, int pageSize, double thresholdPercent) throws SQLException {
+        return findMismatches(conn, pageSize, thresholdPercent, false);
+    }
+
+    /**
+     * @param includeInSync also list users within the threshold that have a stored list, after the others
+     */
+    static List<Mismatch> findMismatches(Connection conn, int pageSize, double thresholdPercent,
+                                         boolean includeInSync) throws SQLException {
+        List<Mismatch> resync = new ArrayList<>();
+        List<Mismatch> profileOnly = new ArrayList<>();
+        List<Mismatch> inSync = new ArrayList<>();
+        long scanned = 0;
+        int lastId = Integer.MIN_VALUE;
+        try (PreparedStatement ps = conn.prepareStatement(MISMATCH_PAGE_SQL)) {
             while (true) {
-                List<Users> users = em.createQuery("SELECT u FROM Users u ORDER BY u.malId", Users.class)
-                        .setFirstResult(offset)
-                        .setMaxResults(batchSize)
-                        .getResultList();
-                if (users == null || users.isEmpty()) break;
-
-                for (Users user : users) {
-                    try {
-                        processUserById(user.getMalId());
-                    } catch (Exception ex) {
-                        LOGGER.error("Error processing user {} ({})",user.getMalId(), user.getUsername(), ex);
+                ps.setInt(1, lastId);
+                ps.setInt(2, pageSize);
+                int rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastId = rs.getInt(1);
+                        long nativeCount = rs.getLong(5);
+                        int reported = rs.getInt(4);
+                        double diff = computeDiffPercent(nativeCount, reported);
+                        boolean missingProfile = rs.getBoolean(3);
+                        if (diff > thresholdPercent) {
+                            resync.add(new Mismatch(lastId, rs.getString(2), nativeCount, reported, diff, missingProfile));
+                        } else if (includeInSync && nativeCount > 0) {
+                            inSync.add(new Mismatch(lastId, rs.getString(2), nativeCount, reported, diff, missingProfile));
+                        } else if (missingProfile) {
+                            profileOnly.add(new Mismatch(lastId, rs.getString(2), nativeCount, reported, diff, true));
+                        }
                     }
                 }
-
-                offset += users.size();
+                scanned += rows;
+                if (rows < pageSize) break;
             }
-            LOGGER.info("Offset processed: {}", offset);
-        } finally {
-            em.close();
         }
+        resync.sort(Comparator.comparingDouble(Mismatch::diffPercent).reversed()
+                .thenComparing(Comparator.comparingLong((Mismatch m) -> Math.abs(m.nativeCount() - m.reported())).reversed()));
+        LOGGER.info("Scanned {} users: {} over threshold, {} with missing profile fields",
+                scanned, resync.size(), profileOnly.size());
+        List<Mismatch> worklist = new ArrayList<>(resync.size() + profileOnly.size() + inSync.size());
+        worklist.addAll(resync);
+        worklist.addAll(profileOnly);
+        worklist.addAll(inSync);
+        return worklist;
+    }
+
+    boolean processMismatch(Mismatch m) {
+        if (m.diffPercent() > thresholdPercent) {
+            LOGGER.info("User {} (malId={}): nativeCount={}, reported={}",
+                    m.username(), m.malId(), m.nativeCount(), m.reported());
+            return handleResyncAndUpdate(m.username(), m.malId(), m.diffPercent());
+        }
+        boolean ok = true;
+        if (isRefreshed(m)) {
+            ok = refreshListIncremental(m);
+        }
+        if (m.missingProfile()) {
+            LOGGER.warn("Missing profile fields for user {}, updating profile only.", m.username());
+            ok &= refreshProfileOnly(m.username());
+        }
+        return ok;
+    }
+
+    private boolean isRefreshed(Mismatch m) {
+        return refreshInSync && m.nativeCount() > 0;
+    }
+
+    /**
+     * Routine refresh of a list that agrees with its stats: one stats call, then usually one load.json page.
+     */
+    private boolean refreshListIncremental(Mismatch m) {
+        StatsData stats;
+        try {
+            stats = FetchUsers.fetchUserStats(m.username());
+        } catch (Exception e) {
+            LOGGER.warn("Could not fetch stats to refresh {}: {}", m.username(), e.getMessage());
+            return false;
+        }
+        if (stats == null || stats.anime == null) {
+            LOGGER.warn("No stats to refresh {}", m.username());
+            return false;
+        }
+        boolean ok = resyncService.refreshUserIncremental(m.username(), m.malId(), stats.anime.totalEntries,
+                thresholdPercent, 3, 500);
+        if (ok) updateUserStatInTx(stats, m.malId());
+        return ok;
     }
 
     public void processUserById(Integer malId) {
@@ -78,7 +266,7 @@ public class DataIntegrityRestorer {
         double diffPercent = computeDiffPercent(r.nativeCount, r.reported);
 
         if (diffPercent > thresholdPercent) {
-            handleResyncAndUpdate(r.user, malId, diffPercent);
+            handleResyncAndUpdate(r.user.getUsername(), malId, diffPercent);
             return;
         }
 
@@ -124,53 +312,55 @@ public class DataIntegrityRestorer {
         }
     }
 
-    private double computeDiffPercent(long dbCount, int reported) {
+    static double computeDiffPercent(long dbCount, int reported) {
         if (reported == 0) {
             return dbCount > 0 ? 1.0 : 0.0;
         }
         return Math.abs(dbCount - reported) / (double) reported;
     }
 
-    private void handleResyncAndUpdate(Users user, int malId, double diffPercent) {
-        System.out.println("MISMATCH (diff=" + (diffPercent * 100) + "%). Starting resync for " + user.getUsername());
+    private boolean handleResyncAndUpdate(String username, int malId, double diffPercent) {
+        System.out.println("MISMATCH (diff=" + (diffPercent * 100) + "%). Starting resync for " + username);
         boolean resyncOk = false;
         try {
-            resyncOk = resyncService.resyncUserUpsertFetchWithRetries(user.getUsername(), malId, 3, 500);
+            // a known mismatch would fail the incremental count check anyway, go straight to the full list
+            resyncOk = resyncService.resyncUserUpsertFetchWithRetries(username, malId, thresholdPercent, 3, 500);
         } catch (Exception e) {
-            System.out.println("Resync threw an exception for " + user.getUsername() + ": " + e.getMessage());
+            System.out.println("Resync threw an exception for " + username + ": " + e.getMessage());
             e.printStackTrace();
         }
 
         if (!resyncOk) {
-            System.out.println("Resync failed for " + user.getUsername() + ".");
+            System.out.println("Resync failed for " + username + ".");
             if (deleteOnFailure) {
                 System.out.println("deleteOnFailure is enabled — deleting user data for malId=" + malId);
                 safeDeleteUserData(malId);
             } else {
-                System.out.println("deleteOnFailure is disabled — keeping existing data for " + user.getUsername());
+                System.out.println("deleteOnFailure is disabled — keeping existing data for " + username);
             }
-            return;
+            return false;
         }
 
-        System.out.println("Resync succeeded for " + user.getUsername() + ". Now updating UserStat.totalEntries from remote stats");
-        updateUserStatFromRemote(user, malId);
+        System.out.println("Resync succeeded for " + username + ". Now updating UserStat.totalEntries from remote stats");
+        updateUserStatFromRemote(username, malId);
+        return true;
     }
 
-    private void updateUserStatFromRemote(Users user, int malId) {
+    private void updateUserStatFromRemote(String username, int malId) {
         try {
-            StatsData freshStats = FetchUsers.fetchUserStats(user.getUsername());
+            StatsData freshStats = FetchUsers.fetchUserStats(username);
             if (freshStats != null) {
                 updateUserStatInTx(freshStats, malId);
-                System.out.println("UserStat updated for " + user.getUsername());
+                System.out.println("UserStat updated for " + username);
             } else {
-                System.out.println("Could not fetch remote stats to update user_stat for " + user.getUsername());
+                System.out.println("Could not fetch remote stats to update user_stat for " + username);
                 if (deleteOnFailure) {
                     System.out.println("deleteOnFailure is enabled — deleting user data because fresh stats couldn't be fetched for malId=" + malId);
                     safeDeleteUserData(malId);
                 }
             }
         } catch (Exception e) {
-            System.out.println("Error fetching remote stats after resync for " + user.getUsername() + ": " + e.getMessage());
+            System.out.println("Error fetching remote stats after resync for " + username + ": " + e.getMessage());
             e.printStackTrace();
             if (deleteOnFailure) {
                 System.out.println("deleteOnFailure is enabled — deleting user data due to exception when fetching fresh stats for malId=" + malId);
@@ -209,13 +399,15 @@ public class DataIntegrityRestorer {
         }
     }
 
-    private void refreshProfileOnly(String username) {
+    private boolean refreshProfileOnly(String username) {
         try {
             user_parsing.UserLite dto = FetchUsers.fetchUserByUsername(username);
             user_parsing.StatsData stats = FetchUsers.fetchUserStats(dto.username);
             persistProfileOnly(dto, stats);
+            return true;
         } catch (Exception e) {
             LOGGER.error("Failed profile-only refresh for {}: ", username, e);
+            return false;
         }
     }
 
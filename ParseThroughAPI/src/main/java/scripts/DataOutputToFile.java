@@ -1,12 +1,24 @@
 package scripts;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import utils.SimpleDataExtract;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DataOutputToFile {
 
@@ -14,6 +26,9 @@ public class DataOutputToFile {
     private final int minimumNumberOfCompletedAnimeInUserLists;
     private final int minimumNumberOfRatedAnimeInUserLists;
     private boolean isShowSql;
+    private int partitions = 1;
+    private boolean incremental;
+    private int exportThreads = DEFAULT_EXPORT_THREADS;
     private final SimpleDataExtract extractor;
 
     private List<String> userAnimeColumns = List.of(
@@ -24,36 +39,42 @@ public class DataOutputToFile {
             "title", "synopsis", "status", "year"
     );
 
-    private static final String GENRES = """
-    (SELECT STRING_AGG(DISTINCT g.name, ', ')
-     FROM genre g
-     JOIN anime_genre ag ON g.mal_id = ag.genre_id
-     WHERE ag.anime_id = a.mal_id) AS genres
-    """;
-
-    private static final String THEMES = """
-    (SELECT STRING_AGG(DISTINCT g.name, ', ')
-     FROM genre g
-     JOIN anime_theme ag ON g.mal_id = ag.genre_id
-     WHERE ag.anime_id = a.mal_id) AS themes
-    """;
-
-    private static final String DEMOGRAPHICS = """
-    (SELECT STRING_AGG(DISTINCT d.name, ', ')
-     FROM demographic d
-     JOIN anime_demographic ad ON d.mal_id = ad.demographic_id
-     WHERE ad.anime_id = a.mal_id) AS demographics
-    """;
-
-    private static final String STUDIOS = """
-    (SELECT STRING_AGG(DISTINCT s.name, ', ')
-     FROM producer s
-     JOIN anime_studio as_ ON s.mal_id = as_.producer_id
-     WHERE as_.anime_id = a.mal_id) AS studios
-    """;
-
-    private static final List<String> ANIME_JOINS_COLUMNS = List.of(
-            GENRES, THEMES, DEMOGRAPHICS, STUDIOS
+    /**
+     * One M:N association of anime, exported as two LIST columns: ids and names, ordered by id.
+     */
+    private record AnimeAssociation(String name, String idsColumn, String joinTable, String refColumn, String refTable) {
+        String selectColumns() {
+            return name + "_agg." + idsColumn + ",\n" + name + "_agg." + name;
+        }
+
+        /**
+         * Aggregated once per join table and joined by anime id, instead of a subquery per anime row.
+         */
+        String join() {
+            return "\nLEFT JOIN (" +
+                    " SELECT j.anime_id," +
+                    " ARRAY_AGG(x.mal_id ORDER BY x.mal_id) AS " + idsColumn + "," +
+                    " ARRAY_AGG(x.name ORDER BY x.mal_id) AS " + name +
+                    " FROM (SELECT DISTINCT anime_id, " + refColumn + " FROM " + joinTable + ") j" +
+                    " JOIN " + refTable + " x ON x.mal_id = j." + refColumn +
+                    " GROUP BY j.anime_id" +
+                    " ) " + name + "_agg ON " + name + "_agg.anime_id = a.mal_id";
+        }
+    }
+
+    static final String SUCCESS_FILE = "_SUCCESS";
+    static final String MANIFEST_FILE = "manifest.json";
+    static final String INCREMENTAL_DIR = "evaluations_incremental";
+    // longer than any ingest transaction, plus clock skew between the crawler and the DB
+    static final Duration WATERMARK_OVERLAP = Duration.ofMinutes(10);
+    // stays below the Hikari pool size, one connection per running part
+    public static final int DEFAULT_EXPORT_THREADS = 4;
+
+    private static final List<AnimeAssociation> ANIME_ASSOCIATIONS = List.of(
+            new AnimeAssociation("genres", "genre_ids", "anime_genre", "genre_id", "genre"),
+            new AnimeAssociation("themes", "theme_ids", "anime_theme", "genre_id", "genre"),
+            new AnimeAssociation("demographics", "demographic_ids", "anime_demographic", "demographic_id", "demographic"),
+            new AnimeAssociation("studios", "studio_ids", "anime_studio", "producer_id", "producer")
     );
     private static final List<String> ANIME_EVALUATION_JOIN_COLUMNS = List.of();
 
@@ -81,6 +102,28 @@ public class DataOutputToFile {
         this.isShowSql = isShowSql;
     }
 
+    /**
+     * @param partitions number of user_id ranges for evaluations; 1 keeps the single evaluations.parquet file
+     */
+    public void setPartitions(int partitions) {
+        this.partitions = Math.max(1, partitions);
+    }
+
+    /**
+     * Exports evaluations as base + delta parts under out/evaluations_incremental, without asking on stdin.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setExportThreads(int exportThreads) {
+        this.exportThreads = Math.max(1, exportThreads);
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
     public List<String> getAnimeFilters() {
         return animeFilters;
     }
@@ -139,8 +182,15 @@ public class DataOutputToFile {
         return newColumns;
     }
 
-    private void saveEvaluations(File outFile) throws Exception {
-        String usersSql = buildSelect("user_anime_stat r",
+    private String evaluationsSql(boolean userRange) {
+        return evaluationsSql(userRange, null);
+    }
+
+    private String evaluationsSql(boolean userRange, String extraFilter) {
+        List<String> filters = new ArrayList<>(animeEvaluationFilters);
+        if (userRange) filters.add("r.user_id >= ? AND r.user_id < ?");
+        if (extraFilter != null) filters.add(extraFilter);
+        return buildSelect("user_anime_stat r",
                 buildColumnsForTable("r", userAnimeColumns, ANIME_EVALUATION_JOIN_COLUMNS)) +
                 "\nJOIN\n" +
                 "user_stat us ON us.user_id = r.user_id" +
@@ -148,10 +198,15 @@ public class DataOutputToFile {
                 " SELECT user_id" +
                 " FROM user_anime_stat" +
                 " WHERE score IS NOT NULL" +
+                (userRange ? " AND user_id >= ? AND user_id < ?" : "") +
                 " GROUP BY user_id " +
                 " HAVING COUNT(score) > ? " +
                 " ) AS active_users ON r.user_id = active_users.user_id\n" +
-                buildFilter(animeEvaluationFilters);
+                buildFilter(filters);
+    }
+
+    private void saveEvaluations(File outFile) throws Exception {
+        String usersSql = evaluationsSql(false);
         if (isShowSql)
             System.out.println(usersSql);
         extractor.exportQueryToParquet(usersSql,
@@ -161,10 +216,199 @@ public class DataOutputToFile {
                 outFile, Set.of("user_id"));
     }
 
-    private void saveAnimes(File outFile) throws Exception {
-        String animeSql = buildSelect("anime a ",
-                buildColumnsForTable("a", animeColumns, ANIME_JOINS_COLUMNS)) +
+    /**
+     * Splits user_anime_stat into user_id ranges and exports them in parallel, one connection and one
+     * part-NNNNN.parquet per range. _SUCCESS is written last, so a directory without it is incomplete.
+     * Only the parts and _SUCCESS of a previous run are removed; anything else in outDir is left alone.
+     */
+    void saveEvaluationsPartitioned(File outDir) throws Exception {
+        Files.createDirectories(outDir.toPath());
+        File[] stale = outDir.listFiles((dir, name) -> isPartitionedOutput(name));
+        if (stale != null) for (File f : stale) Files.delete(f.toPath());
+
+        long[] bounds = {1, 0};
+        extractor.streamQuery("SELECT MIN(user_id), MAX(user_id) FROM user_anime_stat", null, rs -> {
+            long min = rs.getLong(1);
+            if (rs.wasNull()) return;
+            bounds[0] = min;
+            bounds[1] = rs.getLong(2);
+        });
+        List<long[]> ranges = splitRange(bounds[0], bounds[1], partitions);
+        String sql = evaluationsSql(true);
+        if (isShowSql)
+            System.out.println(sql);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(exportThreads, ranges.size()));
+        try {
+            List<Future<Long>> parts = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                File partFile = new File(outDir, partFileName(i));
+                // same values as saveEvaluations, wrapped in the range of the subquery and of the outer filter
+                List<Object> params = List.of(range[0], range[1],
+                        minimumNumberOfCompletedAnimeInUserLists,
+                        minimumNumberOfAnimeInUserLists,
+                        minimumNumberOfRatedAnimeInUserLists,
+                        range[0], range[1]);
+                parts.add(pool.submit(() -> extractor.exportQueryToParquet(sql, params, partFile, Set.of("user_id"))));
+            }
+            Map<String, Long> rowsPerPart = new LinkedHashMap<>();
+            for (int i = 0; i < parts.size(); i++) {
+                try {
+                    rowsPerPart.put(partFileName(i), parts.get(i).get());
+                } catch (ExecutionException e) {
+                    parts.forEach(f -> f.cancel(true));
+                    throw new IllegalStateException("Export of " + partFileName(i) + " failed", e.getCause());
+                }
+            }
+            writeManifest(new File(outDir, SUCCESS_FILE), rowsPerPart);
+            long total = rowsPerPart.values().stream().mapToLong(Long::longValue).sum();
+            System.out.println("Exported " + total + " evaluations in " + rowsPerPart.size() + " parts, "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Appends the rows changed since the previous run as a new part and moves the watermark forward.
+     * The first run writes a full base part. A delta holds every filtered row of each user whose
+     * users.updated_at is past the watermark; it is stamped when we write the profile, the list
+     * (UserAnimeStatBulkWriter.touchUser) or a resync, so it is a write time, unlike last_updated which
+     * carries MAL's entry times. Next to each delta, delta-NNNNN.users.parquet lists every touched user, ids
+     * encoded like the part. Readers replace a user's rows with those of the newest part that lists or contains
+     * the user; a listed user without rows in that part was dropped by the filters or had the list deleted.
+     */
+    void saveEvaluationsIncremental(File outDir) throws Exception {
+        Files.createDirectories(outDir.toPath());
+        File manifestFile = new File(outDir, MANIFEST_FILE);
+        ObjectMapper json = new ObjectMapper();
+        ObjectNode manifest = manifestFile.exists()
+                ? (ObjectNode) json.readTree(manifestFile)
+                : json.createObjectNode();
+        ArrayNode parts = manifest.has("parts") ? (ArrayNode) manifest.get("parts") : manifest.putArray("parts");
+
+        // read the new mark before the export, so rows committed while it runs are picked up again next time
+        String usersMark = usersWatermark();
+
+        boolean base = parts.isEmpty();
+        String partName = String.format(base ? "base-%05d.parquet" : "delta-%05d.parquet", parts.size());
+        File partFile = new File(outDir, partName);
+        String usersName = partName.replace(".parquet", ".users.parquet");
+        File usersFile = new File(outDir, usersName);
+        long touched = 0;
+        String sql;
+        List<Object> params = new ArrayList<>(List.of(minimumNumberOfCompletedAnimeInUserLists,
+                minimumNumberOfAnimeInUserLists,
+                minimumNumberOfRatedAnimeInUserLists));
+        if (base) {
+            sql = evaluationsSql(false);
+        } else {
+            Timestamp since = watermark(manifest, "users_updated_watermark");
+            sql = evaluationsSql(false, "r.user_id IN (SELECT mal_id FROM users WHERE updated_at > ?)");
+            params.add(since);
+            // listed before the part is read, so a listed user missing from the part really had no rows left
+            touched = extractor.exportQueryToParquet("SELECT mal_id AS user_id FROM users WHERE updated_at > ?",
+                    List.of(since), usersFile, Set.of("user_id"));
+        }
+        if (isShowSql)
+            System.out.println(sql);
+
+        long rows = extractor.exportQueryToParquet(sql, params, partFile, Set.of("user_id"));
+        if (rows == 0 && touched == 0 && !base) {
+            Files.deleteIfExists(partFile.toPath());
+            Files.deleteIfExists(usersFile.toPath());
+        } else {
+            ObjectNode part = parts.addObject();
+            part.put("file", partName);
+            part.put("kind", base ? "base" : "delta");
+            part.put("rows", rows);
+            if (!base) {
+                part.put("users_file", usersName);
+                part.put("users", touched);
+            }
+            part.put("created_at", Instant.now().toString());
+        }
+        // marks of older versions, last_updated is not a write time
+        manifest.remove("last_updated_watermark");
+        if (usersMark != null) manifest.put("users_updated_watermark", usersMark);
+
+        File tmp = new File(outDir, MANIFEST_FILE + ".tmp");
+        json.writerWithDefaultPrettyPrinter().writeValue(tmp, manifest);
+        Files.move(tmp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println((base ? "Base" : "Delta") + " export: " + rows + " evaluations -> " + partFile.getName());
+    }
+
+    /**
+     * MAX(users.updated_at), but no later than the DB clock minus WATERMARK_OVERLAP: a transaction that
+     * stamped its users before this read and commits after it is still past the mark on the next run.
+     * Users stamped inside the overlap are exported once more, which readers absorb.
+     */
+    private String usersWatermark() throws Exception {
+        String[] mark = new String[1];
+        extractor.streamQuery("SELECT MAX(updated_at), CURRENT_TIMESTAMP FROM users", null, rs -> {
+            Timestamp max = rs.getTimestamp(1);
+            if (max == null) return;
+            Instant bound = rs.getTimestamp(2).toInstant().minus(WATERMARK_OVERLAP);
+            Instant at = max.toInstant();
+            mark[0] = (at.isAfter(bound) ? bound : at).toString();
+        });
+        return mark[0];
+    }
+
+    private static Timestamp watermark(ObjectNode manifest, String field) {
+        JsonNode mark = manifest.get(field);
+        return Timestamp.from(mark == null ? Instant.EPOCH : Instant.parse(mark.asText()));
+    }
+
+    static String partFileName(int index) {
+        return String.format("part-%05d.parquet", index);
+    }
+
+    /**
+     * Part files, _SUCCESS and the .crc checksums Hadoop writes next to them.
+     */
+    static boolean isPartitionedOutput(String name) {
+        String file = name.startsWith(".") && name.endsWith(".crc") ? name.substring(1, name.length() - 4) : name;
+        return file.equals(SUCCESS_FILE) || file.matches("part-\\d+\\.parquet");
+    }
+
+    /**
+     * Splits [min, max] into at most parts half-open ranges of equal width that cover every id.
+     */
+    static List<long[]> splitRange(long min, long max, int parts) {
+        if (max < min) return List.of();
+        long span = max - min + 1;
+        int n = (int) Math.max(1, Math.min(parts, span));
+        long step = (span + n - 1) / n;
+        List<long[]> ranges = new ArrayList<>(n);
+        for (long from = min; from <= max; from += step) {
+            ranges.add(new long[]{from, Math.min(from + step, max + 1)});
+        }
+        return ranges;
+    }
+
+    static void writeManifest(File file, Map<String, Long> rowsPerPart) throws IOException {
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("created_at", Instant.now().toString());
+        manifest.put("total_rows", rowsPerPart.values().stream().mapToLong(Long::longValue).sum());
+        manifest.put("parts", rowsPerPart);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, manifest);
+    }
+
+    String animeSql() {
+        List<String> associationColumns = ANIME_ASSOCIATIONS.stream().map(AnimeAssociation::selectColumns).toList();
+        StringBuilder joins = new StringBuilder();
+        for (AnimeAssociation association : ANIME_ASSOCIATIONS) joins.append(association.join());
+        return buildSelect("anime a",
+                buildColumnsForTable("a", animeColumns, associationColumns)) +
+                joins + "\n" +
                 buildFilter(animeFilters);
+    }
+
+    void saveAnimes(File outFile) throws Exception {
+        String animeSql = animeSql();
         if (isShowSql)
             System.out.println(animeSql);
         extractor.exportQueryToParquet(animeSql, null, outFile, null);
@@ -180,6 +424,14 @@ public class DataOutputToFile {
             Scanner sc = new Scanner(System.in);
 
             File animeFile = new File(outDir, "anime.parquet");
+            if (incremental) {
+                // unattended run: the anime table is small, re-export it every time
+                Files.deleteIfExists(animeFile.toPath());
+                saveAnimes(animeFile);
+                saveEvaluationsIncremental(new File(outDir, INCREMENTAL_DIR));
+                System.out.println("Export finished to " + outDir.getAbsolutePath());
+                return;
+            }
             if (animeFile.exists()) {
                 System.out.print("File with anime list, Have already existed. Do you want to skip it? (y/n)");
                 String line = sc.nextLine();
@@ -191,16 +443,29 @@ public class DataOutputToFile {
                 saveAnimes(animeFile);
             }
 
-            File evaluationsFile = new File(outDir, "evaluations.parquet");
-            if (evaluationsFile.exists()) {
-                System.out.print("File with users evaluation, Have already existed. Do you want to skip it? (y/n)");
-                String line = sc.nextLine();
-                if (!line.equalsIgnoreCase("y")) {
-                    evaluationsFile.delete();
-                    saveEvaluations(evaluationsFile);
+            if (partitions > 1) {
+                File evaluationsDir = new File(outDir, "evaluations");
+                if (new File(evaluationsDir, SUCCESS_FILE).exists()) {
+                    System.out.print("Partitioned users evaluation, Have already existed. Do you want to skip it? (y/n)");
+                    String line = sc.nextLine();
+                    if (!line.equalsIgnoreCase("y")) {
+                        saveEvaluationsPartitioned(evaluationsDir);
+                    }
+                } else {
+                    saveEvaluationsPartitioned(evaluationsDir);
                 }
             } else {
-                saveEvaluations(evaluationsFile);
+                File evaluationsFile = new File(outDir, "evaluations.parquet");
+                if (evaluationsFile.exists()) {
+                    System.out.print("File with users evaluation, Have already existed. Do you want to skip it? (y/n)");
+                    String line = sc.nextLine();
+                    if (!line.equalsIgnoreCase("y")) {
+                        evaluationsFile.delete();
+                        saveEvaluations(evaluationsFile);
+                    }
+                } else {
+                    saveEvaluations(evaluationsFile);
+                }
             }
 
             System.out.println("Export finished to " + outDir.getAbsolutePath());
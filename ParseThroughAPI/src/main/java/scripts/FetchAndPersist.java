@@ -3,6 +3,10 @@ package scripts;
 import anime_parsing.FetchTop;
 import anime_parsing.Parser;
 import anime_parsing.ParserBackedPersister;
+import mapper.ReferenceCache;
+import utils.CrawlCheckpoint;
+
+import java.io.IOException;
 
 import static user_parsing.FetchUsers.fetchAndPersistRandomUsers;
 
@@ -28,16 +32,39 @@ public class FetchAndPersist {
 
     public void fillAnimeDB() {
         int numberOfPage;
+        ReferenceCache.get().preload(Parser.getEmf());
         ParserBackedPersister animePersister = new ParserBackedPersister();
         FetchTop fetchTop = FetchTop.createDefault(animePersister);
-        if (numberOfPages == null) {
+        CrawlCheckpoint checkpoint = openCheckpoint(CrawlCheckpoint.ANIME_TOP_JOB);
+        if (numberOfPages == null && checkpoint != null && checkpoint.plannedTotal() != null) {
+            numberOfPage = checkpoint.plannedTotal();
+            System.out.println("FetchAndPersist.fillAnimeDB: resuming planned run of " + numberOfPage +
+                    " pages, " + checkpoint.completedPages() + " already done");
+        } else if (numberOfPages == null) {
             numberOfPage = fetchTop.countPages();
             System.out.println("FetchAndPersist.fillAnimeDB: countPages() -> " + numberOfPage);
         } else {
             numberOfPage = numberOfPages;
             System.out.println("FetchAndPersist.fillAnimeDB: using NUMBER_OF_PAGES -> " + numberOfPage);
         }
-        fetchTop.fetchAndPersistAnime(numberOfPage);
+        if (checkpoint != null) {
+            checkpoint.setPlannedTotal(numberOfPage);
+            fetchTop.setCheckpoint(checkpoint);
+        }
+        try {
+            fetchTop.fetchAndPersistAnime(numberOfPage);
+        } finally {
+            if (checkpoint != null) checkpoint.close();
+        }
+    }
+
+    static CrawlCheckpoint openCheckpoint(String job) {
+        try {
+            return CrawlCheckpoint.forJob(job);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Crawl state for " + job + " is unavailable, running without resume: " + e.getMessage());
+            return null;
+        }
     }
 
 }
@@ -0,0 +1,66 @@
+package scripts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters shared by the restore workers; logged periodically and once at the end.
+ */
+final class RestoreProgress {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RestoreProgress.class);
+
+    private final int total;
+    private final long startNanos;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    RestoreProgress(int total) {
+        this(total, System.nanoTime());
+    }
+
+    RestoreProgress(int total, long startNanos) {
+        this.total = total;
+        this.startNanos = startNanos;
+    }
+
+    void record(boolean ok) {
+        if (!ok) failed.incrementAndGet();
+        done.incrementAndGet();
+    }
+
+    int total() {
+        return total;
+    }
+
+    int done() {
+        return done.get();
+    }
+
+    int failed() {
+        return failed.get();
+    }
+
+    /**
+     * @return processed users per minute since the start
+     */
+    double perMinute(long nowNanos) {
+        double minutes = (nowNanos - startNanos) / 60_000_000_000.0;
+        return minutes <= 0 ? 0.0 : done.get() / minutes;
+    }
+
+    String summary(long nowNanos) {
+        int d = done.get();
+        double rate = perMinute(nowNanos);
+        String eta = rate <= 0 || d >= total ? "-" : String.format(Locale.ROOT, "%.1f min", (total - d) / rate);
+        return String.format(Locale.ROOT, "%d/%d users (%.1f%%), failed %d, %.1f users/min, ETA %s",
+                d, total, total == 0 ? 100.0 : d * 100.0 / total, failed.get(), rate, eta);
+    }
+
+    void log() {
+        LOGGER.info("Restore progress: {}", summary(System.nanoTime()));
+    }
+}
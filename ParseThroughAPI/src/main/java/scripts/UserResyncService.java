@@ -1,45 +1,95 @@
 package scripts;
 
+import mapper.UserAnimeStatBulkWriter;
+import mapper.UserListState;
 import user_parsing.FetchUsers;
 import user_parsing.Parser;
+import user_parsing.StatsData;
 import user_parsing.UserAnimeEntry;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
+import org.hibernate.Session;
 
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class UserResyncService {
 
+    /**
+     * Where stats and lists are downloaded from; FetchUsers outside of tests.
+     */
+    interface ListSource {
+        StatsData stats(String username) throws IOException, InterruptedException;
+
+        boolean list(String username, Consumer<List<UserAnimeEntry>> pageHandler)
+                throws IOException, InterruptedException;
+
+        boolean listSince(String username, long watermarkEpochSec, Consumer<List<UserAnimeEntry>> pageHandler)
+                throws IOException, InterruptedException;
+    }
+
+    private static final ListSource MAL = new ListSource() {
+        @Override
+        public StatsData stats(String username) throws IOException, InterruptedException {
+            return FetchUsers.fetchUserStats(username);
+        }
+
+        @Override
+        public boolean list(String username, Consumer<List<UserAnimeEntry>> pageHandler)
+                throws IOException, InterruptedException {
+            return FetchUsers.fetchUserAnimeList(username, pageHandler);
+        }
+
+        @Override
+        public boolean listSince(String username, long watermarkEpochSec, Consumer<List<UserAnimeEntry>> pageHandler)
+                throws IOException, InterruptedException {
+            return FetchUsers.fetchUserAnimeListSince(username, watermarkEpochSec, pageHandler);
+        }
+    };
+
     private final EntityManagerFactory emf;
+    private final ListSource source;
     private final int persistBatchSize;
 
     public UserResyncService(int persistBatchSize) {
-        this.emf = Parser.getEmf();
+        this(Parser.getEmf(), MAL, persistBatchSize);
+    }
+
+    UserResyncService(EntityManagerFactory emf, ListSource source, int persistBatchSize) {
+        this.emf = emf;
+        this.source = source;
         this.persistBatchSize = persistBatchSize;
     }
 
+    /**
+     * Downloads the whole list and upserts it. Stored rows missing from the download are deleted only when
+     * the download agrees with the reported total within tolerance; a short download is upserted only.
+     * @param tolerance relative difference accepted by the integrity check
+     */
     // TODO reduce complexity
-    public boolean resyncUserUpsertFetchWithRetries(String username, int malId,
+    public boolean resyncUserUpsertFetchWithRetries(String username, int malId, double tolerance,
                                                     int maxAttempts, long baseSleepMs) {
         Exception lastException = null;
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
             try {
                 System.out.println("Attempt " + attempt + " for user " + username);
-                user_parsing.StatsData stats = null;
-                try { stats = FetchUsers.fetchUserStats(username); } catch (Exception e) {
+                StatsData stats = null;
+                try { stats = source.stats(username); } catch (Exception e) {
                     System.out.println("Could not fetch stats for " + username + " before download: " + e.getMessage());
                 }
                 int reported = (stats != null && stats.anime != null) ? stats.anime.totalEntries : 0;
                 System.out.println("User " + username + " reported(totalEntries) = " + reported);
 
                 List<UserAnimeEntry> collected = new ArrayList<>();
-                boolean ok = FetchUsers.fetchUserAnimeList(username, page -> {
+                boolean ok = source.list(username, page -> {
                     if (page != null && !page.isEmpty()) {
                         collected.addAll(page);
                         System.out.println("Downloaded page, total collected = " + collected.size());
@@ -72,34 +122,15 @@ public class UserResyncService {
                         }
                     }
 
-                    EntityManager em = emf.createEntityManager();
-                    EntityTransaction tx = em.getTransaction();
-                    int processed = 0;
-                    try {
-                        tx.begin();
-                        for (UserAnimeEntry entry : collected) {
-                            mapper.UserAnimeStatMapper.map(entry, malId, em);
-                            processed++;
-                            if (processed % persistBatchSize == 0) {
-                                em.flush();
-                                em.clear();
-                                System.out.println("Flushed " + processed + " records (upsert)");
-                            }
-                        }
-                        em.flush();
-                        tx.commit();
-                        System.out.println("Upsert commit done. Processed " + processed +
-                                " records for user " + username);
-                    } catch (Exception e) {
-                        if (tx.isActive()) tx.rollback();
-                        System.out.println("Transaction failed on attempt " + attempt +
-                                " for " + username + ": " + e.getMessage());
-                        e.printStackTrace();
-                    } finally {
-                        em.close();
+                    // only a download that matches the reported total shows which stored rows were deleted on MAL
+                    boolean complete = reported > 0
+                            && DataIntegrityRestorer.computeDiffPercent(collected.size(), reported) <= tolerance;
+                    if (!complete) {
+                        System.out.println("Collected " + collected.size() + " of " + reported + " reported for " +
+                                username + ", keeping stored entries missing from the download");
                     }
-
-                    return true;
+                    if (upsertInTx(username, malId, collected, attempt, complete)) return true;
+                    lastException = new RuntimeException("upsert transaction failed");
                 }
             } catch (IOException | InterruptedException ex) {
                 lastException = ex;
@@ -127,6 +158,109 @@ public class UserResyncService {
         return false;
     }
 
+    /**
+     * Routine refresh of a user whose stored list agreed with the reported total: downloads only the entries
+     * updated since the newest stored last_updated and upserts them. The incremental fetch can't see deleted
+     * entries, so it falls back to a full resync when more rows are stored than reported, as well as when
+     * nothing is stored yet, the incremental fetch fails, or the counts still disagree afterwards.
+     * Users already known to be mismatched go straight to resyncUserUpsertFetchWithRetries.
+     * @param reported total_entries from the user's current stats
+     */
+    public boolean refreshUserIncremental(String username, int malId, int reported, double tolerance,
+                                          int maxAttempts, long baseSleepMs) {
+        UserListState before = UserListState.read(emf, malId);
+        if (before.watermarkEpochSec() == null) {
+            return resyncUserUpsertFetchWithRetries(username, malId, tolerance, maxAttempts, baseSleepMs);
+        }
+        if (before.storedEntries() > reported) {
+            System.out.println("User " + username + " has stored=" + before.storedEntries() + " > reported=" +
+                    reported + ", entries were deleted, fetching the full list");
+            return resyncUserUpsertFetchWithRetries(username, malId, tolerance, maxAttempts, baseSleepMs);
+        }
+        try {
+            List<UserAnimeEntry> changed = new ArrayList<>();
+            boolean ok = source.listSince(username, before.watermarkEpochSec(), changed::addAll);
+            if (ok && (changed.isEmpty() || upsertInTx(username, malId, changed, 1, false))) {
+                UserListState after = UserListState.read(emf, malId);
+                if (after.agreesWith(reported, tolerance)) {
+                    System.out.println("Incremental sync for " + username + ": " + changed.size() +
+                            " changed entries, stored=" + after.storedEntries() + ", reported=" + reported);
+                    return true;
+                }
+                System.out.println("Incremental sync for " + username + " left stored=" + after.storedEntries() +
+                        " vs reported=" + reported + ", falling back to a full fetch");
+            } else {
+                System.out.println("Incremental sync failed for " + username + ", falling back to a full fetch");
+            }
+        } catch (Exception e) {
+            System.out.println("Incremental sync error for " + username + ": " + e.getMessage() +
+                    ", falling back to a full fetch");
+        }
+        return resyncUserUpsertFetchWithRetries(username, malId, tolerance, maxAttempts, baseSleepMs);
+    }
+
+    /**
+     * Writes collected in one transaction. users.updated_at moves only when a row was inserted, changed
+     * or deleted, so a refresh that finds nothing new stays out of the next incremental export.
+     * @param complete collected is the whole list, stored rows of other anime are deleted
+     */
+    private boolean upsertInTx(String username, int malId, List<UserAnimeEntry> collected, int attempt,
+                               boolean complete) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        int processed = 0;
+        int changed = 0;
+        try {
+            tx.begin();
+            for (int from = 0; from < collected.size(); from += persistBatchSize) {
+                List<UserAnimeEntry> chunk = collected.subList(from,
+                        Math.min(collected.size(), from + persistBatchSize));
+                // stamps users.updated_at itself when anything changed
+                changed += UserAnimeStatBulkWriter.upsert(em, malId, chunk);
+                processed += chunk.size();
+            }
+            if (complete) {
+                int deleted = deleteMissingEntries(em, malId, collected);
+                if (deleted > 0) {
+                    System.out.println("Deleted " + deleted + " entries removed from the list of " + username);
+                    em.unwrap(Session.class).doWork(conn -> UserAnimeStatBulkWriter.touchUser(conn, malId));
+                }
+            }
+            tx.commit();
+            System.out.println("Upsert commit done. Processed " + processed +
+                    " records for user " + username + ", " + changed + " changed");
+            return true;
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            System.out.println("Transaction failed on attempt " + attempt +
+                    " for " + username + ": " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    private int deleteMissingEntries(EntityManager em, int malId, List<UserAnimeEntry> collected) {
+        Set<Integer> listed = new HashSet<>();
+        for (UserAnimeEntry e : collected) if (e != null && e.animeId != null) listed.add(e.animeId);
+        List<Integer> gone = new ArrayList<>();
+        for (Object id : em.createNativeQuery("SELECT anime_id FROM user_anime_stat WHERE user_id = ?1")
+                .setParameter(1, malId)
+                .getResultList()) {
+            int animeId = ((Number) id).intValue();
+            if (!listed.contains(animeId)) gone.add(animeId);
+        }
+        int deleted = 0;
+        for (int from = 0; from < gone.size(); from += persistBatchSize) {
+            deleted += em.createNativeQuery("DELETE FROM user_anime_stat WHERE user_id = :user AND anime_id IN (:ids)")
+                    .setParameter("user", malId)
+                    .setParameter("ids", gone.subList(from, Math.min(gone.size(), from + persistBatchSize)))
+                    .executeUpdate();
+        }
+        return deleted;
+    }
+
     public void deleteUserData(int malId) {
         EntityManager em = emf.createEntityManager();
         EntityTransaction tx = em.getTransaction();
@@ -152,7 +286,8 @@ public class UserResyncService {
         }
     }
 
-    private void logFailed(String username, int malId, String status, String reason) {
+    // restore workers share one service, keep the csv lines whole
+    private synchronized void logFailed(String username, int malId, String status, String reason) {
         String fn = "resync_failed.csv";
         try (FileWriter fw = new FileWriter(fn, true); PrintWriter pw = new PrintWriter(fw)) {
             pw.printf("%s,%s,%d,%s,%s%n", Instant.now().toString(), username, malId,
@@ -2,29 +2,40 @@ package user_parsing;
 
 import anime_parsing.FetchTop;
 import exeptions.HttpRequestException;
+import mapper.SeenUserFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scripts.DataIntegrityRestorer;
+import utils.CrawlCheckpoint;
+import utils.FlightEvents;
+import utils.HostRateLimiters;
+import utils.Metrics;
 import utils.OkHttpClientManager;
+import utils.ResponseArchive;
+import utils.TokenBucketRateLimiter;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.GZIPInputStream;
+import java.util.function.Predicate;
 
 import static user_parsing.Parser.saveUserAndStats;
 
@@ -56,6 +67,16 @@ public class FetchUsers {
             .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
             .findAndRegisterModules();
 
+    private static final ObjectReader ANIME_PAGE_READER =
+            mapper.readerFor(new TypeReference<List<UserAnimeEntry>>() {});
+    private static final ObjectReader STATS_READER = mapper.readerFor(StatsResponse.class);
+    private static final ObjectReader USER_DATA_READER = mapper.readerFor(UserLite.class).at("/data");
+
+    /** Captcha pages and error bodies are recognised from this many leading bytes. */
+    private static final int SNIFF_BYTES = 8 * 1024;
+    // load.json sort "Last Updated", newest first
+    private static final String ORDER_BY_LAST_UPDATED = "&order=5";
+
     private static final List<String> USER_AGENTS = List.of(
             "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
                     "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36",
@@ -73,138 +94,89 @@ public class FetchUsers {
             "Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0"
     );
 
-    private static final SimpleRateLimiter MAL_RATE_LIMITER = new SimpleRateLimiter(1000, 800);
     private static final ConcurrentHashMap<String, Long> taintedHosts = new ConcurrentHashMap<>();
     private static final long TAINT_MILLIS = Duration.ofMinutes(1).toMillis();
 
-    // TODO
     public static void fetchAndPersistRandomUsers(int numberOfUsers, int numberOfAnimeInLists,
                                                   int numberOfCompletedAnimeInLists) {
-        final int MAX_TASK_MS = 120_000;
-        final int BETWEEN_TASK_SLEEP_MS = 2_500;
-        final int POOL_SIZE = 7;
-
-        ExecutorService workerPool = Executors.newFixedThreadPool(POOL_SIZE);
-        ScheduledExecutorService scheduledCanceller = Executors.newSingleThreadScheduledExecutor();
-        Semaphore concurrencyLimiter = new Semaphore(POOL_SIZE);
-        AtomicInteger successCount = new AtomicInteger(0);
-        AtomicInteger attempts = new AtomicInteger(0);
         DataIntegrityRestorer dataIntegrityRestorer = new DataIntegrityRestorer(0.05,
                 100, 100);
+        CrawlCheckpoint checkpoint = openCheckpoint();
+        int remaining = numberOfUsers;
+        if (checkpoint != null) {
+            checkpoint.setPlannedTotal(numberOfUsers);
+            remaining = numberOfUsers - checkpoint.completedUsers();
+            if (remaining < numberOfUsers) {
+                LOGGER.info("Resuming random-user crawl: {} of {} users already saved", numberOfUsers - remaining,
+                        numberOfUsers);
+            }
+        }
 
-        try {
-            while (successCount.get() < numberOfUsers) {
-                try {
-                    concurrencyLimiter.acquire();
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-
-                if (successCount.get() >= numberOfUsers) {
-                    concurrencyLimiter.release();
-                    break;
-                }
-
-                Callable<Boolean> task = () -> {
-                    try {
-                        UserLite curUser = fetchRandomUser();
-                        try { Thread.sleep(BETWEEN_TASK_SLEEP_MS); } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            return false;
-                        }
-                        StatsData sd = fetchUserStats(curUser.username);
-
-                        if (sd == null || sd.anime == null) {
-                            LOGGER.warn("No stats for user {}", curUser.username);
-
-                            return false;
-                        }
-                        if (sd.anime.totalEntries < numberOfAnimeInLists &&
-                                sd.anime.completed < numberOfCompletedAnimeInLists) {
-                            LOGGER.warn("Too few anime for {}: {}", curUser.username, sd.anime.totalEntries);
-
-                            return false;
-                        }
-
-                        saveUserAndStats(curUser, sd);
-                        dataIntegrityRestorer.processUserById(curUser.malId);
-
-                        try { Thread.sleep(BETWEEN_TASK_SLEEP_MS); } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            return false;
-                        }
-                        return true;
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        System.out.println("Task interrupted for user fetch");
-                        return false;
-                    } catch (Exception ex) {
-                        System.out.println("Task exception: " + ex.getClass() + " -> " + ex.getMessage());
-                        ex.printStackTrace();
-                        return false;
-                    }
-                };
-
-                Future<Boolean> future = workerPool.submit(task);
-                attempts.incrementAndGet();
-
-                ScheduledFuture<?> canceller = scheduledCanceller.schedule(() -> {
-                    if (!future.isDone()) {
-                        System.out.println("Cancelling long task (running > " + MAX_TASK_MS + " ms)");
-                        future.cancel(true);
-                    }
-                }, MAX_TASK_MS, TimeUnit.MILLISECONDS);
+        SeenUserFilter.get().ensureLoaded(Parser.getEmf());
+
+        UserCrawler crawler = new UserCrawler(
+                () -> fetchAndPersistRandomUser(numberOfAnimeInLists, numberOfCompletedAnimeInLists,
+                        dataIntegrityRestorer, checkpoint),
+                UserCrawler.maxInFlightFromEnv(),
+                UserCrawler.DEFAULT_TASK_DEADLINE,
+                UserCrawler.DEFAULT_DRAIN_TIMEOUT);
+        int saved = remaining > 0 ? crawler.crawl(remaining) : 0;
+        LOGGER.info("Skipped {} known or recently rejected users from /random/users",
+                SeenUserFilter.get().skippedCount());
+        if (checkpoint == null) return;
+        if (saved >= remaining) {
+            checkpoint.complete();
+        } else {
+            checkpoint.close();
+        }
+    }
 
-                workerPool.submit(() -> {
-                    try {
-                        Boolean ok;
-                        try {
-                            ok = future.get(MAX_TASK_MS + 5000, TimeUnit.MILLISECONDS);
-                        } catch (TimeoutException te) {
-                            future.cancel(true);
-                            System.out.println("Future.get timeout -> cancelled");
-                            ok = false;
-                        } catch (CancellationException ce) {
-                            System.out.println("Future was cancelled");
-                            ok = false;
-                        } catch (ExecutionException ee) {
-                            System.out.println("Execution exception in task: " + ee.getCause());
-                            ok = false;
-                        } catch (InterruptedException ie) {
-                            System.out.println("Future thread was interrupted");
-                            ok = false;
-                        }
+    private static CrawlCheckpoint openCheckpoint() {
+        try {
+            return CrawlCheckpoint.forJob(CrawlCheckpoint.RANDOM_USERS_JOB);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Crawl state is unavailable, running without resume: {}", e.getMessage());
+            return null;
+        }
+    }
 
-                        if (Boolean.TRUE.equals(ok)) {
-                            int done = successCount.incrementAndGet();
-                            if (done % 25 == 0) System.out.println(
-                                    "<<<-------------------------->>>\n" +
-                                            "Completed users: " + done + "/" + numberOfUsers +
-                                            "\n<<<-------------------------->>>");
-                        }
-                    } finally {
-                        canceller.cancel(false);
-                        concurrencyLimiter.release();
-                    }
-                });
+    private static boolean fetchAndPersistRandomUser(int numberOfAnimeInLists, int numberOfCompletedAnimeInLists,
+                                                     DataIntegrityRestorer dataIntegrityRestorer,
+                                                     CrawlCheckpoint checkpoint)
+            throws IOException, InterruptedException {
+        UserLite curUser = fetchRandomUser();
+        SeenUserFilter seen = SeenUserFilter.get();
+        // claimed rather than checked: another pipeline may have drawn the same user
+        if (!seen.tryClaim(curUser.malId)) {
+            LOGGER.debug("User {} is already known, recently rejected or being fetched, skipping", curUser.username);
+            return false;
+        }
+        try {
+            if (checkpoint != null && checkpoint.isUserDone(curUser.malId)) {
+                LOGGER.debug("User {} is already done in the crawl state, skipping", curUser.username);
+                return false;
             }
+            StatsData sd = fetchUserStats(curUser.username);
 
-            workerPool.shutdown();
-            try {
-                if (!workerPool.awaitTermination(3, TimeUnit.MINUTES)) {
-                    System.out.println("Worker pool didn't terminate, forcing shutdown");
-                    workerPool.shutdownNow();
-                }
-            } catch (InterruptedException ie) {
-                workerPool.shutdownNow();
-                Thread.currentThread().interrupt();
+            if (sd == null || sd.anime == null) {
+                LOGGER.warn("No stats for user {}", curUser.username);
+                return false;
             }
+            if (sd.anime.totalEntries < numberOfAnimeInLists &&
+                    sd.anime.completed < numberOfCompletedAnimeInLists) {
+                LOGGER.warn("Too few anime for {}: {}", curUser.username, sd.anime.totalEntries);
+                seen.markRejected(curUser.malId);
+                return false;
+            }
+
+            saveUserAndStats(curUser, sd);
+            seen.markStored(curUser.malId);
+            dataIntegrityRestorer.processUserById(curUser.malId);
+            if (checkpoint != null) checkpoint.markUserDone(curUser.malId);
+            return true;
         } finally {
-            scheduledCanceller.shutdownNow();
+            seen.release(curUser.malId);
         }
-
-        System.out.println("Finished. Successful users: " + successCount.get() + ", attempts: " + attempts.get());
     }
 
     public static void fetchAndPersistUserByUsername(String username, int tryNumber) {
@@ -219,107 +191,240 @@ public class FetchUsers {
         }
     }
 
-    private record DecodedResponse(int status, String body, String contentEncoding, String contentType) { }
+    /**
+     * @param value decoded JSON body, null unless the response was a 200 with a JSON payload
+     * @param bodyPrefix first bytes of the body, kept for logging and HTML detection
+     */
+    private record DecodedResponse<T>(int status, T value, String bodyPrefix, String contentType) {
+        boolean isHtml() {
+            return bodyPrefix.stripLeading().startsWith("<");
+        }
+    }
 
     // TODO reduce complexity
     // split in to some more
-    private static DecodedResponse fetchDecoded(String url) throws IOException {
+    private static <T> DecodedResponse<T> fetchDecoded(String url, ObjectReader reader) throws IOException {
         final int MAX_CAPTCHA_RETRIES = 3;
         String hostKey = url.contains("myanimelist.net") ? "myanimelist.net" : url;
+        String host = HostRateLimiters.hostOf(url);
 
         int captchaRetries = 0;
+        FlightEvents.HttpFetch event = new FlightEvents.HttpFetch();
+        event.begin();
+        event.host = host;
+        event.url = url;
+        try {
+            ResponseArchive archive = ResponseArchive.get();
+            ResponseArchive.Entry archived = archive.isEnabled() ? archive.lookup(url) : null;
+            if (archive.isReplay()) {
+                if (archived == null) throw new IOException("Not in response archive: " + url);
+                Metrics.counter("http." + host + ".replayed").inc();
+                event.replayed = true;
+                return decodeArchived(archive, archived, reader, event);
+            }
 
-        while (true) {
-            Long until = taintedHosts.get(hostKey);
-            long now = System.currentTimeMillis();
-            if (until != null && now < until) {
-                long sleepMs = until - now;
-                System.out.println("Host " + hostKey + " is tainted until " + until + " (sleeping " + sleepMs + " ms)");
-                try {
-                    Thread.sleep(sleepMs);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new IOException("Interrupted while waiting for tainted host: " + hostKey, e);
+            while (true) {
+                Long until = taintedHosts.get(hostKey);
+                long now = System.currentTimeMillis();
+                if (until != null && now < until) {
+                    long sleepMs = until - now;
+                    LOGGER.warn("Host {} is tainted until {} (sleeping {} ms)", hostKey, until, sleepMs);
+                    long taintStart = System.nanoTime();
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for tainted host: " + hostKey, e);
+                    } finally {
+                        long slept = System.nanoTime() - taintStart;
+                        Metrics.timer("http." + host + ".taint_wait").record(slept);
+                        event.taintWait += slept;
+                    }
                 }
-            }
 
-            if (url.contains("myanimelist.net")) {
-                MAL_RATE_LIMITER.acquire();
-            }
+                TokenBucketRateLimiter limiter = HostRateLimiters.forUrl(url);
+                if (limiter != null) {
+                    try {
+                        long waited = limiter.acquire();
+                        Metrics.timer("ratelimit." + host + ".wait").record(waited);
+                        event.rateLimitWait += waited;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for rate limiter: " + url, e);
+                    }
+                }
 
-            OkHttpClient client = HTTP_CLIENT_MANAGER.getClient();
-            Request req = requestBuild(url);
+                OkHttpClient client = HTTP_CLIENT_MANAGER.getClient();
+                Request req = requestBuild(url);
+                if (archived != null) req = withConditionalHeaders(req, archived);
 
-            try (Response resp = client.newCall(req).execute()) {
-                int status = resp.code();
-                byte[] bodyBytes = resp.body() == null ? new byte[0] : resp.body().bytes();
-                String contentEncoding = resp.header("Content-Encoding", "");
-                String contentType = resp.header("Content-Type", "");
+                long requestStart = System.nanoTime();
+                try (Response resp = client.newCall(req).execute()) {
+                    int status = resp.code();
+                    Metrics.recordHttp(host, status, System.nanoTime() - requestStart);
+                    event.status = status;
+                    String contentType = resp.header("Content-Type", "");
+                    ResponseBody responseBody = resp.body();
+                    long contentLength = responseBody == null ? 0 : responseBody.contentLength();
 
-                System.out.println("URL: " + url + " -> status=" + status + ", bytes=" +
-                        (bodyBytes==null?0:bodyBytes.length)
-                        + ", enc=" + contentEncoding + ", type=" + contentType);
+                    LOGGER.debug("URL: {} -> status={}, length={}, type={}", url, status, contentLength, contentType);
 
-                byte[] decompressed = bodyBytes;
-                boolean isGzip = false;
-                try {
-                    String encLower = contentEncoding == null ? "" : contentEncoding.toLowerCase(Locale.ROOT);
-                    isGzip = encLower.contains("gzip")
-                            || (bodyBytes != null && bodyBytes.length >= 2 && (bodyBytes[0] ==
-                            (byte)0x1F && bodyBytes[1] == (byte)0x8B));
-                } catch (Exception ignored) {}
-
-                if (isGzip && bodyBytes != null && bodyBytes.length > 0) {
-                    try (ByteArrayInputStream bais = new ByteArrayInputStream(bodyBytes);
-                         GZIPInputStream gis = new GZIPInputStream(bais);
-                         ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                        byte[] buffer = new byte[4096];
-                        int read;
-                        while ((read = gis.read(buffer)) != -1) {
-                            baos.write(buffer, 0, read);
-                        }
-                        decompressed = baos.toByteArray();
-                    } catch (IOException e) {
-                        System.err.println("GZIP unpack failed for url: " + url);
-                        throw e;
+                    if (status == 304 && archived != null) {
+                        return decodeArchived(archive, archived, reader, event);
                     }
-                } else if (contentEncoding != null && contentEncoding.toLowerCase(Locale.ROOT).contains("br")) {
-                    throw new IOException("Received brotli content for url: " + url + " but no decoder configured");
-                }
-
-                String body = decompressed == null ? "" : new String(decompressed, StandardCharsets.UTF_8);
 
-                String low = body.toLowerCase(Locale.ROOT);
-                if (low.contains("human verification") || low.contains("gokuprops") || low.contains("awswaf")
-                        || low.contains("recaptcha")) {
-                    long taintUntil = System.currentTimeMillis() + TAINT_MILLIS;
-                    taintedHosts.put(hostKey, taintUntil);
-                    System.out.println("Captcha/verification detected for host " + hostKey +
-                            ". Tainting until " + taintUntil);
+                    byte[] recorded = null;
+                    CountingInputStream counted = null;
+                    InputStream in;
+                    if (responseBody == null) {
+                        in = InputStream.nullInputStream();
+                    } else if (archive.isEnabled()) {
+                        recorded = responseBody.bytes();
+                        in = new BufferedInputStream(new ByteArrayInputStream(recorded), SNIFF_BYTES);
+                    } else if (event.isEnabled()) {
+                        counted = new CountingInputStream(responseBody.byteStream());
+                        in = new BufferedInputStream(counted, SNIFF_BYTES);
+                    } else {
+                        in = new BufferedInputStream(responseBody.byteStream(), SNIFF_BYTES);
+                    }
+                    String prefix = sniff(in);
+
+                    if (!looksLikeJson(prefix) && isVerificationPage(prefix)) {
+                        long taintUntil = System.currentTimeMillis() + TAINT_MILLIS;
+                        taintedHosts.put(hostKey, taintUntil);
+                        Metrics.counter("http." + host + ".captcha").inc();
+                        LOGGER.warn("Captcha/verification detected for host {}. Tainting until {}", hostKey, taintUntil);
+
+                        captchaRetries++;
+                        event.captchaRetries = captchaRetries;
+                        if (captchaRetries >= MAX_CAPTCHA_RETRIES) {
+                            throw new IOException("Verification detected for host: " + hostKey +
+                                    " after " + captchaRetries + " retries");
+                        }
+                        long taintStart = System.nanoTime();
+                        try {
+                            LOGGER.warn("Sleeping for {} ms before retrying {}", TAINT_MILLIS, url);
+                            Thread.sleep(TAINT_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while waiting for captcha cooldown for host: " + hostKey, e);
+                        } finally {
+                            long slept = System.nanoTime() - taintStart;
+                            Metrics.timer("http." + host + ".taint_wait").record(slept);
+                            event.taintWait += slept;
+                        }
+                        continue;
+                    }
 
-                    captchaRetries++;
-                    if (captchaRetries >= MAX_CAPTCHA_RETRIES) {
-                        throw new IOException("Verification detected for host: " + hostKey +
-                                " after " + captchaRetries + " retries");
+                    if (recorded != null) {
+                        archive.store(url, status, resp.headers().toMultimap(), recorded);
                     }
-                    try {
-                        System.out.println("Sleeping for " + TAINT_MILLIS +
-                                " ms before retrying " + url);
-                        Thread.sleep(TAINT_MILLIS);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while waiting for captcha cooldown for host: " + hostKey, e);
+                    T value = null;
+                    if (status == 200 && looksLikeJson(prefix)) {
+                        value = reader.readValue(in);
                     }
-                    continue;
+                    event.bytes = recorded != null ? recorded.length
+                            : counted != null ? counted.count : contentLength;
+                    return new DecodedResponse<>(status, value, prefix, contentType);
                 }
-
-                return new DecodedResponse(status, body, contentEncoding, contentType);
-            } catch (IOException ioe) {
-                throw ioe;
             }
+        } finally {
+            event.commit();
+        }
+    }
+
+    private static <T> DecodedResponse<T> decodeArchived(ResponseArchive archive, ResponseArchive.Entry entry,
+                                                         ObjectReader reader,
+                                                         FlightEvents.HttpFetch event) throws IOException {
+        byte[] body = archive.readBody(entry);
+        event.status = entry.status();
+        event.bytes = body.length;
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(body), SNIFF_BYTES);
+        String prefix = sniff(in);
+        T value = null;
+        if (entry.status() == 200 && looksLikeJson(prefix)) {
+            value = reader.readValue(in);
+        }
+        String contentType = entry.header("Content-Type");
+        return new DecodedResponse<>(entry.status(), value, prefix, contentType == null ? "" : contentType);
+    }
+
+    private static Request withConditionalHeaders(Request req, ResponseArchive.Entry archived) {
+        Request.Builder b = req.newBuilder();
+        String etag = archived.header("ETag");
+        if (etag != null) b.header("If-None-Match", etag);
+        String lastModified = archived.header("Last-Modified");
+        if (lastModified != null) b.header("If-Modified-Since", lastModified);
+        return b.build();
+    }
+
+    /**
+     * Counts the body bytes the decoder pulled, for the HttpFetch event when the length is not announced.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
     }
 
+    /**
+     * Reads up to SNIFF_BYTES from the stream and rewinds it, so the decoder still sees the whole body.
+     */
+    private static String sniff(InputStream in) throws IOException {
+        in.mark(SNIFF_BYTES);
+        byte[] buf = new byte[SNIFF_BYTES];
+        int total = 0;
+        int read;
+        while (total < buf.length && (read = in.read(buf, total, buf.length - total)) != -1) {
+            total += read;
+        }
+        in.reset();
+        return new String(buf, 0, total, StandardCharsets.UTF_8);
+    }
+
+    private static boolean looksLikeJson(String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+            return c == '{' || c == '[';
+        }
+        return false;
+    }
+
+    private static boolean isVerificationPage(String prefix) {
+        String low = prefix.toLowerCase(Locale.ROOT);
+        return low.contains("human verification") || low.contains("gokuprops") || low.contains("awswaf")
+                || low.contains("recaptcha");
+    }
+
+    private static <T> T requireValue(DecodedResponse<T> dr, String url) {
+        if (dr.status != 200) throw new HttpRequestException("HTTP " + dr.status);
+        if (dr.value == null) throw new HttpRequestException("Non-JSON body from " + url);
+        return dr.value;
+    }
 
     private static Request requestBuild(String url) {
         String ua = USER_AGENTS.get((int)(Math.random() * USER_AGENTS.size()));
@@ -328,7 +433,6 @@ public class FetchUsers {
                 .get()
                 .header("User-Agent", ua)
                 .header("Accept", "application/json, text/javascript, */*; q=0.01")
-                .header("Accept-Encoding", "gzip, deflate")
                 .header("Accept-Language", "en-US,en;q=0.9")
                 .header("Referer", MAL_HOST + "/animelist/")
                 .header("X-Requested-With", "XMLHttpRequest");
@@ -336,49 +440,98 @@ public class FetchUsers {
     }
 
     public static UserLite fetchRandomUser() throws IOException, InterruptedException {
-        DecodedResponse dr = fetchDecoded(API_HOST + "/random/users");
-        if (dr.status != 200) throw new HttpRequestException("HTTP " + dr.status);
-        JsonNode root = mapper.readTree(dr.body);
-        JsonNode data = root.get("data");
-        return mapper.treeToValue(data, UserLite.class);
+        String url = API_HOST + "/random/users";
+        DecodedResponse<UserLite> dr = fetchDecoded(url, USER_DATA_READER);
+        return requireValue(dr, url);
     }
 
     public static StatsData fetchUserStats(String username) throws IOException, InterruptedException {
         String url = API_HOST + "/users/" + username + "/statistics";
-        DecodedResponse dr = fetchDecoded(url);
-        if (dr.status != 200) throw new HttpRequestException("HTTP " + dr.status);
-        return mapper.readValue(dr.body, StatsResponse.class).data;
+        DecodedResponse<StatsResponse> dr = fetchDecoded(url, STATS_READER);
+        return requireValue(dr, url).data;
     }
 
     public static UserLite fetchUserByUsername(String username) throws IOException, InterruptedException {
-        DecodedResponse dr = fetchDecoded(API_HOST + "/users/" + username);
-        if (dr.status != 200) throw new HttpRequestException("HTTP " + dr.status);
-        JsonNode data = mapper.readTree(dr.body).get("data");
-        return mapper.treeToValue(data, UserLite.class);
+        String url = API_HOST + "/users/" + username;
+        DecodedResponse<UserLite> dr = fetchDecoded(url, USER_DATA_READER);
+        return requireValue(dr, url);
     }
 
     // TODO split and refactor
     public static boolean fetchUserAnimeList(String username,
                                              java.util.function.Consumer<List<UserAnimeEntry>> pageHandler)
             throws IOException, InterruptedException {
+        return fetchListPages(username, "", page -> {
+            pageHandler.accept(page);
+            return true;
+        });
+    }
+
+    /**
+     * Incremental variant of fetchUserAnimeList: pages are requested most recently updated first and
+     * paging stops at the first entry updated before the watermark, so only changed entries reach the handler.
+     * @param watermarkEpochSec newest user_anime_stat.last_updated already stored for the user
+     */
+    public static boolean fetchUserAnimeListSince(String username, long watermarkEpochSec,
+                                                  java.util.function.Consumer<List<UserAnimeEntry>> pageHandler)
+            throws IOException, InterruptedException {
+        return fetchListPages(username, ORDER_BY_LAST_UPDATED, changedSince(watermarkEpochSec, pageHandler));
+    }
+
+    /**
+     * Passes on entries updated at or after the watermark and returns false once an older entry shows up.
+     * Entries without any timestamp are treated as changed.
+     */
+    static Predicate<List<UserAnimeEntry>> changedSince(long watermarkEpochSec,
+                                                        java.util.function.Consumer<List<UserAnimeEntry>> pageHandler) {
+        return page -> {
+            List<UserAnimeEntry> changed = new ArrayList<>(page.size());
+            boolean more = true;
+            for (UserAnimeEntry e : page) {
+                Long ts = e.updatedAt != null ? e.updatedAt : e.createdAt;
+                if (ts != null && ts < watermarkEpochSec) {
+                    more = false;
+                    break;
+                }
+                changed.add(e);
+            }
+            if (!changed.isEmpty()) pageHandler.accept(changed);
+            return more;
+        };
+    }
+
+    public static boolean isIncrementalSyncEnabled() {
+        String mode = System.getProperty("user.sync.mode");
+        if (mode == null || mode.isBlank()) mode = System.getenv("USER_SYNC_MODE");
+        return mode != null && mode.trim().equalsIgnoreCase("incremental");
+    }
+
+    /**
+     * Downloads load.json pages until the list ends or the handler returns false.
+     */
+    private static boolean fetchListPages(String username, String query,
+                                          Predicate<List<UserAnimeEntry>> pageHandler)
+            throws IOException, InterruptedException {
         int offset = 0;
         final int MAX_RETRIES = 3;
         final long BASE_SLEEP_MS = 2_500;
 
         while (true) {
-            String url = "https://myanimelist.net/animelist/" + username + "/load.json?offset=" + offset;
+            String url = "https://myanimelist.net/animelist/" + username + "/load.json?offset=" + offset + query;
 
-            DecodedResponse dr = null;
+            DecodedResponse<List<UserAnimeEntry>> dr = null;
             int attempt = 0;
             IOException lastIo = null;
             while (attempt < MAX_RETRIES) {
                 attempt++;
                 try {
-                    dr = fetchDecoded(url);
+                    dr = fetchDecoded(url, ANIME_PAGE_READER);
                     break;
+                } catch (JsonProcessingException jpe) {
+                    System.out.println("JSON parse error for " + username + " url=" + url + " -> " + jpe.getOriginalMessage());
+                    return false;
                 } catch (IOException ioe) {
                     lastIo = ioe;
-                    long sleep = BASE_SLEEP_MS * attempt;
                     System.out.println("Network/IO error for " + url + " -> " + ioe.getMessage());
                     Thread.sleep(5_000);
                 }
@@ -389,14 +542,13 @@ public class FetchUsers {
             }
 
             int code = dr.status;
-            String body = dr.body == null ? "" : dr.body.trim();
+            String bodyStart = dr.bodyPrefix.length() > 1000 ? dr.bodyPrefix.substring(0, 1000) : dr.bodyPrefix;
 
             if (code == 404) return true;
 
-            if (!body.isEmpty() && body.startsWith("<")) {
+            if (dr.isHtml()) {
                 System.out.println("Got HTML instead of JSON for user " + username + " url=" + url);
-                System.out.println("HTTP " + code + " Body (start): " +
-                        (body.length() > 1000 ? body.substring(0, 1000) : body));
+                System.out.println("HTTP " + code + " Body (start): " + bodyStart);
                 return false;
             }
 
@@ -419,54 +571,24 @@ public class FetchUsers {
 
             if (code != 200) {
                 System.out.println("Non-200 for " + username + " url=" + url + " code=" + code);
-                System.out.println("Body (start): " + (body == null ? "null" : body.substring(0, Math.min(1000, body.length()))));
+                System.out.println("Body (start): " + bodyStart);
                 Thread.sleep(7_000);
                 continue;
             }
 
-            List<UserAnimeEntry> page;
-            try {
-                page = mapper.readValue(body, new TypeReference<List<UserAnimeEntry>>() {});
-            } catch (Exception e) {
-                System.out.println("JSON parse error for " + username + " url=" + url);
-                System.out.println("Body (start): " + (body == null ? "null" : body.substring(0, Math.min(1000, body.length()))));
-                e.printStackTrace();
+            List<UserAnimeEntry> page = dr.value;
+            if (page == null) {
+                System.out.println("Unexpected non-JSON body for " + username + " url=" + url);
+                System.out.println("Body (start): " + bodyStart);
                 return false;
             }
 
             if (page == null || page.isEmpty()) return true;
 
-            pageHandler.accept(page);
+            if (!pageHandler.test(page)) return true;
             offset += page.size();
 
             Thread.sleep(BASE_SLEEP_MS);
         }
     }
-
-    private static final class SimpleRateLimiter {
-        private final long minDelayMs;
-        private final long maxJitterMs;
-        private long lastCall = 0;
-
-        SimpleRateLimiter(long minDelayMs, long maxJitterMs) {
-            this.minDelayMs = minDelayMs;
-            this.maxJitterMs = maxJitterMs;
-        }
-
-        void acquire() {
-            synchronized (this) {
-                long now = System.currentTimeMillis();
-                long wait = Math.max(0, minDelayMs - (now - lastCall));
-                if (wait > 0) {
-                    try {
-                        long jitter = ThreadLocalRandom.current().nextLong(maxJitterMs + 1);
-                        Thread.sleep(wait + jitter);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-                lastCall = System.currentTimeMillis();
-            }
-        }
-    }
 }
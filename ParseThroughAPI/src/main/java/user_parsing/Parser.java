@@ -2,17 +2,29 @@ package user_parsing;
 
 import data.UserStat;
 import data.Users;
-import mapper.UserAnimeStatMapper;
+import mapper.UserListState;
 import mapper.UserMapper;
 import mapper.UserStatMapper;
+import utils.FlightEvents;
+import utils.Metrics;
 import jakarta.persistence.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 // TODO refactory needs
 public class Parser {
 
+    private static final int WRITER_QUEUE_CAPACITY = 64;
+    private static final int WRITER_THREADS = 2;
+    private static final int WRITER_MAX_ENTRIES_PER_TX = 1_000;
+
     private static volatile EntityManagerFactory emf;
+    private static volatile UserListWriter listWriter;
 
     public static EntityManagerFactory getEmf() {
         if (emf == null) {
@@ -20,6 +32,7 @@ public class Parser {
                 if (emf == null) {
                     try {
                         emf = Persistence.createEntityManagerFactory("animePU");
+                        Metrics.hikariGauges("db.users", emf);
                     } catch (Exception e) {
                         throw new RuntimeException("Failed to initialize EntityManagerFactory", e);
                     }
@@ -29,32 +42,54 @@ public class Parser {
         return emf;
     }
 
-    public static void saveUserAndStats(UserLite dto) {
-        EntityManager em = getEmf().createEntityManager();
-        EntityTransaction tx = em.getTransaction();
+    /**
+     * Shared writer stage: pages fetched by every user pipeline are written through it.
+     * Its threads are daemons, so a shutdown hook drains whatever is still queued when the JVM exits.
+     */
+    public static UserListWriter getListWriter() {
+        if (listWriter == null) {
+            synchronized (Parser.class) {
+                if (listWriter == null) {
+                    UserListWriter writer = new UserListWriter(getEmf(), WRITER_QUEUE_CAPACITY, WRITER_THREADS,
+                            WRITER_MAX_ENTRIES_PER_TX).start();
+                    Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "user-list-writer-close"));
+                    Metrics.gauge("users.write.queue", writer::queueDepth);
+                    listWriter = writer;
+                }
+            }
+        }
+        return listWriter;
+    }
 
+    public static void saveUserAndStats(UserLite dto) {
+        StatsData stats;
         try {
-            tx.begin();
-
-            Users user = UserMapper.map(dto, em);
-
-            StatsData stats = FetchUsers.fetchUserStats(dto.username);
-
-            animeListPersist(dto, em);
-
-            UserStat userStats = UserStatMapper.mapOrCreate(stats, user, em);
-            em.merge(userStats);
+            stats = FetchUsers.fetchUserStats(dto.username);
+        } catch (Exception e) {
+            throw new RuntimeException("Error fetching stats for user: " + dto.username, e);
+        }
+        saveUserAndStats(dto, stats);
+    }
 
-            tx.commit();
+    /**
+     * Writes the profile and stats in one short transaction, then downloads the list outside of any
+     * transaction and hands the pages to the writer stage. Returns once every page is written.
+     */
+    public static void saveUserAndStats(UserLite dto, StatsData stats) {
+        saveProfile(dto, stats);
+        try {
+            animeListPersist(dto, stats);
         } catch (Exception e) {
-            if (tx.isActive()) tx.rollback();
             throw new RuntimeException("Error saving user and stats: " + dto.username, e);
-        } finally {
-            em.close();
         }
     }
 
-    public static void saveUserAndStats(UserLite dto, StatsData stats) {
+    private static void saveProfile(UserLite dto, StatsData stats) {
+        long start = System.nanoTime();
+        FlightEvents.UserIngestTransaction event = new FlightEvents.UserIngestTransaction();
+        event.begin();
+        event.kind = "profile";
+        event.userId = dto.malId;
         EntityManager em = getEmf().createEntityManager();
         EntityTransaction tx = em.getTransaction();
 
@@ -63,39 +98,73 @@ public class Parser {
 
             Users user = UserMapper.map(dto, em);
 
-            animeListPersist(dto, em);
-
             UserStat userStats = UserStatMapper.mapOrCreate(stats, user, em);
             em.merge(userStats);
 
+            FlightEvents.flush(em, "users.profile", 2);
             tx.commit();
+            event.committed = true;
+            Metrics.timer("users.profile.tx").recordSince(start);
         } catch (Exception e) {
             if (tx.isActive()) tx.rollback();
             throw new RuntimeException("Error saving user and stats: " + dto.username, e);
         } finally {
             em.close();
+            event.commit();
         }
     }
 
-    private static void animeListPersist(UserLite dto, EntityManager em) throws IOException, InterruptedException {
-        final int batchSize = 100;
-        final int[] counter = {0};
+    @FunctionalInterface
+    private interface ListFetch {
+        boolean fetch(Consumer<List<UserAnimeEntry>> pageHandler) throws IOException, InterruptedException;
+    }
 
-        boolean ok = FetchUsers.fetchUserAnimeList(dto.username, page -> {
-            for (UserAnimeEntry entry : page) {
-                UserAnimeStatMapper.map(entry, dto.malId, em);
-                if (++counter[0] % batchSize == 0) {
-                    em.flush();
+    /**
+     * With USER_SYNC_MODE=incremental a user that already has a stored list only gets the entries
+     * updated since its newest last_updated; the full list is fetched when counts still disagree.
+     */
+    private static void animeListPersist(UserLite dto, StatsData stats) throws IOException, InterruptedException {
+        if (FetchUsers.isIncrementalSyncEnabled()) {
+            UserListState before = UserListState.read(getEmf(), dto.malId);
+            if (before.watermarkEpochSec() != null) {
+                boolean ok = writeListPages(dto, handler ->
+                        FetchUsers.fetchUserAnimeListSince(dto.username, before.watermarkEpochSec(), handler));
+                int reported = (stats != null && stats.anime != null) ? stats.anime.totalEntries : 0;
+                if (ok && UserListState.read(getEmf(), dto.malId).agreesWith(reported, UserListState.DEFAULT_TOLERANCE)) {
+                    return;
                 }
+                System.out.println("Incremental sync incomplete for user " + dto.username + ", fetching the full list");
             }
+        }
+        writeListPages(dto, handler -> FetchUsers.fetchUserAnimeList(dto.username, handler));
+    }
+
+    private static boolean writeListPages(UserLite dto, ListFetch fetch) throws IOException, InterruptedException {
+        UserListWriter writer = getListWriter();
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+
+        boolean ok = fetch.fetch(page -> {
             try {
-                em.flush();
-            } catch (Exception e) {
-                System.out.println("Flush error for user " + dto.username + ": " + e.getMessage());
+                pending.add(writer.submit(dto.malId, dto.username, page));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while queueing page for " + dto.username, e);
             }
         });
-        if (!ok) {
-            System.out.println("Warning: partial data for user " + dto.username + " (fetch returned false).");
+
+        int failedPages = 0;
+        for (CompletableFuture<Integer> f : pending) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                failedPages++;
+                System.out.println("Write error for user " + dto.username + ": " + e.getCause().getMessage());
+            }
+        }
+        if (!ok || failedPages > 0) {
+            System.out.println("Warning: partial data for user " + dto.username + " (fetch ok=" + ok +
+                    ", failed pages=" + failedPages + ").");
         }
+        return ok && failedPages == 0;
     }
 }
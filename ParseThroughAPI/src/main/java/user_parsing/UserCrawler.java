@@ -0,0 +1,226 @@
+package user_parsing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.Metrics;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs user pipelines on virtual threads, one thread per user.
+ * The calling thread is the only coordinator: it starts pipelines, collects their outcomes
+ * and interrupts the ones that run past their deadline, so no canceller pool or
+ * helper tasks blocked on Future.get() are needed. Throughput is bounded by the
+ * host rate limiters; maxInFlight only caps how many users are being worked on at once.
+ * A pipeline past its deadline gives its slot up but still counts toward numberOfUsers until it reports
+ * (its user may have been saved); after drainTimeout it is given up on and its outcome ignored.
+ * After FAILURE_BACKOFF_AFTER pipelines in a row threw, new starts wait an exponential backoff.
+ */
+public class UserCrawler {
+
+    public static final Duration DEFAULT_TASK_DEADLINE = Duration.ofMinutes(2);
+    public static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofMinutes(3);
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    public static final Duration DEFAULT_FAILURE_BACKOFF = Duration.ofSeconds(1);
+
+    static final int FAILURE_BACKOFF_AFTER = 3;
+    private static final Duration MAX_FAILURE_BACKOFF = Duration.ofMinutes(1);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserCrawler.class);
+
+    @FunctionalInterface
+    public interface UserPipeline {
+        /**
+         * @return true if a user was fetched and persisted
+         */
+        boolean run() throws Exception;
+    }
+
+    /**
+     * @param failed the pipeline threw; false for a user that was simply not saved
+     */
+    private record Outcome(Thread thread, boolean ok, boolean failed) {}
+
+    private final UserPipeline pipeline;
+    private final int maxInFlight;
+    private final long taskDeadlineNanos;
+    private final long drainTimeoutNanos;
+    private final long failureBackoffNanos;
+
+    // expired pipelines that have not reported yet -> time to give up on them
+    private final Map<Thread, Long> expiredRunning = new HashMap<>();
+    private int successes;
+    private int attempts;
+    private int expired;
+    private int consecutiveFailures;
+    private long nextStartNanos;
+
+    public UserCrawler(UserPipeline pipeline, int maxInFlight, Duration taskDeadline, Duration drainTimeout) {
+        this(pipeline, maxInFlight, taskDeadline, drainTimeout, DEFAULT_FAILURE_BACKOFF);
+    }
+
+    public UserCrawler(UserPipeline pipeline, int maxInFlight, Duration taskDeadline, Duration drainTimeout,
+                       Duration failureBackoff) {
+        this.pipeline = Objects.requireNonNull(pipeline);
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be >= 1");
+        this.maxInFlight = maxInFlight;
+        this.taskDeadlineNanos = taskDeadline.toNanos();
+        this.drainTimeoutNanos = drainTimeout.toNanos();
+        this.failureBackoffNanos = failureBackoff.toNanos();
+    }
+
+    public static int maxInFlightFromEnv() {
+        String v = System.getProperty("crawler.maxInFlight");
+        if (v == null || v.isBlank()) v = System.getenv("CRAWLER_MAX_IN_FLIGHT");
+        try {
+            return v == null || v.isBlank() ? DEFAULT_MAX_IN_FLIGHT : Math.max(1, Integer.parseInt(v.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_MAX_IN_FLIGHT;
+        }
+    }
+
+    /**
+     * Keeps starting pipelines until numberOfUsers of them succeeded.
+     * @return number of successful pipelines
+     */
+    public int crawl(int numberOfUsers) {
+        BlockingQueue<Outcome> completions = new LinkedBlockingQueue<>();
+        Map<Thread, Long> running = new HashMap<>();
+        nextStartNanos = System.nanoTime();
+
+        try {
+            while (successes < numberOfUsers) {
+                while (canStart(running, numberOfUsers) && System.nanoTime() - nextStartNanos >= 0) {
+                    Thread t = start(completions);
+                    running.put(t, System.nanoTime() + taskDeadlineNanos);
+                }
+                awaitNext(completions, running, numberOfUsers);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Crawler interrupted with {} pipelines in flight", running.size());
+        }
+
+        drain(completions, running, numberOfUsers);
+        LOGGER.info("Finished. Successful users: {}, attempts: {}, expired: {}", successes, attempts, expired);
+        return successes;
+    }
+
+    private boolean canStart(Map<Thread, Long> running, int numberOfUsers) {
+        return running.size() < maxInFlight
+                && successes + running.size() + expiredRunning.size() < numberOfUsers;
+    }
+
+    private Thread start(BlockingQueue<Outcome> completions) {
+        attempts++;
+        return Thread.ofVirtual().name("user-crawl-" + attempts).start(() -> {
+            boolean ok = false;
+            boolean failed = false;
+            long start = System.nanoTime();
+            try {
+                ok = pipeline.run();
+            } catch (InterruptedException ie) {
+                LOGGER.warn("User pipeline interrupted");
+            } catch (Exception ex) {
+                failed = true;
+                LOGGER.warn("User pipeline failed: {} -> {}", ex.getClass().getSimpleName(), ex.getMessage());
+            } finally {
+                Metrics.timer("users.pipeline").recordSince(start);
+                Metrics.counter(ok ? "users.crawl.succeeded" : "users.crawl.unsuccessful").inc();
+                completions.add(new Outcome(Thread.currentThread(), ok, failed));
+            }
+        });
+    }
+
+    /**
+     * Waits for the next outcome, but never past the earliest deadline of a running or expired pipeline,
+     * nor past the end of the failure backoff when a pipeline could be started.
+     */
+    private void awaitNext(BlockingQueue<Outcome> completions, Map<Thread, Long> running,
+                           int numberOfUsers) throws InterruptedException {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        for (long d : running.values()) wait = Math.min(wait, d - now);
+        for (long d : expiredRunning.values()) wait = Math.min(wait, d - now);
+        if (canStart(running, numberOfUsers)) wait = Math.min(wait, nextStartNanos - now);
+
+        Outcome o = completions.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+        if (o != null) record(o, running, numberOfUsers);
+        expireOverdue(running);
+    }
+
+    private void record(Outcome o, Map<Thread, Long> running, int numberOfUsers) {
+        if (running.remove(o.thread) == null && expiredRunning.remove(o.thread) == null) {
+            // given up on after expiring, the target no longer waits for it
+            LOGGER.warn("Ignoring late outcome of {} (ok={})", o.thread.getName(), o.ok);
+            return;
+        }
+        if (o.failed) {
+            backOff();
+            return;
+        }
+        consecutiveFailures = 0;
+        if (!o.ok) return;
+        successes++;
+        if (successes % 25 == 0) {
+            LOGGER.info("Completed users: {}/{}", successes, numberOfUsers);
+        }
+    }
+
+    private void backOff() {
+        consecutiveFailures++;
+        if (consecutiveFailures < FAILURE_BACKOFF_AFTER) return;
+        int doublings = Math.min(consecutiveFailures - FAILURE_BACKOFF_AFTER, 20);
+        long delay = Math.min(failureBackoffNanos << doublings, MAX_FAILURE_BACKOFF.toNanos());
+        nextStartNanos = System.nanoTime() + delay;
+        LOGGER.warn("{} user pipelines failed in a row, next start in {} ms", consecutiveFailures,
+                TimeUnit.NANOSECONDS.toMillis(delay));
+    }
+
+    private void expireOverdue(Map<Thread, Long> running) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Thread, Long>> it = running.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Thread, Long> e = it.next();
+            if (e.getValue() > now) continue;
+            LOGGER.warn("Interrupting {} (running > {} ms)", e.getKey().getName(),
+                    TimeUnit.NANOSECONDS.toMillis(taskDeadlineNanos));
+            e.getKey().interrupt();
+            // the thread no longer holds a slot, but still counts toward the target until it reports
+            it.remove();
+            expiredRunning.put(e.getKey(), now + drainTimeoutNanos);
+            expired++;
+            Metrics.counter("users.crawl.expired").inc();
+        }
+        expiredRunning.entrySet().removeIf(e -> {
+            if (e.getValue() > now) return false;
+            LOGGER.warn("Giving up on {}, it ignored the interrupt", e.getKey().getName());
+            return true;
+        });
+    }
+
+    private void drain(BlockingQueue<Outcome> completions, Map<Thread, Long> running, int numberOfUsers) {
+        long end = System.nanoTime() + drainTimeoutNanos;
+        try {
+            while (!running.isEmpty() || !expiredRunning.isEmpty()) {
+                long left = end - System.nanoTime();
+                if (left <= 0) break;
+                Outcome o = completions.poll(left, TimeUnit.NANOSECONDS);
+                if (o != null) record(o, running, numberOfUsers);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (!running.isEmpty()) {
+            LOGGER.warn("{} pipelines didn't finish in time, interrupting", running.size());
+            running.keySet().forEach(Thread::interrupt);
+        }
+    }
+}
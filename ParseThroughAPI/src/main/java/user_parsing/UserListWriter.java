@@ -0,0 +1,201 @@
+package user_parsing;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import mapper.UserAnimeStatBulkWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.FlightEvents;
+import utils.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer stage of user ingestion. Fetchers hand over parsed load.json pages through a bounded queue
+ * (a full queue blocks the fetcher), and a few writer threads drain it, grouping pages into short
+ * transactions. A DB connection is only held while a group is being written, never during HTTP calls.
+ */
+public class UserListWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserListWriter.class);
+
+    /**
+     * Writes one user's page inside the transaction of the given EntityManager.
+     */
+    @FunctionalInterface
+    public interface PageSink {
+        int write(EntityManager em, int userId, List<UserAnimeEntry> entries);
+    }
+
+    private record PageBatch(int userId, String username, List<UserAnimeEntry> entries,
+                             CompletableFuture<Integer> done) {}
+
+    private final EntityManagerFactory emf;
+    private final PageSink sink;
+    private final BlockingQueue<PageBatch> queue;
+    private final int maxEntriesPerTx;
+    private final int writerThreads;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean closed;
+
+    public UserListWriter(EntityManagerFactory emf, int queueCapacity, int writerThreads, int maxEntriesPerTx) {
+        this(emf, UserAnimeStatBulkWriter::upsert, queueCapacity, writerThreads, maxEntriesPerTx);
+    }
+
+    public UserListWriter(EntityManagerFactory emf, PageSink sink, int queueCapacity, int writerThreads,
+                          int maxEntriesPerTx) {
+        this.emf = Objects.requireNonNull(emf);
+        this.sink = Objects.requireNonNull(sink);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxEntriesPerTx = maxEntriesPerTx;
+        this.writerThreads = writerThreads;
+    }
+
+    /**
+     * Starts the writer threads. Kept out of the constructor so they never see a half-built writer.
+     */
+    public synchronized UserListWriter start() {
+        if (closed) throw new IllegalStateException("UserListWriter is closed");
+        if (!writers.isEmpty()) throw new IllegalStateException("UserListWriter already started");
+        for (int i = 0; i < writerThreads; i++) {
+            Thread t = Thread.ofPlatform().name("user-list-writer-" + i).daemon(true).start(this::runWriter);
+            writers.add(t);
+        }
+        return this;
+    }
+
+    /**
+     * Queues a page for writing, blocking while the queue is full.
+     * @return future completed with the number of entries handed to the writer
+     */
+    public CompletableFuture<Integer> submit(int userId, String username, List<UserAnimeEntry> page)
+            throws InterruptedException {
+        if (closed) throw new IllegalStateException("UserListWriter is closed");
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        if (page == null || page.isEmpty()) {
+            done.complete(0);
+            return done;
+        }
+        queue.put(new PageBatch(userId, username, page, done));
+        return done;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    private void runWriter() {
+        while (!closed || !queue.isEmpty()) {
+            try {
+                drainOnce(200);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes the next page plus whatever else is queued (up to maxEntriesPerTx entries) and writes them.
+     * @return false if nothing arrived within waitMs
+     */
+    boolean drainOnce(long waitMs) throws InterruptedException {
+        PageBatch first = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+        if (first == null) return false;
+        List<PageBatch> group = new ArrayList<>();
+        group.add(first);
+        int entries = first.entries.size();
+        PageBatch next;
+        while (entries < maxEntriesPerTx && (next = queue.poll()) != null) {
+            group.add(next);
+            entries += next.entries.size();
+        }
+        try {
+            writeGroup(group);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unexpected writer error", e);
+            group.forEach(b -> b.done.completeExceptionally(e));
+        }
+        return true;
+    }
+
+    private void writeGroup(List<PageBatch> group) {
+        if (group.size() > 1) {
+            try {
+                writeInTx(group);
+                group.forEach(b -> b.done.complete(b.entries.size()));
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Group write of {} pages failed, retrying page by page: {}", group.size(), e.getMessage());
+            }
+        }
+        for (PageBatch b : group) {
+            try {
+                writeInTx(List.of(b));
+                b.done.complete(b.entries.size());
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to write page for user {}: {}", b.username, e.getMessage());
+                b.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void writeInTx(List<PageBatch> group) {
+        long start = System.nanoTime();
+        FlightEvents.UserIngestTransaction event = new FlightEvents.UserIngestTransaction();
+        event.begin();
+        event.kind = "list";
+        event.pages = group.size();
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int entries = 0;
+            for (PageBatch b : group) {
+                entries += sink.write(em, b.userId, b.entries);
+            }
+            event.entries = entries;
+            long commitStart = System.nanoTime();
+            FlightEvents.flush(em, "users.list", entries);
+            tx.commit();
+            event.committed = true;
+            Metrics.timer("users.write.commit").recordSince(commitStart);
+            Metrics.timer("users.write.tx").recordSince(start);
+            Metrics.counter("users.write.pages").add(group.size());
+            Metrics.counter("users.write.entries").add(entries);
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+            event.commit();
+        }
+    }
+
+    /**
+     * Stops accepting pages, lets the writers drain what is queued and waits for them.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Thread t : writers) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        PageBatch left;
+        while ((left = queue.poll()) != null) {
+            left.done.completeExceptionally(new IllegalStateException("UserListWriter closed before write"));
+        }
+    }
+}
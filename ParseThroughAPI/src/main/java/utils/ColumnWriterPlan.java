@@ -0,0 +1,316 @@
+package utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+import java.sql.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Per-column writers for one query, resolved once from ResultSetMetaData.
+ * Each row is read with primitive getters and pushed straight into Parquet's RecordConsumer,
+ * without a GenericRecord, a schema lookup or a boxed value per cell.
+ */
+public final class ColumnWriterPlan {
+
+    @FunctionalInterface
+    interface CellWriter {
+        /**
+         * Writes the cell of the current row, or nothing if it is NULL.
+         */
+        void write(ResultSet rs, RecordConsumer rc) throws SQLException;
+    }
+
+    private final MessageType schema;
+    private final CellWriter[] writers;
+
+    private ColumnWriterPlan(MessageType schema, CellWriter[] writers) {
+        this.schema = schema;
+        this.writers = writers;
+    }
+
+    public static ColumnWriterPlan fromMetaData(ResultSetMetaData md, Set<String> fieldsToAnonymize) throws SQLException {
+        int cols = md.getColumnCount();
+        Types.MessageTypeBuilder builder = Types.buildMessage();
+        CellWriter[] writers = new CellWriter[cols];
+        for (int c = 1; c <= cols; c++) {
+            String name = md.getColumnLabel(c);
+            int sqlType = md.getColumnType(c);
+            boolean anonymize = fieldsToAnonymize != null && fieldsToAnonymize.contains(name);
+            if (sqlType == java.sql.Types.ARRAY && !anonymize) {
+                PrimitiveTypeName element = arrayElementType(md.getColumnTypeName(c));
+                if (element == PrimitiveTypeName.BINARY) {
+                    builder.optionalList().optionalElement(element).as(LogicalTypeAnnotation.stringType()).named(name);
+                } else {
+                    builder.optionalList().optionalElement(element).named(name);
+                }
+                writers[c - 1] = listWriter(c, c - 1, name, element);
+                continue;
+            }
+            PrimitiveTypeName type = !anonymize ? parquetType(sqlType)
+                    : IdAnonymizer.isDictionaryEnabled() ? PrimitiveTypeName.INT32 : PrimitiveTypeName.BINARY;
+            if (type == PrimitiveTypeName.BINARY) {
+                builder.optional(type).as(LogicalTypeAnnotation.stringType()).named(name);
+            } else {
+                builder.optional(type).named(name);
+            }
+            writers[c - 1] = cellWriter(c, c - 1, name, sqlType, type, anonymize);
+        }
+        return new ColumnWriterPlan(builder.named("Row"), writers);
+    }
+
+    public MessageType schema() {
+        return schema;
+    }
+
+    public void write(ResultSet rs, RecordConsumer rc) throws SQLException {
+        rc.startMessage();
+        for (CellWriter w : writers) w.write(rs, rc);
+        rc.endMessage();
+    }
+
+    /**
+     * Opens a Snappy-compressed writer that takes the current row of a ResultSet per write() call.
+     */
+    public ParquetWriter<ResultSet> openWriter(OutputFile file) throws java.io.IOException {
+        return new Builder(file, this).build();
+    }
+
+    static PrimitiveTypeName parquetType(int sqlType) {
+        return switch (sqlType) {
+            case java.sql.Types.INTEGER, java.sql.Types.SMALLINT, java.sql.Types.TINYINT -> PrimitiveTypeName.INT32;
+            case java.sql.Types.BIGINT -> PrimitiveTypeName.INT64;
+            case java.sql.Types.FLOAT, java.sql.Types.REAL, java.sql.Types.DOUBLE,
+                 java.sql.Types.NUMERIC, java.sql.Types.DECIMAL -> PrimitiveTypeName.DOUBLE;
+            case java.sql.Types.BOOLEAN, java.sql.Types.BIT -> PrimitiveTypeName.BOOLEAN;
+            default -> PrimitiveTypeName.BINARY;
+        };
+    }
+
+    /**
+     * Element type of an SQL array from the driver's type name: "_int4", "_text" (PostgreSQL)
+     * or "INTEGER ARRAY" (H2). Anything unknown is written as strings.
+     */
+    static PrimitiveTypeName arrayElementType(String typeName) {
+        String t = typeName == null ? "" : typeName.toLowerCase(java.util.Locale.ROOT).trim();
+        if (t.startsWith("_")) t = t.substring(1);
+        if (t.endsWith(" array")) t = t.substring(0, t.length() - " array".length());
+        return switch (t) {
+            case "int2", "int4", "integer", "smallint", "tinyint" -> PrimitiveTypeName.INT32;
+            case "int8", "bigint" -> PrimitiveTypeName.INT64;
+            case "float4", "float8", "real", "double precision", "numeric", "decimal" -> PrimitiveTypeName.DOUBLE;
+            case "bool", "boolean" -> PrimitiveTypeName.BOOLEAN;
+            default -> PrimitiveTypeName.BINARY;
+        };
+    }
+
+    /**
+     * Writes an SQL array as a standard 3-level Parquet LIST; NULL elements are kept as empty slots.
+     */
+    private static CellWriter listWriter(int col, int field, String name, PrimitiveTypeName element) {
+        return (rs, rc) -> {
+            Array array = rs.getArray(col);
+            if (array == null) return;
+            Object[] values = (Object[]) array.getArray();
+            rc.startField(name, field);
+            rc.startGroup();
+            if (values.length > 0) {
+                rc.startField("list", 0);
+                for (Object v : values) {
+                    rc.startGroup();
+                    if (v != null) {
+                        rc.startField("element", 0);
+                        switch (element) {
+                            case INT32 -> rc.addInteger(((Number) v).intValue());
+                            case INT64 -> rc.addLong(((Number) v).longValue());
+                            case DOUBLE -> rc.addDouble(((Number) v).doubleValue());
+                            case BOOLEAN -> rc.addBoolean((Boolean) v);
+                            default -> rc.addBinary(Binary.fromString(v.toString()));
+                        }
+                        rc.endField("element", 0);
+                    }
+                    rc.endGroup();
+                }
+                rc.endField("list", 0);
+            }
+            rc.endGroup();
+            rc.endField(name, field);
+            array.free();
+        };
+    }
+
+    private static CellWriter cellWriter(int col, int field, String name, int sqlType,
+                                         PrimitiveTypeName type, boolean anonymize) {
+        if (anonymize && type == PrimitiveTypeName.INT32) {
+            return (rs, rc) -> {
+                String s = readString(rs, col, sqlType);
+                if (s == null) return;
+                rc.startField(name, field);
+                rc.addInteger(IdAnonymizer.denseId(s));
+                rc.endField(name, field);
+            };
+        }
+        if (anonymize) {
+            return (rs, rc) -> {
+                String s = readString(rs, col, sqlType);
+                if (s == null) return;
+                writeBinary(rc, field, name, Binary.fromString(IdAnonymizer.anonymizeId(s)));
+            };
+        }
+        return switch (type) {
+            case INT32 -> (rs, rc) -> {
+                int v = rs.getInt(col);
+                if (rs.wasNull()) return;
+                rc.startField(name, field);
+                rc.addInteger(v);
+                rc.endField(name, field);
+            };
+            case INT64 -> (rs, rc) -> {
+                long v = rs.getLong(col);
+                if (rs.wasNull()) return;
+                rc.startField(name, field);
+                rc.addLong(v);
+                rc.endField(name, field);
+            };
+            case DOUBLE -> (rs, rc) -> {
+                double v = rs.getDouble(col);
+                if (rs.wasNull()) return;
+                rc.startField(name, field);
+                rc.addDouble(v);
+                rc.endField(name, field);
+            };
+            case BOOLEAN -> (rs, rc) -> {
+                boolean v = rs.getBoolean(col);
+                if (rs.wasNull()) return;
+                rc.startField(name, field);
+                rc.addBoolean(v);
+                rc.endField(name, field);
+            };
+            default -> (rs, rc) -> {
+                String s = readString(rs, col, sqlType);
+                // the Avro-based export wrote blank strings as null
+                if (s == null || s.trim().isEmpty()) return;
+                writeBinary(rc, field, name, Binary.fromString(s));
+            };
+        };
+    }
+
+    private static void writeBinary(RecordConsumer rc, int field, String name, Binary value) {
+        rc.startField(name, field);
+        rc.addBinary(value);
+        rc.endField(name, field);
+    }
+
+    /**
+     * Text form of a cell, matching what the Avro-based export used to write; blank text is turned into
+     * null by the string column writer, not here, so anonymized ids still hash an empty value as before.
+     */
+    static String readString(ResultSet rs, int col, int sqlType) throws SQLException {
+        switch (sqlType) {
+            case java.sql.Types.CHAR, java.sql.Types.VARCHAR, java.sql.Types.LONGVARCHAR,
+                 java.sql.Types.NCHAR, java.sql.Types.NVARCHAR, java.sql.Types.LONGNVARCHAR -> {
+                return rs.getString(col);
+            }
+            case java.sql.Types.INTEGER, java.sql.Types.SMALLINT, java.sql.Types.TINYINT -> {
+                int v = rs.getInt(col);
+                return rs.wasNull() ? null : Integer.toString(v);
+            }
+            case java.sql.Types.BIGINT -> {
+                long v = rs.getLong(col);
+                return rs.wasNull() ? null : Long.toString(v);
+            }
+            case java.sql.Types.TIMESTAMP, java.sql.Types.TIMESTAMP_WITH_TIMEZONE -> {
+                Timestamp ts = rs.getTimestamp(col);
+                return ts == null ? null : Instant.ofEpochMilli(ts.getTime()).toString();
+            }
+            default -> {
+                Object obj = rs.getObject(col);
+                if (obj == null) return null;
+                if (obj instanceof Array array) {
+                    try {
+                        return Arrays.toString((Object[]) array.getArray());
+                    } catch (Exception e) {
+                        return obj.toString();
+                    }
+                }
+                if (obj instanceof java.math.BigDecimal bd) return Double.toString(bd.doubleValue());
+                return obj.toString();
+            }
+        }
+    }
+
+    private static final class ResultSetWriteSupport extends WriteSupport<ResultSet> {
+        private final ColumnWriterPlan plan;
+        private RecordConsumer consumer;
+
+        ResultSetWriteSupport(ColumnWriterPlan plan) {
+            this.plan = plan;
+        }
+
+        @Override
+        public WriteContext init(ParquetConfiguration configuration) {
+            return new WriteContext(plan.schema, new HashMap<>());
+        }
+
+        // still abstract in WriteSupport; writers built from an OutputFile call the variant above
+        @Override
+        @Deprecated
+        public WriteContext init(Configuration configuration) {
+            return init(new HadoopParquetConfiguration(configuration));
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            this.consumer = recordConsumer;
+        }
+
+        @Override
+        public void write(ResultSet rs) {
+            try {
+                plan.write(rs, consumer);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read row for parquet export", e);
+            }
+        }
+    }
+
+    private static final class Builder extends ParquetWriter.Builder<ResultSet, Builder> {
+        private final ColumnWriterPlan plan;
+
+        Builder(OutputFile file, ColumnWriterPlan plan) {
+            super(file);
+            this.plan = plan;
+            withCompressionCodec(org.apache.parquet.hadoop.metadata.CompressionCodecName.SNAPPY);
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<ResultSet> getWriteSupport(ParquetConfiguration conf) {
+            return new ResultSetWriteSupport(plan);
+        }
+
+        // still abstract in ParquetWriter.Builder, see ResultSetWriteSupport.init
+        @Override
+        @Deprecated
+        protected WriteSupport<ResultSet> getWriteSupport(Configuration conf) {
+            return new ResultSetWriteSupport(plan);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Crawl state of one job kept in an append-only journal of "plan,N", "page,N" and "user,N" lines,
+ * flushed after every line, so a killed crawl can resume and skip completed pages and users.
+ * The journal is deleted once the job completes, so the next run starts from scratch.
+ * Location and behaviour are read from a system property or an environment variable:
+ * - crawl.stateDir / CRAWL_STATE_DIR: journal directory, default ./crawl-state
+ * - crawl.resume / CRAWL_RESUME: false drops the journal of an unfinished run, default true
+ */
+public final class CrawlCheckpoint implements AutoCloseable {
+
+    public static final String ANIME_TOP_JOB = "anime-top";
+    public static final String RANDOM_USERS_JOB = "random-users";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlCheckpoint.class);
+
+    private final Path file;
+    private final BitSet pages = new BitSet();
+    private final ConcurrentHashMap.KeySetView<Integer, Boolean> users = ConcurrentHashMap.newKeySet();
+    private BufferedWriter out;
+    private Integer plannedTotal;
+
+    private CrawlCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    public static CrawlCheckpoint forJob(String job) throws IOException {
+        String dir = System.getProperty("crawl.stateDir");
+        if (dir == null || dir.isBlank()) dir = System.getenv().getOrDefault("CRAWL_STATE_DIR", "crawl-state");
+        String resume = System.getProperty("crawl.resume");
+        if (resume == null || resume.isBlank()) resume = System.getenv().getOrDefault("CRAWL_RESUME", "true");
+
+        Path file = Path.of(dir).resolve(job + ".journal");
+        if (!Boolean.parseBoolean(resume.trim()) && Files.deleteIfExists(file)) {
+            LOGGER.info("Dropped crawl state {}", file);
+        }
+        CrawlCheckpoint checkpoint = open(file);
+        if (checkpoint.plannedTotal != null || !checkpoint.users.isEmpty() || !checkpoint.pages.isEmpty()) {
+            LOGGER.info("Resuming {}: planned={}, pages done={}, users done={}", job,
+                    checkpoint.plannedTotal, checkpoint.completedPages(), checkpoint.completedUsers());
+        }
+        return checkpoint;
+    }
+
+    public static CrawlCheckpoint open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file);
+        boolean torn = Files.exists(file) && endsWithoutNewline(file);
+        if (Files.exists(file)) {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line = in.readLine();
+                while (line != null) {
+                    String next = in.readLine();
+                    // a torn last line after a crash ("page,12" cut to "page,1") is not trusted
+                    if (next != null || !torn) checkpoint.replay(line);
+                    line = next;
+                }
+            }
+        }
+        checkpoint.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (torn) {
+            checkpoint.out.newLine();
+            checkpoint.out.flush();
+        }
+        return checkpoint;
+    }
+
+    private static boolean endsWithoutNewline(Path file) throws IOException {
+        try (java.nio.channels.SeekableByteChannel ch = Files.newByteChannel(file)) {
+            if (ch.size() == 0) return false;
+            java.nio.ByteBuffer last = java.nio.ByteBuffer.allocate(1);
+            ch.position(ch.size() - 1).read(last);
+            return last.get(0) != '\n';
+        }
+    }
+
+    private void replay(String line) {
+        int comma = line.indexOf(',');
+        if (comma <= 0 || comma == line.length() - 1) return;
+        int value;
+        try {
+            value = Integer.parseInt(line.substring(comma + 1));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        switch (line.substring(0, comma)) {
+            case "plan" -> plannedTotal = value;
+            case "page" -> { if (value >= 0) pages.set(value); }
+            case "user" -> users.add(value);
+            default -> { }
+        }
+    }
+
+    public synchronized Integer plannedTotal() {
+        return plannedTotal;
+    }
+
+    public synchronized void setPlannedTotal(int total) {
+        if (plannedTotal != null && plannedTotal == total) return;
+        append("plan", total);
+        plannedTotal = total;
+    }
+
+    public synchronized boolean isPageDone(int page) {
+        return page >= 0 && pages.get(page);
+    }
+
+    public synchronized void markPageDone(int page) {
+        if (isPageDone(page)) return;
+        append("page", page);
+        pages.set(page);
+    }
+
+    public synchronized int completedPages() {
+        return pages.cardinality();
+    }
+
+    public boolean isUserDone(int malId) {
+        return users.contains(malId);
+    }
+
+    public void markUserDone(int malId) {
+        if (users.contains(malId)) return;
+        synchronized (this) {
+            if (!users.add(malId)) return;
+            append("user", malId);
+        }
+    }
+
+    public int completedUsers() {
+        return users.size();
+    }
+
+    /**
+     * Closes and deletes the journal: the job is finished and a new run should start over.
+     */
+    public synchronized void complete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete crawl state " + file, e);
+        }
+        LOGGER.info("Crawl state {} completed", file.getFileName());
+    }
+
+    private void append(String kind, int value) {
+        if (out == null) throw new IllegalStateException("Crawl state " + file + " is closed");
+        try {
+            out.write(kind);
+            out.write(',');
+            out.write(Integer.toString(value));
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to crawl state " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            out = null;
+        }
+    }
+}
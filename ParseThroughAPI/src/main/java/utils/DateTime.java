@@ -1,89 +1,73 @@
 package utils;
+import java.text.Format;
+import java.text.ParsePosition;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.temporal.TemporalAccessor;
-import java.util.regex.Pattern;
 
+/**
+ * Date decoding for API values. The shape of the input is recognised in one pass
+ * (digits, yyyy-MM-ddTHH:mm[:ss[.n]] with Z / offset / nothing, yyyy-MM-dd, MM-dd-yy, MM-dd-yyyy)
+ * and parsed by hand, without a regex, a formatter or an exception. Anything else goes to
+ * the java.time formatters through their non-throwing Format view.
+ */
 public final class DateTime {
 
-    private static final Pattern DIGITS = Pattern.compile("^\\d+$");
+    private enum Shape { EPOCH, ISO_DATE_TIME, ISO_DATE, MONTH_DAY_YY, MONTH_DAY_YYYY, OTHER }
 
-    private static final DateTimeFormatter[] ISO_VARIANTS = new DateTimeFormatter[]{
-            DateTimeFormatter.ISO_OFFSET_DATE_TIME, // 2024-06-01T12:34:56+00:00
-            DateTimeFormatter.ISO_INSTANT,         // 2024-06-01T12:34:56Z
-            DateTimeFormatter.ISO_LOCAL_DATE_TIME // 2024-06-01T12:34:56 (no offset)
-    };
+    // epoch seconds with more digits do not fit into OffsetDateTime anyway
+    private static final int MAX_EPOCH_DIGITS = 18;
+    private static final long MIN_EPOCH_SECOND = LocalDateTime.MIN.toEpochSecond(ZoneOffset.UTC);
+    private static final long MAX_EPOCH_SECOND = LocalDateTime.MAX.toEpochSecond(ZoneOffset.UTC);
 
-    private static final DateTimeFormatter[] LOCAL_DATE_VARIANTS = new DateTimeFormatter[]{
-            DateTimeFormatter.ISO_LOCAL_DATE,      // 2024-06-01
-            DateTimeFormatter.ofPattern("MM-dd-yy"), // 06-01-24 (if such appears)
-            DateTimeFormatter.ofPattern("MM-dd-yyyy") // 06-01-2024
-    };
+    // rare shapes (24:00, leap seconds, RFC 1123) that the fast path leaves to java.time
+    private static final Format ISO_OFFSET = DateTimeFormatter.ISO_OFFSET_DATE_TIME.toFormat(Instant::from);
+    private static final Format ISO_INSTANT = DateTimeFormatter.ISO_INSTANT.toFormat(Instant::from);
+    private static final Format ISO_LOCAL = DateTimeFormatter.ISO_LOCAL_DATE_TIME.toFormat(LocalDateTime::from);
+    private static final Format RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME.toFormat(ZonedDateTime::from);
 
     private DateTime() {}
 
     /**
      * Parses a string or numeric string in OffsetDateTime.
      * Supports:
-     * - epoch seconds (a string of digits OR Long -> see parseEpochSeconds)
-     *  - ISO_OFFSET_DATE_TIME / ISO_INSTANT / ISO_LOCAL_DATE_TIME
+     * - epoch seconds (a string of digits OR Long -> see parseToOffsetDateTime(long))
+     * - ISO_OFFSET_DATE_TIME / ISO_INSTANT / ISO_LOCAL_DATE_TIME, returned in UTC
      * - RFC_1123_DATE_TIME (as a fallback)
      * Returns null if parsing failed.
      */
-    // TODO reduce coomplexity
     public static OffsetDateTime parseToOffsetDateTime(String s) {
         if (s == null) return null;
         s = s.trim();
         if (s.isEmpty()) return null;
 
-        try {
-            if (DIGITS.matcher(s).matches()) {
-                long epoch = Long.parseLong(s);
-                return parseEpochSeconds(epoch);
+        switch (shapeOf(s)) {
+            case EPOCH -> {
+                return s.length() > MAX_EPOCH_DIGITS ? null : parseToOffsetDateTime(epochSeconds(s));
+            }
+            case ISO_DATE_TIME -> {
+                OffsetDateTime odt = parseIsoDateTime(s);
+                return odt != null ? odt : parseWithFormatters(s);
+            }
+            case OTHER -> {
+                return parseWithFormatters(s);
+            }
+            default -> {
+                return null;
             }
-        } catch (Exception e) {
-            System.out.println("Error parsing date: " + s);
-        }
-
-        for (DateTimeFormatter f : ISO_VARIANTS) {
-            try {
-                TemporalAccessor ta = f.parse(s);
-                Instant instant = null;
-                if (f == DateTimeFormatter.ISO_LOCAL_DATE_TIME) {
-                    LocalDateTime ldt = LocalDateTime.parse(s, f);
-                    instant = ldt.toInstant(ZoneOffset.UTC);
-                } else {
-                    try {
-                        instant = Instant.from(ta);
-                    } catch (DateTimeException de) {
-                        try {
-                            return OffsetDateTime.parse(s, f);
-                        } catch (DateTimeException e) {
-                            System.out.println("Error parsing date: " + s);
-                        }
-                    }
-                }
-                if (instant != null) return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
-            } catch (DateTimeParseException ignored) {}
         }
-
-        try {
-            ZonedDateTime zdt = ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME);
-            return zdt.toOffsetDateTime();
-        } catch (DateTimeParseException ignored) {}
-
-        return null;
     }
 
     public static OffsetDateTime parseToOffsetDateTime(Long epochSeconds) {
         if (epochSeconds == null) return null;
-        return parseEpochSeconds(epochSeconds);
+        return parseToOffsetDateTime(epochSeconds.longValue());
     }
 
-    private static OffsetDateTime parseEpochSeconds(long epochSeconds) {
-        Instant ins = Instant.ofEpochSecond(epochSeconds);
-        return OffsetDateTime.ofInstant(ins, ZoneOffset.UTC);
+    /**
+     * @return the instant in UTC, or null when it is outside the supported range
+     */
+    public static OffsetDateTime parseToOffsetDateTime(long epochSeconds) {
+        if (epochSeconds < MIN_EPOCH_SECOND || epochSeconds > MAX_EPOCH_SECOND) return null;
+        return OffsetDateTime.of(LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC), ZoneOffset.UTC);
     }
 
     public static LocalDate parseToLocalDate(String s) {
@@ -91,28 +75,165 @@ public final class DateTime {
         s = s.trim();
         if (s.isEmpty()) return null;
 
-        if (DIGITS.matcher(s).matches()) {
-            try {
-                long epoch = Long.parseLong(s);
-                return Instant.ofEpochSecond(epoch).atZone(ZoneOffset.UTC).toLocalDate();
-            } catch (Exception ignored) {}
+        switch (shapeOf(s)) {
+            case EPOCH -> {
+                return s.length() > MAX_EPOCH_DIGITS ? null : parseToLocalDate(epochSeconds(s));
+            }
+            case ISO_DATE -> {
+                return strictDate(digits(s, 0, 4), digits(s, 5, 7), digits(s, 8, 10));
+            }
+            // like DateTimeFormatter.ofPattern: "yy" is 2000-2099, day 29-31 is moved into the month
+            case MONTH_DAY_YY -> {
+                return smartDate(2000 + digits(s, 6, 8), digits(s, 0, 2), digits(s, 3, 5));
+            }
+            // "yyyy" is year-of-era, so year 0 does not exist
+            case MONTH_DAY_YYYY -> {
+                int year = digits(s, 6, 10);
+                return year == 0 ? null : smartDate(year, digits(s, 0, 2), digits(s, 3, 5));
+            }
+            default -> {
+                OffsetDateTime odt = parseToOffsetDateTime(s);
+                return odt != null ? odt.toLocalDate() : null;
+            }
         }
+    }
+
+    public static LocalDate parseToLocalDate(Long epochSeconds) {
+        if (epochSeconds == null) return null;
+        OffsetDateTime odt = parseToOffsetDateTime(epochSeconds.longValue());
+        return odt != null ? odt.toLocalDate() : null;
+    }
 
-        for (DateTimeFormatter f : LOCAL_DATE_VARIANTS) {
-            try {
-                return LocalDate.parse(s, f);
-            } catch (DateTimeParseException ignored) {}
+    private static Shape shapeOf(String s) {
+        int len = s.length();
+        int dashes = 0;
+        int firstDash = -1;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (isDigit(c)) continue;
+            if (c == '-' && dashes < 2) {
+                if (dashes++ == 0) firstDash = i;
+                continue;
+            }
+            // yyyy-MM-ddT...
+            if (c == 'T' && i == 10 && dashes == 2 && firstDash == 4 && s.charAt(7) == '-') {
+                return Shape.ISO_DATE_TIME;
+            }
+            return Shape.OTHER;
         }
+        if (dashes == 0) return Shape.EPOCH;
+        if (dashes != 2) return Shape.OTHER;
+        if (len == 10 && firstDash == 4 && s.charAt(7) == '-') return Shape.ISO_DATE;
+        if (len == 8 && firstDash == 2 && s.charAt(5) == '-') return Shape.MONTH_DAY_YY;
+        if (len == 10 && firstDash == 2 && s.charAt(5) == '-') return Shape.MONTH_DAY_YYYY;
+        return Shape.OTHER;
+    }
 
-        try {
-            OffsetDateTime odt = parseToOffsetDateTime(s);
-            if (odt != null) return odt.toLocalDate();
-        } catch (Exception ignored) {}
+    /**
+     * yyyy-MM-ddTHH:mm[:ss[.fraction]] followed by Z, ±HH:mm[:ss] or nothing (then UTC is assumed).
+     * The date part is already known to be digits and dashes.
+     * @return the instant in UTC, or null when the input has any other layout or an invalid field
+     */
+    private static OffsetDateTime parseIsoDateTime(String s) {
+        int len = s.length();
+        if (len < 16 || s.charAt(13) != ':' || !isDigits(s, 11, 13) || !isDigits(s, 14, 16)) return null;
+        int hour = digits(s, 11, 13);
+        int minute = digits(s, 14, 16);
+        int second = 0;
+        int nano = 0;
+        int i = 16;
+        if (i < len && s.charAt(i) == ':') {
+            if (i + 3 > len || !isDigits(s, i + 1, i + 3)) return null;
+            second = digits(s, i + 1, i + 3);
+            i += 3;
+            if (i < len && s.charAt(i) == '.') {
+                int start = ++i;
+                while (i < len && i - start < 9 && isDigit(s.charAt(i))) nano = nano * 10 + (s.charAt(i++) - '0');
+                if (i == start) return null;
+                for (int k = i - start; k < 9; k++) nano *= 10;
+            }
+        }
+
+        int offsetSeconds;
+        if (i == len) {
+            offsetSeconds = 0;
+        } else if (s.charAt(i) == 'Z' && i + 1 == len) {
+            offsetSeconds = 0;
+        } else if ((s.charAt(i) == '+' || s.charAt(i) == '-')
+                && (len - i == 6 || len - i == 9)
+                && s.charAt(i + 3) == ':' && isDigits(s, i + 1, i + 3) && isDigits(s, i + 4, i + 6)
+                && (len - i == 6 || s.charAt(i + 6) == ':' && isDigits(s, i + 7, i + 9))) {
+            int oh = digits(s, i + 1, i + 3);
+            int om = digits(s, i + 4, i + 6);
+            int os = len - i == 9 ? digits(s, i + 7, i + 9) : 0;
+            if (oh > 18 || om > 59 || os > 59) return null;
+            offsetSeconds = oh * 3600 + om * 60 + os;
+            if (offsetSeconds > 18 * 3600) return null;
+            if (s.charAt(i) == '-') offsetSeconds = -offsetSeconds;
+        } else {
+            return null;
+        }
+
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+                || hour > 23 || minute > 59 || second > 59) {
+            return null;
+        }
+        LocalDateTime ldt = LocalDateTime.of(year, month, day, hour, minute, second, nano);
+        if (offsetSeconds != 0) ldt = ldt.minusSeconds(offsetSeconds);
+        return OffsetDateTime.of(ldt, ZoneOffset.UTC);
+    }
+
+    private static LocalDate strictDate(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) return null;
+        return LocalDate.of(year, month, day);
+    }
 
-        try {
-            return LocalDate.parse(s);
-        } catch (DateTimeParseException ignored) {}
+    private static LocalDate smartDate(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > 31) return null;
+        return LocalDate.of(year, month, Math.min(day, Month.of(month).length(Year.isLeap(year))));
+    }
 
+    private static OffsetDateTime parseWithFormatters(String s) {
+        Object v = parse(ISO_OFFSET, s);
+        if (v == null) v = parse(ISO_INSTANT, s);
+        if (v instanceof Instant instant) return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+        if (parse(ISO_LOCAL, s) instanceof LocalDateTime ldt) return OffsetDateTime.of(ldt, ZoneOffset.UTC);
+        if (parse(RFC_1123, s) instanceof ZonedDateTime zdt) return zdt.toOffsetDateTime();
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the parsed value, or null if the whole string does not match (Format reports it without throwing)
+     */
+    private static Object parse(Format format, String s) {
+        ParsePosition pos = new ParsePosition(0);
+        Object v = format.parseObject(s, pos);
+        return v != null && pos.getIndex() == s.length() ? v : null;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDigits(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) v = v * 10 + (s.charAt(i) - '0');
+        return v;
+    }
+
+    private static long epochSeconds(String s) {
+        long v = 0;
+        for (int i = 0; i < s.length(); i++) v = v * 10 + (s.charAt(i) - '0');
+        return v;
+    }
+}
@@ -0,0 +1,156 @@
+package utils;
+
+import jakarta.persistence.EntityManager;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the fetch, persist and export stages. The event duration is the
+ * wall-clock time of the stage, so a recording shows whether a slow crawl waits on the rate limiter,
+ * a captcha cooldown, the connection pool or the Hibernate flush.
+ * Nothing is recorded unless a recording is running, e.g.
+ * java -XX:StartFlightRecording=settings=default,maxage=6h,filename=crawl.jfr ...
+ * and the events are cheap enough to stay on in a continuous recording (no stack traces).
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {}
+
+    /**
+     * Flushes the persistence context inside a Flush event. Called right before tx.commit(),
+     * which would flush anyway, so the flush shows up apart from the database commit.
+     */
+    public static void flush(EntityManager em, String unit, int rows) {
+        Flush event = new Flush();
+        event.begin();
+        em.flush();
+        event.unit = unit;
+        event.rows = rows;
+        event.commit();
+    }
+
+    @Name("ParseThroughAPI.HttpFetch")
+    @Label("HTTP Fetch")
+    @Category({"ParseThroughAPI", "Fetch"})
+    @Description("One API call including rate-limiter and captcha waits, retries and body decoding")
+    @StackTrace(false)
+    public static final class HttpFetch extends Event {
+        @Label("Host")
+        public String host;
+
+        @Label("URL")
+        public String url;
+
+        @Label("Status")
+        @Description("HTTP status of the last attempt, -1 when no response was received")
+        public int status = -1;
+
+        @Label("Body Size")
+        @DataAmount
+        public long bytes;
+
+        @Label("Rate Limiter Wait")
+        @Timespan
+        public long rateLimitWait;
+
+        @Label("Tainted Host Wait")
+        @Description("Time slept because the host served a captcha")
+        @Timespan
+        public long taintWait;
+
+        @Label("Captcha Retries")
+        public int captchaRetries;
+
+        @Label("Replayed")
+        @Description("Answered from the response archive")
+        public boolean replayed;
+    }
+
+    @Name("ParseThroughAPI.TopPage")
+    @Label("Top Anime Page")
+    @Category({"ParseThroughAPI", "Fetch"})
+    @Description("One attempt to fetch and save a page of /top/anime")
+    @StackTrace(false)
+    public static final class TopPage extends Event {
+        @Label("Page")
+        public int page;
+
+        @Label("Attempt")
+        public int attempt;
+
+        @Label("Anime")
+        public int anime;
+
+        @Label("Saved")
+        public int saved;
+
+        @Label("Persist Time")
+        @Timespan
+        public long persistTime;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("ParseThroughAPI.UserIngestTransaction")
+    @Label("User Ingest Transaction")
+    @Category({"ParseThroughAPI", "Persist"})
+    @Description("One transaction that writes a user profile or a group of anime list pages")
+    @StackTrace(false)
+    public static final class UserIngestTransaction extends Event {
+        @Label("Kind")
+        @Description("profile or list")
+        public String kind;
+
+        @Label("User")
+        @Description("mal_id of the profile, 0 for a list group")
+        public int userId;
+
+        @Label("Pages")
+        public int pages;
+
+        @Label("Entries")
+        public int entries;
+
+        @Label("Committed")
+        public boolean committed;
+    }
+
+    @Name("ParseThroughAPI.Flush")
+    @Label("Persistence Context Flush")
+    @Category({"ParseThroughAPI", "Persist"})
+    @Description("EntityManager.flush() before the commit of a batch")
+    @StackTrace(false)
+    public static final class Flush extends Event {
+        @Label("Unit")
+        @Description("Which batch was flushed, e.g. anime.batch or users.list")
+        public String unit;
+
+        @Label("Rows")
+        public int rows;
+    }
+
+    @Name("ParseThroughAPI.ExportFile")
+    @Label("Export File")
+    @Category({"ParseThroughAPI", "Export"})
+    @Description("Rows read from the database and written into one Parquet file, footer included")
+    @StackTrace(false)
+    public static final class ExportFile extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Size")
+        @Description("Size of the finished file")
+        @DataAmount
+        public long bytes;
+    }
+}
@@ -0,0 +1,96 @@
+package utils;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide token buckets, one per remote host.
+ * Defaults follow the documented Jikan limits (3 req/s burst, 60 req/min sustained)
+ * and the old MAL pacing (1 req/s). Every value can be overridden with a system property
+ * or an environment variable:
+ * - jikan.rate / JIKAN_RATE_PER_SEC, jikan.burst / JIKAN_BURST
+ * - mal.rate / MAL_RATE_PER_SEC, mal.burst / MAL_BURST, mal.jitter / MAL_JITTER_MS
+ */
+public final class HostRateLimiters {
+
+    public static final String JIKAN_HOST = "api.jikan.moe";
+    public static final String MAL_HOST = "myanimelist.net";
+
+    private static final Map<String, TokenBucketRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    static {
+        TokenBucketRateLimiter jikan = new TokenBucketRateLimiter(
+                readDouble("jikan.rate", "JIKAN_RATE_PER_SEC", 1.0),
+                readInt("jikan.burst", "JIKAN_BURST", 3),
+                readLong("jikan.jitter", "JIKAN_JITTER_MS", 0));
+        TokenBucketRateLimiter mal = new TokenBucketRateLimiter(
+                readDouble("mal.rate", "MAL_RATE_PER_SEC", 1.0),
+                readInt("mal.burst", "MAL_BURST", 1),
+                readLong("mal.jitter", "MAL_JITTER_MS", 300));
+
+        LIMITERS.put(JIKAN_HOST, jikan);
+        LIMITERS.put(MAL_HOST, mal);
+
+        String jikanBase = System.getProperty("jikan.base", System.getenv("JIKAN_BASE"));
+        String jikanBaseHost = hostOf(jikanBase);
+        if (jikanBaseHost != null) LIMITERS.putIfAbsent(jikanBaseHost, jikan);
+
+        String malBase = System.getProperty("mal.base", System.getenv("MAL_HOST"));
+        String malBaseHost = hostOf(malBase);
+        if (malBaseHost != null) LIMITERS.putIfAbsent(malBaseHost, mal);
+    }
+
+    private HostRateLimiters() {}
+
+    /**
+     * @return limiter for the host of the url, or null when the host is not rate limited
+     */
+    public static TokenBucketRateLimiter forUrl(String url) {
+        String host = hostOf(url);
+        if (host == null) return null;
+        TokenBucketRateLimiter limiter = LIMITERS.get(host);
+        if (limiter != null) return limiter;
+        // www.myanimelist.net and similar subdomains share the parent bucket
+        for (Map.Entry<String, TokenBucketRateLimiter> e : LIMITERS.entrySet()) {
+            if (host.endsWith("." + e.getKey())) return e.getValue();
+        }
+        return null;
+    }
+
+    public static void register(String host, TokenBucketRateLimiter limiter) {
+        LIMITERS.put(host.toLowerCase(Locale.ROOT), limiter);
+    }
+
+    public static String hostOf(String url) {
+        if (url == null || url.isBlank()) return null;
+        try {
+            String host = URI.create(url.trim()).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String read(String property, String env) {
+        String v = System.getProperty(property);
+        if (v == null || v.isBlank()) v = System.getenv(env);
+        return v == null || v.isBlank() ? null : v.trim();
+    }
+
+    private static double readDouble(String property, String env, double def) {
+        String v = read(property, env);
+        try { return v == null ? def : Double.parseDouble(v); } catch (NumberFormatException e) { return def; }
+    }
+
+    private static int readInt(String property, String env, int def) {
+        String v = read(property, env);
+        try { return v == null ? def : Integer.parseInt(v); } catch (NumberFormatException e) { return def; }
+    }
+
+    private static long readLong(String property, String env, long def) {
+        String v = read(property, env);
+        try { return v == null ? def : Long.parseLong(v); } catch (NumberFormatException e) { return def; }
+    }
+}
@@ -1,38 +1,124 @@
 package utils;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
+/**
+ * Keyed HMAC-SHA256 anonymization of ids. The key is persistent, so the same id maps to the same value
+ * in every export, which lets partitioned and incremental outputs be joined.
+ * Key lookup order: anonymizer.key / ANONYMIZER_KEY (Base64), then the file from
+ * anonymizer.keyFile / ANONYMIZER_KEY_FILE (default ./anonymizer.key), which is created on first use.
+ * With anonymizer.dictionary / ANONYMIZER_DICTIONARY set, denseId() also maps each id to a stable int index.
+ */
 public class IdAnonymizer {
-    private static final byte[] SECRET_KEY = loadSecretKey();
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdAnonymizer.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecretKeySpec SECRET_KEY = new SecretKeySpec(loadSecretKey(), ALGORITHM);
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(IdAnonymizer::newMac);
 
     private static byte[] loadSecretKey() {
-        String envKey = generateHmacKey();
-        if (envKey != null) return envKey.getBytes();
+        String inline = System.getProperty("anonymizer.key", System.getenv("ANONYMIZER_KEY"));
+        String keyFile = System.getProperty("anonymizer.keyFile",
+                System.getenv().getOrDefault("ANONYMIZER_KEY_FILE", "anonymizer.key"));
+        try {
+            return loadKey(inline, Paths.get(keyFile));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading anonymizer key from " + keyFile, e);
+        }
+    }
 
+    /**
+     * @return the inline Base64 key if given, else the key stored in keyFile, creating the file when missing
+     */
+    static byte[] loadKey(String inlineBase64, Path keyFile) throws IOException {
+        if (inlineBase64 != null && !inlineBase64.isBlank()) {
+            return Base64.getDecoder().decode(inlineBase64.trim());
+        }
+        if (Files.exists(keyFile)) {
+            byte[] stored = Base64.getDecoder().decode(Files.readString(keyFile, StandardCharsets.US_ASCII).trim());
+            // an empty file is one being created by another run, or left by one that died before writing
+            if (stored.length == 0) throw new IOException("Anonymizer key file " + keyFile + " is empty");
+            return stored;
+        }
         byte[] key = new byte[32];
         new SecureRandom().nextBytes(key);
+        Path parent = keyFile.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        try {
+            createOwnerOnly(keyFile);
+        } catch (FileAlreadyExistsException e) {
+            // created by a concurrent run between the exists check and here
+            return loadKey(null, keyFile);
+        }
+        Files.writeString(keyFile, Base64.getEncoder().encodeToString(key), StandardCharsets.US_ASCII,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        LOGGER.info("Created new anonymizer key in {}, keep it to get the same ids next time", keyFile.toAbsolutePath());
         return key;
     }
 
-    public static String anonymizeId(String originalId) {
+    /**
+     * Creates the empty key file readable by the owner only from the start, not chmod-ed after the write.
+     */
+    private static void createOwnerOnly(Path keyFile) throws IOException {
         try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(new SecretKeySpec(SECRET_KEY, "HmacSHA256"));
-            return Base64.getUrlEncoder().withoutPadding()
-                    .encodeToString(mac.doFinal(String.valueOf(originalId).getBytes()));
-        } catch (Exception e) {
+            Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(keyFile);
+            LOGGER.warn("Cannot restrict permissions of {} on this file system, limit access to it manually",
+                    keyFile.toAbsolutePath());
+        }
+    }
+
+    private static Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(SECRET_KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException("Error ananymization ", e);
         }
     }
 
+    public static String anonymizeId(String originalId) {
+        // doFinal resets the Mac, so the thread's instance is ready for the next id
+        byte[] digest = MAC.get().doFinal(String.valueOf(originalId).getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    public static boolean isDictionaryEnabled() {
+        return DictionaryHolder.DICTIONARY != null;
+    }
+
+    /**
+     * @return dense index of the id in the persistent dictionary; the dictionary only stores the HMAC of the id
+     */
+    public static int denseId(String originalId) {
+        IdDictionary dictionary = DictionaryHolder.DICTIONARY;
+        if (dictionary == null) {
+            throw new IllegalStateException("Id dictionary is not configured, set ANONYMIZER_DICTIONARY");
+        }
+        return dictionary.indexOf(anonymizeId(originalId));
+    }
+
     public static String generateHmacKey() {
         try {
-            KeyGenerator kg = KeyGenerator.getInstance("HmacSHA256");
+            KeyGenerator kg = KeyGenerator.getInstance(ALGORITHM);
             SecretKey key = kg.generateKey();
             return Base64.getEncoder().encodeToString(key.getEncoded());
         } catch (Exception e) {
@@ -40,4 +126,19 @@ public class IdAnonymizer {
         }
     }
 
-}
\ No newline at end of file
+    private static final class DictionaryHolder {
+        private static final IdDictionary DICTIONARY = open();
+
+        private static IdDictionary open() {
+            String path = System.getProperty("anonymizer.dictionary", System.getenv("ANONYMIZER_DICTIONARY"));
+            if (path == null || path.isBlank()) return null;
+            try {
+                IdDictionary dictionary = IdDictionary.open(Paths.get(path));
+                Runtime.getRuntime().addShutdownHook(new Thread(dictionary::close, "id-dictionary-close"));
+                return dictionary;
+            } catch (IOException e) {
+                throw new RuntimeException("Error opening id dictionary " + path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only mapping from a key to a dense int index (0, 1, 2, ...), kept in a text file of
+ * "key,index" lines. Indexes never change once written, so they can be used as embedding rows
+ * across exports. Lookups of known keys are lock-free; a new key is assigned and appended under a lock.
+ */
+public final class IdDictionary implements AutoCloseable {
+
+    private final Path file;
+    private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<>();
+    private final BufferedWriter out;
+    private int next;
+
+    private IdDictionary(Path file, BufferedWriter out) {
+        this.file = file;
+        this.out = out;
+    }
+
+    public static IdDictionary open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        int next = 0;
+        ConcurrentHashMap<String, Integer> loaded = new ConcurrentHashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int comma = line.lastIndexOf(',');
+                    // a torn last line after a crash is skipped, its key gets a new index
+                    if (comma <= 0 || comma == line.length() - 1) continue;
+                    int idx = Integer.parseInt(line.substring(comma + 1));
+                    loaded.put(line.substring(0, comma), idx);
+                    next = Math.max(next, idx + 1);
+                }
+            }
+        }
+        BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (endsWithoutNewline(file)) {
+            out.newLine();
+            out.flush();
+        }
+        IdDictionary dictionary = new IdDictionary(file, out);
+        dictionary.index.putAll(loaded);
+        dictionary.next = next;
+        return dictionary;
+    }
+
+    private static boolean endsWithoutNewline(Path file) throws IOException {
+        try (java.nio.channels.SeekableByteChannel ch = Files.newByteChannel(file)) {
+            if (ch.size() == 0) return false;
+            java.nio.ByteBuffer last = java.nio.ByteBuffer.allocate(1);
+            ch.position(ch.size() - 1).read(last);
+            return last.get(0) != '\n';
+        }
+    }
+
+    public int indexOf(String key) {
+        Integer idx = index.get(key);
+        if (idx != null) return idx;
+        synchronized (this) {
+            idx = index.get(key);
+            if (idx != null) return idx;
+            int assigned = next;
+            try {
+                out.write(key);
+                out.write(',');
+                out.write(Integer.toString(assigned));
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append to id dictionary " + file, e);
+            }
+            next = assigned + 1;
+            index.put(key, assigned);
+            return assigned;
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
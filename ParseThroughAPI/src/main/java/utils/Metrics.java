@@ -0,0 +1,334 @@
+package utils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide counters, timers and gauges, kept by dotted name (e.g. "http.myanimelist.net.latency").
+ * Recording is lock-free and cheap enough for every request and every exported row.
+ * start() publishes every value as an attribute of the JMX bean ParseThroughAPI:type=Metrics
+ * (jconsole / VisualVM) and logs a summary periodically and on shutdown. The period is read from
+ * a system property or an environment variable:
+ * - metrics.logIntervalSec / METRICS_LOG_INTERVAL_SEC: default 60, 0 logs only on shutdown
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "ParseThroughAPI:type=Metrics";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+    private static final long DEFAULT_LOG_INTERVAL_SEC = 60;
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+    // counter values at the previous summary, for the per-interval rate
+    private static final Map<String, Long> LAST_LOGGED = new HashMap<>();
+    private static long lastLoggedNanos = System.nanoTime();
+    private static boolean started;
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long count() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Duration statistics with a histogram of power-of-two microsecond buckets,
+     * so percentiles are upper bounds within a factor of two.
+     */
+    public static final class Timer {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        public void record(long nanos) {
+            if (nanos < 0) return;
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            long micros = nanos / 1_000;
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double totalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        public double meanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        public double maxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * @return upper bound of the bucket holding the q-th quantile, in milliseconds
+         */
+        public double percentileMillis(double q) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return Math.min((1L << i) / 1e3, maxMillis());
+            }
+            return maxMillis();
+        }
+    }
+
+    private Metrics() {}
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * Registers a value read on demand; a gauge registered again under the same name replaces the old one.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Records a finished HTTP exchange: latency per host and a counter per status class
+     * (2xx, 3xx, 4xx, 5xx, with 429 counted on its own).
+     */
+    public static void recordHttp(String host, int status, long nanos) {
+        String prefix = "http." + (host == null ? "unknown" : host);
+        timer(prefix + ".latency").record(nanos);
+        String statusClass = status == 429 ? "429" : (status / 100) + "xx";
+        counter(prefix + ".status." + statusClass).inc();
+    }
+
+    /**
+     * Active, idle and waiting connections of a Hikari pool, under prefix.active / .idle / .pending.
+     */
+    public static void hikariGauges(String prefix, HikariDataSource ds) {
+        gauge(prefix + ".active", () -> poolValue(ds, HikariPoolMXBean::getActiveConnections));
+        gauge(prefix + ".idle", () -> poolValue(ds, HikariPoolMXBean::getIdleConnections));
+        gauge(prefix + ".pending", () -> poolValue(ds, HikariPoolMXBean::getThreadsAwaitingConnection));
+    }
+
+    /**
+     * Same as hikariGauges(String, HikariDataSource) for the pool behind a Hibernate EntityManagerFactory;
+     * nothing is registered when the factory does not use HikariCP.
+     */
+    public static void hikariGauges(String prefix, EntityManagerFactory emf) {
+        try {
+            ConnectionProvider cp = emf.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry().getService(ConnectionProvider.class);
+            if (cp != null && cp.isUnwrappableAs(HikariDataSource.class)) {
+                hikariGauges(prefix, cp.unwrap(HikariDataSource.class));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("No Hikari pool metrics for {}: {}", prefix, e.getMessage());
+        }
+    }
+
+    private static long poolValue(HikariDataSource ds, java.util.function.ToIntFunction<HikariPoolMXBean> value) {
+        HikariPoolMXBean pool = ds.isClosed() ? null : ds.getHikariPoolMXBean();
+        return pool == null ? 0 : value.applyAsInt(pool);
+    }
+
+    /**
+     * Flat view of every metric: counters and gauges by name, timers as name.count, name.meanMs,
+     * name.p50Ms, name.p95Ms, name.p99Ms, name.maxMs and name.totalMs.
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> out = new TreeMap<>();
+        COUNTERS.forEach((name, c) -> out.put(name, c.count()));
+        TIMERS.forEach((name, t) -> {
+            out.put(name + ".count", t.count());
+            out.put(name + ".meanMs", t.meanMillis());
+            out.put(name + ".p50Ms", t.percentileMillis(0.50));
+            out.put(name + ".p95Ms", t.percentileMillis(0.95));
+            out.put(name + ".p99Ms", t.percentileMillis(0.99));
+            out.put(name + ".maxMs", t.maxMillis());
+            out.put(name + ".totalMs", t.totalMillis());
+        });
+        GAUGES.forEach((name, g) -> {
+            try {
+                out.put(name, g.getAsLong());
+            } catch (RuntimeException e) {
+                out.put(name, -1L);
+            }
+        });
+        return out;
+    }
+
+    /**
+     * One line per metric; counters also show their growth and rate since the previous summary.
+     */
+    public static synchronized String summary() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastLoggedNanos) / 1e9);
+        StringBuilder sb = new StringBuilder("Metrics:");
+        new TreeMap<>(COUNTERS).forEach((name, c) -> {
+            long v = c.count();
+            long delta = v - LAST_LOGGED.getOrDefault(name, 0L);
+            LAST_LOGGED.put(name, v);
+            sb.append(String.format(Locale.ROOT, "%n  %s = %d (+%d, %.1f/s)", name, v, delta, delta / seconds));
+        });
+        new TreeMap<>(TIMERS).forEach((name, t) -> sb.append(String.format(Locale.ROOT,
+                "%n  %s: n=%d mean=%.1fms p50<=%.1fms p95<=%.1fms p99<=%.1fms max=%.1fms total=%.1fs",
+                name, t.count(), t.meanMillis(), t.percentileMillis(0.50), t.percentileMillis(0.95),
+                t.percentileMillis(0.99), t.maxMillis(), t.totalMillis() / 1e3)));
+        new TreeMap<>(GAUGES).keySet().forEach(name -> sb.append(String.format(Locale.ROOT,
+                "%n  %s = %s", name, snapshotGauge(name))));
+        lastLoggedNanos = now;
+        return sb.toString();
+    }
+
+    private static long snapshotGauge(String name) {
+        LongSupplier g = GAUGES.get(name);
+        try {
+            return g == null ? 0 : g.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Registers the JMX bean and starts the summary log; later calls do nothing.
+     */
+    public static synchronized void start() {
+        if (started) return;
+        started = true;
+        registerMBean();
+
+        String v = System.getProperty("metrics.logIntervalSec");
+        if (v == null || v.isBlank()) v = System.getenv("METRICS_LOG_INTERVAL_SEC");
+        long interval = DEFAULT_LOG_INTERVAL_SEC;
+        try {
+            if (v != null && !v.isBlank()) interval = Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid METRICS_LOG_INTERVAL_SEC '{}', using {}", v, DEFAULT_LOG_INTERVAL_SEC);
+        }
+        if (interval > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r ->
+                    Thread.ofPlatform().name("metrics-reporter").daemon(true).unstarted(r));
+            reporter.scheduleAtFixedRate(() -> LOGGER.info(summary()), interval, interval, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> LOGGER.info(summary()), "metrics-final-summary"));
+    }
+
+    private static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) server.registerMBean(new MetricsMBean(), name);
+        } catch (JMException e) {
+            LOGGER.warn("Metrics are not published over JMX: {}", e.getMessage());
+        }
+    }
+
+    static synchronized void resetForTests() {
+        COUNTERS.clear();
+        TIMERS.clear();
+        GAUGES.clear();
+        LAST_LOGGED.clear();
+        lastLoggedNanos = System.nanoTime();
+    }
+
+    /**
+     * Read-only bean whose attributes are the keys of snapshot(); the set grows as metrics are created.
+     */
+    static final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number v = snapshot().get(attribute);
+            if (v == null) throw new AttributeNotFoundException(attribute);
+            return v;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> snapshot = snapshot();
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                Number v = snapshot.get(a);
+                if (v != null) list.add(new Attribute(a, v));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributes = snapshot().entrySet().stream()
+                    .map(e -> new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                            e.getKey(), true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "ParseThroughAPI crawl, persistence and export metrics",
+                    attributes, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk archive of raw HTTP responses. Bodies are gzip files named by the SHA-256 of their content
+ * (bodies/ab/abcdef....gz), so identical pages are stored once; every url has a small json index entry
+ * (index/12/1234....json) with the status, headers, body hash and fetch time.
+ * Configured with a system property or an environment variable:
+ * - http.archive.mode / HTTP_ARCHIVE_MODE: off (default), record or replay
+ * - http.archive.dir / HTTP_ARCHIVE_DIR: archive root, default ./http-archive
+ * In record mode responses are fetched and stored, and a url that is already archived is revalidated
+ * with If-None-Match / If-Modified-Since; in replay mode requests are answered from disk only.
+ */
+public final class ResponseArchive {
+
+    public enum Mode { OFF, RECORD, REPLAY }
+
+    /**
+     * Index entry of one archived url. Header names are lower case.
+     */
+    public record Entry(String url, int status, Map<String, String> headers, String bodySha256, String fetchedAt) {
+        public String header(String name) {
+            return headers == null ? null : headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseArchive.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ResponseArchive DISABLED = new ResponseArchive(null, Mode.OFF);
+    private static final List<String> SKIPPED_HEADERS = List.of("set-cookie", "content-encoding", "content-length");
+
+    private static volatile ResponseArchive instance;
+
+    private final Path root;
+    private final Mode mode;
+
+    public ResponseArchive(Path root, Mode mode) {
+        this.root = root;
+        this.mode = mode;
+    }
+
+    /**
+     * @return the process-wide archive, read from configuration on first use
+     */
+    public static ResponseArchive get() {
+        ResponseArchive a = instance;
+        if (a == null) {
+            synchronized (ResponseArchive.class) {
+                a = instance;
+                if (a == null) {
+                    a = fromConfig();
+                    instance = a;
+                }
+            }
+        }
+        return a;
+    }
+
+    public static void setDefault(ResponseArchive archive) {
+        instance = archive == null ? DISABLED : archive;
+    }
+
+    static ResponseArchive fromConfig() {
+        String mode = read("http.archive.mode", "HTTP_ARCHIVE_MODE");
+        if (mode == null || mode.equalsIgnoreCase("off")) return DISABLED;
+        String dir = read("http.archive.dir", "HTTP_ARCHIVE_DIR");
+        ResponseArchive archive = new ResponseArchive(Path.of(dir == null ? "http-archive" : dir),
+                Mode.valueOf(mode.toUpperCase(Locale.ROOT)));
+        LOGGER.info("HTTP response archive: mode={}, dir={}", archive.mode, archive.root.toAbsolutePath());
+        return archive;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    public boolean isReplay() {
+        return mode == Mode.REPLAY;
+    }
+
+    /**
+     * @return the archived entry for the url, or null when it was never stored
+     */
+    public Entry lookup(String url) throws IOException {
+        Path p = indexPath(url);
+        if (!Files.exists(p)) return null;
+        return MAPPER.readValue(p.toFile(), Entry.class);
+    }
+
+    public byte[] readBody(Entry entry) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(bodyPath(entry.bodySha256())))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Stores a response unless it is transient (429 or 5xx).
+     * @return the new index entry, or null when the response was not archived
+     */
+    public Entry store(String url, int status, Map<String, List<String>> headers, byte[] body) throws IOException {
+        if (status == 429 || status >= 500) return null;
+        String sha = sha256(body);
+        Path bodyFile = bodyPath(sha);
+        if (!Files.exists(bodyFile)) {
+            Files.createDirectories(bodyFile.getParent());
+            Path tmp = Files.createTempFile(bodyFile.getParent(), sha, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(body);
+            }
+            move(tmp, bodyFile);
+        }
+
+        Map<String, String> kept = new LinkedHashMap<>();
+        if (headers != null) {
+            headers.forEach((name, values) -> {
+                if (name == null || values == null || values.isEmpty()) return;
+                String key = name.toLowerCase(Locale.ROOT);
+                if (key.startsWith(":") || SKIPPED_HEADERS.contains(key)) return;
+                kept.put(key, values.get(0));
+            });
+        }
+        Entry entry = new Entry(url, status, kept, sha, Instant.now().toString());
+        Path indexFile = indexPath(url);
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = Files.createTempFile(indexFile.getParent(), "entry", ".tmp");
+        MAPPER.writeValue(tmp.toFile(), entry);
+        move(tmp, indexFile);
+        return entry;
+    }
+
+    private static void move(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path indexPath(String url) {
+        String sha = sha256(url.getBytes(StandardCharsets.UTF_8));
+        return root.resolve("index").resolve(sha.substring(0, 2)).resolve(sha + ".json");
+    }
+
+    private Path bodyPath(String sha) {
+        return root.resolve("bodies").resolve(sha.substring(0, 2)).resolve(sha + ".gz");
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String read(String property, String env) {
+        String v = System.getProperty(property);
+        if (v == null || v.isBlank()) v = System.getenv(env);
+        return v == null || v.isBlank() ? null : v.trim();
+    }
+}
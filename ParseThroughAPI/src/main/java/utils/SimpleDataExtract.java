@@ -2,18 +2,13 @@ package utils;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.parquet.avro.AvroParquetWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
 
 import java.io.File;
 import java.sql.*;
-import java.time.Instant;
 import java.util.*;
 
 public class SimpleDataExtract implements AutoCloseable {
@@ -30,6 +25,7 @@ public class SimpleDataExtract implements AutoCloseable {
         cfg.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
         this.ds = new HikariDataSource(cfg);
         this.fetchSize = fetchSize;
+        Metrics.hikariGauges("db.export", ds);
     }
 
     public interface RowConsumer {
@@ -49,8 +45,12 @@ public class SimpleDataExtract implements AutoCloseable {
         }
     }
 
-    // TODO refactory needs
-    public void exportQueryToParquet(
+    /**
+     * Streams the query into a Parquet file. The column writers are resolved once from the result metadata,
+     * see ColumnWriterPlan.
+     * @return number of rows written
+     */
+    public long exportQueryToParquet(
             String sql,
             List<Object> params,
             File outFile,
@@ -62,164 +62,37 @@ public class SimpleDataExtract implements AutoCloseable {
                 ps.setFetchSize(fetchSize);
                 setParams(ps, params);
                 try (ResultSet rs = ps.executeQuery()) {
-                    ResultSetMetaData md = rs.getMetaData();
-                    Schema schema = buildSchemaFromMeta(md, fieldsToAnonymize);
-
-                    Configuration conf = new Configuration();
-                    Path path = new Path(outFile.getAbsolutePath());
-                    try (ParquetWriter<GenericRecord> writer = AvroParquetWriter.<GenericRecord>builder(
-                                    org.apache.parquet.hadoop.util.HadoopOutputFile.fromPath(path, conf))
-                            .withSchema(schema)
-                            .withCompressionCodec(CompressionCodecName.SNAPPY)
-                            .build()) {
-
-                        final int cols = md.getColumnCount();
-                        while (rs.next()) {
-                            GenericRecord rec = new GenericData.Record(schema);
-                            for (int c = 1; c <= cols; c++) {
-                                String name = md.getColumnLabel(c);
-                                int sqlType = md.getColumnType(c);
-                                Object val = readTypedValue(rs, c, sqlType);
-
-                                if (fieldsToAnonymize != null && fieldsToAnonymize.contains(name) && val != null) {
-                                    val = IdAnonymizer.anonymizeId(val.toString());
-                                }
-                                Schema.Field field = schema.getField(name);
-                                Schema fieldSchema = field.schema();
-                                Schema.Type expectedType = null;
-
-                                if (fieldSchema.getType() == Schema.Type.UNION) {
-                                    for (Schema s : fieldSchema.getTypes()) {
-                                        if (s.getType() != Schema.Type.NULL) {
-                                            expectedType = s.getType();
-                                            break;
-                                        }
-                                    }
-                                } else {
-                                    expectedType = fieldSchema.getType();
-                                }
-
-                                if (val == null) {
-                                } else if (val instanceof Number && expectedType != null) {
-                                    Number n = (Number) val;
-                                    switch (expectedType) {
-                                        case INT -> val = n.intValue();
-                                        case LONG -> val = n.longValue();
-                                        case DOUBLE -> val = n.doubleValue();
-                                        case STRING -> val = n.toString();
-                                        case BOOLEAN -> val = (n.intValue() != 0);
-                                        default -> { }
-                                    }
-                                } else if (val instanceof String && expectedType != null) {
-                                    String s = ((String) val).trim();
-                                    if (s.isEmpty()) {
-                                        val = null;
-                                    } else {
-                                        try {
-                                            switch (expectedType) {
-                                                case INT -> val = Integer.parseInt(s);
-                                                case LONG -> val = Long.parseLong(s);
-                                                case DOUBLE -> val = Double.parseDouble(s);
-                                                case BOOLEAN -> val = Boolean.parseBoolean(s);
-                                                default -> { }
-                                            }
-                                        } catch (NumberFormatException ex) {
-                                        }
-                                    }
-                                }
-
-                                rec.put(name, val);
-                            }
-                            writer.write(rec);
-                        }
-                    }
+                    return writeParquet(rs, outFile, fieldsToAnonymize);
                 }
             }
         }
     }
 
-    private static Schema buildSchemaFromMeta(ResultSetMetaData md, Set<String> fieldsToAnonymize) throws SQLException {
-        String recordName = "Row";
-        Schema record = Schema.createRecord(recordName, null, null, false);
-        List<Schema.Field> fields = new ArrayList<>();
-        int cols = md.getColumnCount();
-        for (int i = 1; i <= cols; i++) {
-            String name = md.getColumnLabel(i);
-            int sqlType = md.getColumnType(i);
-            Schema base;
-            if (fieldsToAnonymize != null && fieldsToAnonymize.contains(name)) {
-                base = Schema.create(Schema.Type.STRING);
-            } else {
-                base = sqlTypeToAvroSchema(sqlType);
-            }
-            List<Schema> union = Arrays.asList(Schema.create(Schema.Type.NULL), base);
-            Schema unionSchema = Schema.createUnion(union);
-            Schema.Field f = new Schema.Field(name, unionSchema, null, Schema.Field.NULL_DEFAULT_VALUE);
-            fields.add(f);
-        }
-        record.setFields(fields);
-        return record;
-    }
-
-    // TODO make schema simpler
-    private static Schema sqlTypeToAvroSchema(int sqlType) {
-        switch (sqlType) {
-            case Types.INTEGER:
-            case Types.SMALLINT:
-            case Types.TINYINT:
-                return Schema.create(Schema.Type.INT);
-            case Types.BIGINT:
-                return Schema.create(Schema.Type.LONG);
-            case Types.FLOAT:
-            case Types.REAL:
-            case Types.DOUBLE:
-            case Types.NUMERIC:
-            case Types.DECIMAL:
-                return Schema.create(Schema.Type.DOUBLE);
-            case Types.BOOLEAN:
-            case Types.BIT:
-                return Schema.create(Schema.Type.BOOLEAN);
-            case Types.DATE:
-            case Types.TIME:
-            case Types.TIMESTAMP:
-            default:
-                return Schema.create(Schema.Type.STRING);
-        }
-    }
-
-    // TODO refactory needs
-    private static Object readTypedValue(ResultSet rs, int colIndex, int sqlType) throws SQLException {
-        Object obj = rs.getObject(colIndex);
-        switch (obj) {
-            case null -> {
-                return null;
-            }
-            case Timestamp timestamp -> {
-                return Instant.ofEpochMilli(timestamp.getTime()).toString();
-            }
-            case java.sql.Date date -> {
-                return obj.toString();
-            }
-            case Time time -> {
-                return obj.toString();
-            }
-            case java.math.BigDecimal bigDecimal -> {
-                return bigDecimal.doubleValue();
-            }
-            case Array array -> {
-                try {
-                    Object[] arr = (Object[]) ((Array) obj).getArray();
-                    return Arrays.toString(arr);
-                } catch (Exception e) {
-                    return obj.toString();
-                }
-            }
-            case Number number -> {
-                return obj;
+    /**
+     * Writes the remaining rows of rs into outFile.
+     * @return number of rows written
+     */
+    public static long writeParquet(ResultSet rs, File outFile, Set<String> fieldsToAnonymize) throws Exception {
+        ColumnWriterPlan plan = ColumnWriterPlan.fromMetaData(rs.getMetaData(), fieldsToAnonymize);
+        Path path = new Path(outFile.getAbsolutePath());
+        Metrics.Counter exported = Metrics.counter("export.rows");
+        long start = System.nanoTime();
+        long rows = 0;
+        FlightEvents.ExportFile event = new FlightEvents.ExportFile();
+        event.begin();
+        try (ParquetWriter<ResultSet> writer = plan.openWriter(HadoopOutputFile.fromPath(path, new Configuration()))) {
+            while (rs.next()) {
+                writer.write(rs);
+                rows++;
+                exported.inc();
             }
-            default -> { }
         }
-        return obj.toString();
+        Metrics.timer("export.file").recordSince(start);
+        event.file = outFile.getPath();
+        event.rows = rows;
+        event.bytes = outFile.length();
+        event.commit();
+        return rows;
     }
 
     private static void setParams(PreparedStatement ps, List<Object> params) throws SQLException {
@@ -0,0 +1,72 @@
+package utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket without a monitor: a caller reserves its permit with a single CAS
+ * and then sleeps on its own, so waiting threads never block each other.
+ * The bucket state is kept as a virtual timestamp; the number of available tokens is
+ * (now - stamp) / interval, capped by the burst size.
+ */
+public final class TokenBucketRateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long maxJitterMs;
+    private final AtomicLong stamp;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst, long maxJitterMs) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond must be > 0");
+        if (burst < 1) throw new IllegalArgumentException("burst must be >= 1");
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstNanos = intervalNanos * burst;
+        this.maxJitterMs = Math.max(0, maxJitterMs);
+        this.stamp = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * Takes a permit, sleeping outside of any lock if the bucket is empty.
+     * Jitter is added only when the caller actually had to wait.
+     * @return nanos spent waiting
+     */
+    public long acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) return 0;
+        long jitterNanos = maxJitterMs == 0 ? 0 :
+                TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(maxJitterMs + 1));
+        long total = waitNanos + jitterNanos;
+        TimeUnit.NANOSECONDS.sleep(total);
+        return total;
+    }
+
+    /**
+     * Takes a permit only if one is available right now.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long prev = stamp.get();
+            long base = Math.max(prev, now - burstNanos);
+            long next = base + intervalNanos;
+            if (next > now) return false;
+            if (stamp.compareAndSet(prev, next)) return true;
+        }
+    }
+
+    /**
+     * Reserves the next permit and returns how long the caller must wait for it.
+     */
+    long reserve() {
+        while (true) {
+            long now = System.nanoTime();
+            long prev = stamp.get();
+            long base = Math.max(prev, now - burstNanos);
+            long next = base + intervalNanos;
+            if (stamp.compareAndSet(prev, next)) {
+                return Math.max(0, next - now);
+            }
+        }
+    }
+}
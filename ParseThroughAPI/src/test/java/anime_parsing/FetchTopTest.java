@@ -5,8 +5,12 @@ import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import utils.CrawlCheckpoint;
+import utils.ResponseArchive;
 
 import java.net.http.HttpClient;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
@@ -21,6 +25,9 @@ class FetchTopTest {
     private ExecutorService executor;
     private FetchTop fetchTop;
 
+    @TempDir
+    Path archiveDir;
+
     @BeforeAll
     static void disableRealDb() {
         EmfHolder.disableForTests();
@@ -156,6 +163,42 @@ class FetchTopTest {
         assertThat(saved.get()).isEqualTo(1);
     }
 
+    @Test
+    void fetchAndPersistAnime_savesPageWithOneBatchCall() throws Exception {
+        String body = "{\"data\":[{\"mal_id\":1,\"title\":\"A\"},{\"mal_id\":2,\"title\":\"B\"}]}";
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(body));
+
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        AnimePersister batchPersister = new AnimePersister() {
+            @Override
+            public void save(Anime anime) {
+                throw new AssertionError("per-row save should not be used");
+            }
+
+            @Override
+            public int saveAll(List<Anime> animes) {
+                batchSizes.add(animes.size());
+                return animes.size();
+            }
+        };
+
+        fetchTop = new FetchTop(
+                HttpClient.newBuilder().build(),
+                fetchTop.mapper,
+                batchPersister,
+                executor,
+                1, 10L, 3, 3, 2L, 5L,
+                server.url("/v4").toString().replaceAll("/$", "")
+        );
+
+        fetchTop.fetchAndPersistAnime(1);
+
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertThat(batchSizes).containsExactly(2);
+    }
+
     @Test
     void fetchTopAnimePage_throwsOnNon200Response() {
         server.enqueue(new MockResponse().setResponseCode(404).setBody("Not found"));
@@ -163,6 +206,71 @@ class FetchTopTest {
         assertThrows(exeptions.HttpRequestException.class, () -> fetchTop.fetchTopAnimePage(1));
     }
 
+    @Test
+    void fetchTopAnimePage_recordThenReplay_servesArchiveWithoutNetwork() throws Exception {
+        String body = "{\"data\":[{\"mal_id\":10,\"title\":\"Test Anime\"}]}";
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(body));
+        fetchTop.setArchive(new ResponseArchive(archiveDir, ResponseArchive.Mode.RECORD));
+        fetchTop.fetchTopAnimePage(1);
+
+        fetchTop.setArchive(new ResponseArchive(archiveDir, ResponseArchive.Mode.REPLAY));
+        AnimeTopResult replayed = fetchTop.fetchTopAnimePage(1);
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(replayed.data.get(0).title).isEqualTo("Test Anime");
+        assertThrows(java.io.IOException.class, () -> fetchTop.fetchTopAnimePage(2));
+    }
+
+    @Test
+    void fetchTopAnimePage_revalidatesArchivedPageWithEtag() throws Exception {
+        String body = "{\"data\":[{\"mal_id\":10,\"title\":\"Test Anime\"}]}";
+        server.enqueue(new MockResponse().setResponseCode(200).setHeader("ETag", "\"v1\"").setBody(body));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        fetchTop.setArchive(new ResponseArchive(archiveDir, ResponseArchive.Mode.RECORD));
+
+        fetchTop.fetchTopAnimePage(1);
+        AnimeTopResult revalidated = fetchTop.fetchTopAnimePage(1);
+
+        assertThat(server.takeRequest().getHeader("If-None-Match")).isNull();
+        assertThat(server.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+        assertThat(revalidated.data.get(0).malId).isEqualTo(10);
+    }
+
+    @Test
+    void fetchAndPersistAnime_withCheckpoint_skipsDonePagesAndCompletes() throws Exception {
+        Path journal = archiveDir.resolve("anime-top.journal");
+        try (CrawlCheckpoint previous = CrawlCheckpoint.open(journal)) {
+            previous.setPlannedTotal(3);
+            previous.markPageDone(1);
+            previous.markPageDone(3);
+        }
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"data\":[{\"mal_id\":2,\"title\":\"B\"}]}"));
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.open(journal);
+        fetchTop.setCheckpoint(checkpoint);
+
+        fetchTop.fetchAndPersistAnime(3);
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(server.takeRequest().getPath()).isEqualTo("/v4/top/anime?page=2");
+        assertThat(journal).doesNotExist();
+    }
+
+    @Test
+    void fetchAndPersistAnime_withCheckpoint_keepsStateWhenPageFails() throws Exception {
+        Path journal = archiveDir.resolve("anime-top.journal");
+        for (int i = 0; i < 3; i++) server.enqueue(new MockResponse().setResponseCode(500));
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.open(journal);
+        fetchTop.setCheckpoint(checkpoint);
+
+        fetchTop.fetchAndPersistAnime(1);
+        checkpoint.close();
+
+        assertThat(journal).exists();
+        try (CrawlCheckpoint reopened = CrawlCheckpoint.open(journal)) {
+            assertThat(reopened.isPageDone(1)).isFalse();
+        }
+    }
+
     static class InMemoryPersister implements AnimePersister {
         private final CopyOnWriteArrayList<Anime> stored = new CopyOnWriteArrayList<>();
 
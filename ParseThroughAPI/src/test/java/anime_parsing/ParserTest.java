@@ -4,10 +4,13 @@ import exeptions.ParserException;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.TypedQuery;
 import mapper.AnimeMapper;
 import org.junit.jupiter.api.*;
 import org.mockito.MockedStatic;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -130,4 +133,68 @@ class ParserTest {
             mm.verify(() -> AnimeMapper.map(eq(dto), eq(mockEm)), times(1));
         }
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void saveAnimeBatch_writesPageInOneTransaction() {
+        Anime fresh = new Anime();
+        fresh.title = "Fresh";
+        fresh.malId = 40;
+        Anime known = new Anime();
+        known.title = "Known";
+        known.malId = 41;
+        Anime blank = new Anime();
+        blank.title = " ";
+        blank.malId = 42;
+
+        data.Anime existing = mock(data.Anime.class);
+        when(existing.getMalId()).thenReturn(41);
+        data.Anime mapped = mock(data.Anime.class);
+        TypedQuery<data.Anime> query = mock(TypedQuery.class);
+        when(mockEm.createQuery(anyString(), eq(data.Anime.class))).thenReturn(query);
+        when(query.setParameter(eq("ids"), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of(existing));
+
+        try (MockedStatic<AnimeMapper> mm = mockStatic(AnimeMapper.class)) {
+            mm.when(() -> AnimeMapper.map(eq(fresh), eq(mockEm))).thenReturn(mapped);
+
+            int saved = Parser.saveAnimeBatch(List.of(fresh, known, blank));
+
+            assertEquals(2, saved);
+            verify(mockTx, times(1)).begin();
+            verify(mockTx, times(1)).commit();
+            verify(mockEm).persist(mapped);
+            verify(mockEm, never()).find(eq(data.Anime.class), any());
+            mm.verify(() -> AnimeMapper.update(eq(existing), eq(known), eq(mockEm)), times(1));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void saveAnimeBatch_fallsBackToPerRowSavesWhenBatchFails() {
+        Anime good = new Anime();
+        good.title = "Good";
+        good.malId = 50;
+        Anime bad = new Anime();
+        bad.title = "Bad";
+        bad.malId = 51;
+
+        TypedQuery<data.Anime> query = mock(TypedQuery.class);
+        when(mockEm.createQuery(anyString(), eq(data.Anime.class))).thenReturn(query);
+        when(query.setParameter(eq("ids"), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+
+        try (MockedStatic<AnimeMapper> mm = mockStatic(AnimeMapper.class)) {
+            mm.when(() -> AnimeMapper.map(eq(good), eq(mockEm))).thenReturn(mock(data.Anime.class));
+            mm.when(() -> AnimeMapper.map(eq(bad), eq(mockEm))).thenThrow(new RuntimeException("bad row"));
+
+            int saved = Parser.saveAnimeBatch(List.of(good, bad));
+
+            assertEquals(1, saved);
+            // batch + one per row
+            verify(mockTx, times(3)).begin();
+            verify(mockTx, times(2)).rollback();
+            verify(mockTx, times(1)).commit();
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class KnownAnimeIdsTest {
+
+    private final KnownAnimeIds ids = KnownAnimeIds.get();
+
+    @AfterEach
+    void tearDown() {
+        ids.resetForTests();
+    }
+
+    @Test
+    void containsOnlyAddedIds() {
+        ids.resetForTests(1, 63, 64, 52_991);
+
+        assertThat(ids.contains(1)).isTrue();
+        assertThat(ids.contains(63)).isTrue();
+        assertThat(ids.contains(64)).isTrue();
+        assertThat(ids.contains(52_991)).isTrue();
+        assertThat(ids.contains(2)).isFalse();
+        assertThat(ids.contains(-1)).isFalse();
+        assertThat(ids.size()).isEqualTo(4);
+    }
+
+    @Test
+    void addGrowsBeyondInitialCapacity() {
+        ids.resetForTests();
+
+        ids.add(5_000_000);
+        ids.add(5_000_000);
+
+        assertThat(ids.contains(5_000_000)).isTrue();
+        assertThat(ids.contains(4_999_999)).isFalse();
+        assertThat(ids.contains(Integer.MAX_VALUE)).isFalse();
+        assertThat(ids.size()).isEqualTo(1);
+    }
+
+    @Test
+    void addRejectsNegativeIds() {
+        assertThrows(IllegalArgumentException.class, () -> ids.add(-5));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ensureLoaded_queriesDatabaseOnlyOnce() {
+        ids.invalidate();
+        EntityManager em = mock(EntityManager.class);
+        TypedQuery<Integer> query = mock(TypedQuery.class);
+        when(em.createQuery(anyString(), eq(Integer.class))).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.of(3, 7, 11));
+
+        ids.ensureLoaded(em);
+        ids.ensureLoaded(em);
+
+        verify(em, times(1)).createQuery("SELECT a.malId FROM Anime a", Integer.class);
+        assertThat(ids.isLoaded()).isTrue();
+        assertThat(ids.contains(7)).isTrue();
+        assertThat(ids.contains(8)).isFalse();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lookUpMissing_addsIdsInsertedSinceTheLoadAndRemembersMisses() {
+        ids.resetForTests(1, 2);
+        EntityManager em = mock(EntityManager.class);
+        TypedQuery<Integer> query = mock(TypedQuery.class);
+        when(em.createQuery(anyString(), eq(Integer.class))).thenReturn(query);
+        when(query.setParameter(eq("ids"), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of(9));
+
+        ids.lookUpMissing(em, Arrays.asList(1, 9, null, 12, 9));
+        ids.lookUpMissing(em, List.of(2, 12));
+
+        verify(query, times(1)).setParameter("ids", Set.of(9, 12));
+        verify(query, times(1)).getResultList();
+        assertThat(ids.contains(9)).isTrue();
+        assertThat(ids.contains(12)).isFalse();
+    }
+}
@@ -0,0 +1,140 @@
+package mapper;
+
+import anime_parsing.Anime;
+import anime_parsing.Producer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReferenceCacheTest {
+
+    private final ReferenceCache cache = ReferenceCache.get();
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private Transaction tx;
+    private PreparedStatement ps;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        emf = mock(EntityManagerFactory.class);
+        em = mock(EntityManager.class);
+        tx = mock(Transaction.class);
+        Session session = mock(Session.class);
+        Connection conn = mock(Connection.class);
+        ps = mock(PreparedStatement.class);
+
+        when(em.getEntityManagerFactory()).thenReturn(emf);
+        when(em.unwrap(Session.class)).thenReturn(session);
+        when(session.getTransaction()).thenReturn(tx);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+        doAnswer(inv -> {
+            inv.<Work>getArgument(0).execute(conn);
+            return null;
+        }).when(session).doWork(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.invalidate();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void preload_runsOneQueryPerTableOnlyOnce() {
+        TypedQuery<Integer> query = mock(TypedQuery.class);
+        when(emf.createEntityManager()).thenReturn(em);
+        when(em.createQuery(anyString(), eq(Integer.class))).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.of(1, 2), Stream.of(3), Stream.of());
+
+        cache.preload(emf);
+        cache.preload(emf);
+
+        verify(em).createQuery("SELECT e.malId FROM Producer e", Integer.class);
+        verify(em).createQuery("SELECT e.malId FROM Genre e", Integer.class);
+        verify(em).createQuery("SELECT e.malId FROM Demographic e", Integer.class);
+        verify(em).close();
+        assertThat(cache.isLoaded()).isTrue();
+        assertThat(ReferenceCache.PRODUCERS.contains(2)).isTrue();
+        assertThat(ReferenceCache.GENRES.contains(3)).isTrue();
+        assertThat(ReferenceCache.DEMOGRAPHICS.size()).isZero();
+    }
+
+    @Test
+    void resolve_newId_insertsOnCallersConnectionOnceAndCachesAfterCommit() throws Exception {
+        cache.resolve(em, ReferenceCache.PRODUCERS, 17, p -> p.setInt(1, 17));
+        cache.resolve(em, ReferenceCache.PRODUCERS, 17, p -> p.setInt(1, 17));
+
+        verify(ps, times(1)).executeUpdate();
+        verify(ps).setInt(1, 17);
+        verify(em, times(2)).getReference(data.Producer.class, 17);
+        // no second connection while the caller's transaction is open
+        verifyNoInteractions(emf);
+        assertThat(ReferenceCache.PRODUCERS.contains(17)).isFalse();
+
+        completeTransaction(Status.STATUS_COMMITTED);
+
+        assertThat(ReferenceCache.PRODUCERS.contains(17)).isTrue();
+    }
+
+    @Test
+    void resolve_rolledBackInsert_isNotCached() throws Exception {
+        cache.resolve(em, ReferenceCache.GENRES, 8, p -> p.setInt(1, 8));
+
+        completeTransaction(Status.STATUS_ROLLEDBACK);
+
+        assertThat(ReferenceCache.GENRES.contains(8)).isFalse();
+        // the next transaction inserts the row again
+        cache.resolve(em, ReferenceCache.GENRES, 8, p -> p.setInt(1, 8));
+        verify(ps, times(2)).executeUpdate();
+    }
+
+    private void completeTransaction(int status) {
+        ArgumentCaptor<Synchronization> sync = ArgumentCaptor.forClass(Synchronization.class);
+        verify(tx, atLeastOnce()).registerSynchronization(sync.capture());
+        sync.getValue().afterCompletion(status);
+    }
+
+    @Test
+    void map_withLoadedCache_attachesReferencesWithoutFind() {
+        cache.resetForTests();
+        cache.resolve(em, ReferenceCache.PRODUCERS, 5, p -> {});
+        completeTransaction(Status.STATUS_COMMITTED);
+        clearInvocations(emf, ps);
+        data.Producer ref = new data.Producer();
+        when(em.getReference(data.Producer.class, 5)).thenReturn(ref);
+
+        Producer p = new Producer();
+        p.malId = 5;
+        p.name = "Madhouse";
+        Anime dto = new Anime();
+        dto.malId = 1;
+        dto.title = "T";
+        dto.studios = List.of(p);
+
+        data.Anime entity = AnimeMapper.map(dto, em);
+
+        assertThat(entity.getStudios()).containsExactly(ref);
+        verify(em, never()).find(any(), any());
+        verify(em, never()).persist(any());
+        verifyNoInteractions(emf, ps);
+    }
+}
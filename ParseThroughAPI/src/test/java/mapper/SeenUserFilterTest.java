@@ -0,0 +1,136 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SeenUserFilterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final SeenUserFilter filter = new SeenUserFilter(Duration.ofHours(1), now::get);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ensureLoaded_seedsFromUsersTableOnce() {
+        EntityManagerFactory emf = mock(EntityManagerFactory.class);
+        EntityManager em = mock(EntityManager.class);
+        TypedQuery<Integer> query = mock(TypedQuery.class);
+        when(emf.createEntityManager()).thenReturn(em);
+        when(em.createQuery(anyString(), eq(Integer.class))).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.of(5, 1_000_000, 17));
+
+        filter.ensureLoaded(emf);
+        filter.ensureLoaded(emf);
+
+        verify(em).createQuery("SELECT u.malId FROM Users u", Integer.class);
+        verify(em).close();
+        assertThat(filter.isLoaded()).isTrue();
+        assertThat(filter.storedCount()).isEqualTo(3);
+        assertThat(filter.shouldSkip(1_000_000)).isTrue();
+        assertThat(filter.shouldSkip(6)).isFalse();
+    }
+
+    @Test
+    void markStored_rejectsLaterDuplicates() {
+        assertThat(filter.shouldSkip(42)).isFalse();
+
+        filter.markStored(42);
+
+        assertThat(filter.shouldSkip(42)).isTrue();
+        assertThat(filter.skippedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void tryClaim_letsOnlyOnePipelineHaveAUser() {
+        assertThat(filter.tryClaim(42)).isTrue();
+        assertThat(filter.tryClaim(42)).isFalse();
+
+        // failed fetch: the claim is given back and the user can be drawn again
+        filter.release(42);
+        assertThat(filter.tryClaim(42)).isTrue();
+
+        filter.markStored(42);
+        filter.release(42);
+        assertThat(filter.tryClaim(42)).isFalse();
+        assertThat(filter.skippedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void tryClaim_concurrentClaimsOfTheSameUser_haveOneWinner() throws Exception {
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> claims = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                claims.add(pool.submit(() -> {
+                    start.await();
+                    return filter.tryClaim(7);
+                }));
+            }
+            start.countDown();
+            int won = 0;
+            for (Future<Boolean> claim : claims) if (claim.get(5, TimeUnit.SECONDS)) won++;
+            assertThat(won).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void tryClaim_rejectedUserStaysSkippedAfterRelease() {
+        assertThat(filter.tryClaim(9)).isTrue();
+        filter.markRejected(9);
+        filter.release(9);
+
+        assertThat(filter.tryClaim(9)).isFalse();
+    }
+
+    @Test
+    void markRejected_expiresAfterTtl() {
+        filter.markRejected(7);
+        assertThat(filter.shouldSkip(7)).isTrue();
+
+        now.addAndGet(Duration.ofHours(1).toMillis() + 1);
+
+        assertThat(filter.shouldSkip(7)).isFalse();
+    }
+
+    @Test
+    void markStored_clearsRejection() {
+        filter.markRejected(7);
+        filter.markStored(7);
+        now.addAndGet(Duration.ofHours(2).toMillis());
+
+        assertThat(filter.shouldSkip(7)).isTrue();
+    }
+
+    @Test
+    void invalidate_dropsEverything() {
+        filter.markStored(1);
+        filter.markRejected(2);
+
+        filter.invalidate();
+
+        assertThat(filter.shouldSkip(1)).isFalse();
+        assertThat(filter.shouldSkip(2)).isFalse();
+        assertThat(filter.isLoaded()).isFalse();
+    }
+}
@@ -0,0 +1,174 @@
+package mapper;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import user_parsing.UserAnimeEntry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UserAnimeStatBulkWriterTest {
+
+    private Connection conn;
+    private PreparedStatement ps;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conn = mock(Connection.class);
+        ps = mock(PreparedStatement.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+    }
+
+    @AfterEach
+    void tearDown() {
+        KnownAnimeIds.get().invalidate();
+    }
+
+    @Test
+    void buildSql_hasOnePlaceholderGroupPerRow() {
+        String sql = UserAnimeStatBulkWriter.buildSql(2);
+
+        assertThat(sql).startsWith("INSERT INTO user_anime_stat (user_id, anime_id, score, status, episodes_watched, last_updated) VALUES (?, ?, ?, ?, ?, ?), (?, ?, ?, ?, ?, ?)");
+        assertThat(sql).contains("ON CONFLICT (user_id, anime_id) DO UPDATE SET");
+        assertThat(sql.chars().filter(c -> c == '?').count()).isEqualTo(12);
+    }
+
+    @Test
+    void buildSql_updatesOnlyRowsThatDiffer() {
+        assertThat(UserAnimeStatBulkWriter.buildSql(1)).endsWith(
+                " WHERE (user_anime_stat.score, user_anime_stat.status, user_anime_stat.episodes_watched," +
+                " user_anime_stat.last_updated) IS DISTINCT FROM" +
+                " (EXCLUDED.score, EXCLUDED.status, EXCLUDED.episodes_watched, EXCLUDED.last_updated)");
+    }
+
+    @Test
+    void upsert_bindsMappedValues() throws Exception {
+        UserAnimeEntry dto = entry(10, 0, 2);
+        dto.numWatchedEpisodes = null;
+        dto.updatedAt = 1_700_000_000L;
+        when(ps.executeUpdate()).thenReturn(1);
+
+        int written = UserAnimeStatBulkWriter.upsert(conn, 5, List.of(dto), id -> true);
+
+        assertThat(written).isEqualTo(1);
+        verify(conn).prepareStatement(UserAnimeStatBulkWriter.buildSql(1));
+        verify(ps).setInt(1, 5);
+        verify(ps).setInt(2, 10);
+        verify(ps).setNull(3, Types.INTEGER);
+        verify(ps).setString(4, "completed");
+        verify(ps).setNull(5, Types.INTEGER);
+        verify(ps).setObject(6, OffsetDateTime.of(2023, 11, 14, 22, 13, 20, 0, ZoneOffset.UTC));
+        verify(ps).executeUpdate();
+    }
+
+    @Test
+    void touchUser_stampsUpdatedAtWithTheDatabaseClock() throws Exception {
+        UserAnimeStatBulkWriter.touchUser(conn, 42);
+
+        verify(conn).prepareStatement("UPDATE users SET updated_at = CURRENT_TIMESTAMP WHERE mal_id = ?");
+        verify(ps).setInt(1, 42);
+        verify(ps).executeUpdate();
+    }
+
+    @Test
+    void upsert_skipsUnknownAnimeAndDeduplicates() throws Exception {
+        List<UserAnimeEntry> entries = List.of(entry(1, 5, 1), entry(2, 6, 1), entry(1, 9, 2), entry(3, 7, 1));
+        when(ps.executeUpdate()).thenReturn(2);
+
+        int written = UserAnimeStatBulkWriter.upsert(conn, 5, entries, id -> id != 3);
+
+        assertThat(written).isEqualTo(2);
+        verify(conn).prepareStatement(UserAnimeStatBulkWriter.buildSql(2));
+        // last entry for anime 1 wins
+        verify(ps).setInt(3, 9);
+    }
+
+    @Test
+    void upsert_splitsLargeListsIntoFullChunksAndTail() throws Exception {
+        List<UserAnimeEntry> entries = new ArrayList<>();
+        int total = UserAnimeStatBulkWriter.ROWS_PER_STATEMENT * 2 + 7;
+        for (int i = 1; i <= total; i++) entries.add(entry(i, 7, 2));
+        int full = UserAnimeStatBulkWriter.ROWS_PER_STATEMENT;
+        when(ps.executeUpdate()).thenReturn(full, full, 7);
+
+        int written = UserAnimeStatBulkWriter.upsert(conn, 1, entries, id -> true);
+
+        assertThat(written).isEqualTo(total);
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(conn, times(2)).prepareStatement(sql.capture());
+        assertThat(sql.getAllValues()).containsExactly(
+                UserAnimeStatBulkWriter.buildSql(UserAnimeStatBulkWriter.ROWS_PER_STATEMENT),
+                UserAnimeStatBulkWriter.buildSql(7));
+        verify(ps, times(3)).executeUpdate();
+    }
+
+    @Test
+    void upsert_countsOnlyRowsTheDatabaseChanged() throws Exception {
+        when(ps.executeUpdate()).thenReturn(1);
+
+        int written = UserAnimeStatBulkWriter.upsert(conn, 5, List.of(entry(1, 5, 1), entry(2, 6, 1)), id -> true);
+
+        assertThat(written).isEqualTo(1);
+    }
+
+    @Test
+    void upsertThroughEntityManager_unchangedList_leavesUserStampAlone() throws Exception {
+        KnownAnimeIds.get().resetForTests(1, 2);
+        when(ps.executeUpdate()).thenReturn(0);
+
+        int written = UserAnimeStatBulkWriter.upsert(entityManagerOn(conn), 5, List.of(entry(1, 5, 1), entry(2, 6, 1)));
+
+        assertThat(written).isZero();
+        verify(conn, never()).prepareStatement(startsWith("UPDATE users"));
+    }
+
+    @Test
+    void upsertThroughEntityManager_changedRow_stampsUser() throws Exception {
+        KnownAnimeIds.get().resetForTests(1, 2);
+        when(ps.executeUpdate()).thenReturn(1);
+
+        UserAnimeStatBulkWriter.upsert(entityManagerOn(conn), 5, List.of(entry(1, 5, 1), entry(2, 6, 1)));
+
+        verify(conn).prepareStatement("UPDATE users SET updated_at = CURRENT_TIMESTAMP WHERE mal_id = ?");
+    }
+
+    @Test
+    void upsert_nothingKnown_doesNotTouchConnection() throws Exception {
+        int written = UserAnimeStatBulkWriter.upsert(conn, 1, List.of(entry(1, 5, 1)), id -> false);
+
+        assertThat(written).isZero();
+        verifyNoInteractions(conn);
+    }
+
+    private static EntityManager entityManagerOn(Connection conn) {
+        EntityManager em = mock(EntityManager.class);
+        Session session = mock(Session.class);
+        when(em.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).thenAnswer(inv -> inv.<ReturningWork<?>>getArgument(0).execute(conn));
+        return em;
+    }
+
+    private static UserAnimeEntry entry(int animeId, int score, int status) {
+        UserAnimeEntry e = new UserAnimeEntry();
+        e.animeId = animeId;
+        e.score = score;
+        e.status = status;
+        e.numWatchedEpisodes = 3;
+        e.updatedAt = 1_600_000_000L;
+        return e;
+    }
+}
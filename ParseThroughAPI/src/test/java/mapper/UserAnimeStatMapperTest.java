@@ -24,6 +24,7 @@ class UserAnimeStatMapperTest {
     @BeforeEach
     void setUp() {
         em = mock(EntityManager.class);
+        KnownAnimeIds.get().resetForTests(10, 77, 55, 200, 300);
     }
 
     @Test
@@ -46,15 +47,28 @@ class UserAnimeStatMapperTest {
         UserAnimeEntry dto = new UserAnimeEntry();
         dto.animeId = 123;
 
-        when(em.find(data.Anime.class, 123)).thenReturn(null);
-
         UserAnimeStatMapper.map(dto, 10, em);
+        UserAnimeStatMapper.map(dto, 11, em);
 
-        verify(em).find(data.Anime.class, 123);
+        // checked in the database once, the miss is remembered
+        verify(em, times(1)).find(data.Anime.class, 123);
         verify(em, never()).find(eq(UserAnimeStat.class), any());
         verify(em, never()).persist(any());
     }
 
+    @Test
+    void animeInsertedByAnotherProcess_isFoundAndMapped() {
+        UserAnimeEntry dto = new UserAnimeEntry();
+        dto.animeId = 4321;
+        dto.status = 1;
+        when(em.find(data.Anime.class, 4321)).thenReturn(new data.Anime());
+
+        UserAnimeStatMapper.map(dto, 10, em);
+
+        verify(em).persist(any(UserAnimeStat.class));
+        assertThat(KnownAnimeIds.get().contains(4321)).isTrue();
+    }
+
     @Test
     void createNewStat_persistsEntityWithCorrectFields() {
         UserAnimeEntry dto = new UserAnimeEntry();
@@ -65,7 +79,6 @@ class UserAnimeStatMapperTest {
         dto.createdAt = Instant.parse("2023-01-02T03:04:05Z").toEpochMilli() / 1000;
         dto.updatedAt = null;
 
-        when(em.find(data.Anime.class, 10)).thenReturn(new data.Anime());
         when(em.find(eq(UserAnimeStat.class), any())).thenReturn(null);
 
         UserAnimeStatMapper.map(dto, 99, em);
@@ -95,7 +108,6 @@ class UserAnimeStatMapperTest {
         dto.createdAt = null;
         dto.updatedAt = Instant.parse("2024-05-01T12:00:00Z").toEpochMilli() / 1000;
 
-        when(em.find(data.Anime.class, 77)).thenReturn(new data.Anime());
 
         UserAnimeStat existing = new UserAnimeStat();
         existing.setUserId(5);
@@ -122,7 +134,6 @@ class UserAnimeStatMapperTest {
         dto.status = 3;
         dto.createdAt = Instant.parse("2023-02-02T00:00:00Z").toEpochMilli();
 
-        when(em.find(data.Anime.class, 55)).thenReturn(new data.Anime());
         when(em.find(eq(UserAnimeStat.class), any())).thenReturn(null);
 
         UserAnimeStatMapper.map(dto, 11, em);
@@ -144,7 +155,6 @@ class UserAnimeStatMapperTest {
         dto.createdAt = null;
         dto.updatedAt = null;
 
-        when(em.find(data.Anime.class, 200)).thenReturn(new data.Anime());
         when(em.find(eq(UserAnimeStat.class), any())).thenReturn(null);
 
         OffsetDateTime before = OffsetDateTime.now(ZoneOffset.UTC);
@@ -167,7 +177,6 @@ class UserAnimeStatMapperTest {
         dto.status = 99;
         dto.createdAt = Instant.parse("2022-12-12T12:12:12Z").toEpochMilli();
 
-        when(em.find(data.Anime.class,300)).thenReturn(new data.Anime());
         when(em.find(eq(UserAnimeStat.class), any())).thenReturn(null);
 
         UserAnimeStatMapper.map(dto, 77, em);
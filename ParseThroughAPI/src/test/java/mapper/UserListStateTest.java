@@ -0,0 +1,60 @@
+package mapper;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserListStateTest {
+
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:list_state_" + System.nanoTime(), "sa", "");
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE user_anime_stat (user_id INT, anime_id INT, last_updated TIMESTAMP, " +
+                    "PRIMARY KEY (user_id, anime_id))");
+            st.execute("INSERT INTO user_anime_stat VALUES (1, 10, TIMESTAMP '2024-01-01 00:00:00')");
+            st.execute("INSERT INTO user_anime_stat VALUES (1, 11, TIMESTAMP '2024-03-05 12:00:00')");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    void read_returnsCountAndNewestLastUpdated() throws Exception {
+        UserListState state = UserListState.read(conn, 1);
+
+        assertThat(state.storedEntries()).isEqualTo(2);
+        assertThat(state.watermarkEpochSec())
+                .isEqualTo(Timestamp.valueOf("2024-03-05 12:00:00").toInstant().getEpochSecond());
+    }
+
+    @Test
+    void read_userWithoutList_hasNoWatermark() throws Exception {
+        UserListState state = UserListState.read(conn, 2);
+
+        assertThat(state.storedEntries()).isZero();
+        assertThat(state.watermarkEpochSec()).isNull();
+    }
+
+    @Test
+    void agreesWith_usesRelativeTolerance() {
+        UserListState state = new UserListState(96, 0L);
+
+        assertThat(state.agreesWith(100, 0.05)).isTrue();
+        assertThat(state.agreesWith(110, 0.05)).isFalse();
+        assertThat(state.agreesWith(0, 0.05)).isFalse();
+        assertThat(new UserListState(0, null).agreesWith(0, 0.05)).isTrue();
+    }
+}
@@ -0,0 +1,99 @@
+package recommendation;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AlsTrainerTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void choleskySolve_solvesSymmetricPositiveDefiniteSystem() {
+        // lower triangle of [[4, 2, 0], [2, 5, 1], [0, 1, 3]]
+        double[] a = {4, 0, 0, 2, 5, 0, 0, 1, 3};
+        double[] b = {10, 16, 11};
+
+        AlsTrainer.choleskySolve(a, b, 3);
+
+        assertThat(b[0]).isCloseTo(1.5, within(1e-9));
+        assertThat(b[1]).isCloseTo(2.0, within(1e-9));
+        assertThat(b[2]).isCloseTo(3.0, within(1e-9));
+    }
+
+    @Test
+    void train_explicit_fitsLowRankScoresTheSameOnAnyNumberOfThreads() {
+        RatingMatrix m = lowRankMatrix(200, 80, 0.4, 3);
+        AlsTrainer.Options options = new AlsTrainer.Options(8, 15, 0.01f, false, 1f, 1L);
+
+        AlsModel model = AlsTrainer.train(m, options, pool);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            AlsModel sequential = AlsTrainer.train(m, options, single);
+            assertThat(sequential.userFactors()).containsExactly(model.userFactors());
+            assertThat(sequential.itemFactors()).containsExactly(model.itemFactors());
+        } finally {
+            single.shutdown();
+        }
+
+        assertThat(AlsTrainer.rmse(m, model.userFactors(), model.itemFactors(), 8, pool)).isLessThan(0.5);
+        int u = 0;
+        int i = m.rowItems()[m.rowStart(u)];
+        assertThat(model.predict(u, i)).isCloseTo(m.get(u, i), within(1.5f));
+    }
+
+    @Test
+    void train_implicit_recommendsAnimeWatchedByTheSameCrowd() {
+        RatingMatrix.Builder b = RatingMatrix.builder();
+        // two groups of users, each watching its own three anime
+        for (int user = 0; user < 20; user++) {
+            int base = user < 10 ? 100 : 200;
+            for (int k = 0; k < 3; k++) {
+                if (user == 0 && k == 2) continue;
+                b.add(user, base + k, 8);
+            }
+        }
+        RatingMatrix m = b.build();
+
+        AlsModel model = AlsTrainer.train(m, new AlsTrainer.Options(4, 10, 0.1f, true, 2f, 5L), pool);
+
+        assertThat(model.recommend(0, 1)).extracting(Recommendation::animeId).containsExactly(102);
+        assertThat(model.recommend(0, 10)).extracting(Recommendation::animeId).doesNotContain(100, 101);
+        assertThat(model.recommend(999, 3)).isEmpty();
+    }
+
+    private static RatingMatrix lowRankMatrix(int users, int items, double density, long seed) {
+        Random rnd = new Random(seed);
+        int rank = 3;
+        double[][] x = new double[users][rank];
+        double[][] y = new double[items][rank];
+        for (double[] row : x) for (int k = 0; k < rank; k++) row[k] = rnd.nextDouble();
+        for (double[] row : y) for (int k = 0; k < rank; k++) row[k] = rnd.nextDouble();
+        RatingMatrix.Builder b = RatingMatrix.builder();
+        for (int u = 0; u < users; u++) {
+            for (int i = 0; i < items; i++) {
+                if (rnd.nextDouble() >= density) continue;
+                double s = 0;
+                for (int k = 0; k < rank; k++) s += x[u][k] * y[i][k];
+                b.add(u, i, (float) (1 + 3 * s));
+            }
+        }
+        return b.build();
+    }
+}
@@ -0,0 +1,110 @@
+package recommendation;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ItemSimilarityTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void topK_matchesBruteForceCosine() {
+        RatingMatrix m = randomMatrix(60, 40, 0.3, 7);
+        for (ItemSimilarity.Measure measure : ItemSimilarity.Measure.values()) {
+            ItemNeighbours nn = ItemSimilarity.topK(m, 5, measure, 2, pool);
+            float[] means = measure == ItemSimilarity.Measure.ADJUSTED_COSINE
+                    ? ItemSimilarity.userMeans(m) : new float[m.users()];
+
+            for (int i = 0; i < m.items(); i++) {
+                double[] expected = new double[m.items()];
+                int better = 0;
+                for (int r = 0; r < nn.count(i); r++) {
+                    int j = nn.neighbour(i, r);
+                    assertThat(j).isNotEqualTo(i);
+                    assertThat((double) nn.similarity(i, r)).isCloseTo(bruteForce(m, means, i, j, 2), within(1e-4));
+                    if (r > 0) assertThat(nn.similarity(i, r)).isLessThanOrEqualTo(nn.similarity(i, r - 1));
+                }
+                // nothing outside the list beats the last neighbour
+                float last = nn.count(i) == 0 ? 0f : nn.similarity(i, nn.count(i) - 1);
+                for (int j = 0; j < m.items(); j++) {
+                    if (j == i) continue;
+                    expected[j] = bruteForce(m, means, i, j, 2);
+                    if (expected[j] > last + 1e-4) better++;
+                }
+                assertThat(better).isLessThan(Math.max(1, nn.count(i)));
+                if (nn.count(i) < 5) {
+                    long positive = java.util.Arrays.stream(expected).filter(s -> s > 1e-6).count();
+                    assertThat((long) nn.count(i)).isEqualTo(positive);
+                }
+            }
+        }
+    }
+
+    @Test
+    void recommender_suggestsNeighboursOfLikedAnime() {
+        // users 1-3 liked anime 100 and 200 together, user 4 only saw 100
+        RatingMatrix m = RatingMatrix.builder()
+                .add(1, 100, 10).add(1, 200, 9).add(1, 300, 2)
+                .add(2, 100, 9).add(2, 200, 10).add(2, 300, 3)
+                .add(3, 100, 10).add(3, 200, 10).add(3, 300, 1)
+                .add(4, 100, 10).add(4, 400, 3)
+                .build();
+        ItemNeighbours nn = ItemSimilarity.topK(m, 3, ItemSimilarity.Measure.COSINE, 1, pool);
+
+        assertThat(nn.similarTo(100)).startsWith(200);
+        assertThat(nn.similarTo(999)).isEmpty();
+
+        ItemKnnRecommender recommender = new ItemKnnRecommender(nn);
+        assertThat(recommender.recommend(4, 1)).extracting(Recommendation::animeId)
+                .containsExactly(200);
+        assertThat(recommender.recommend(4, 10)).extracting(Recommendation::animeId)
+                .doesNotContain(100, 400);
+        assertThat(recommender.recommend(42, 5)).isEmpty();
+    }
+
+    private static double bruteForce(RatingMatrix m, float[] means, int i, int j, int minCommon) {
+        double dot = 0, ni = 0, nj = 0;
+        int common = 0;
+        for (int u = 0; u < m.users(); u++) {
+            float a = m.get(u, i);
+            float b = m.get(u, j);
+            if (!Float.isNaN(a)) ni += (a - means[u]) * (a - means[u]);
+            if (!Float.isNaN(b)) nj += (b - means[u]) * (b - means[u]);
+            if (!Float.isNaN(a) && !Float.isNaN(b)) {
+                dot += (a - means[u]) * (b - means[u]);
+                common++;
+            }
+        }
+        if (common < minCommon || ni == 0 || nj == 0) return 0;
+        double sim = dot / (Math.sqrt(ni) * Math.sqrt(nj));
+        return sim > 0 ? sim : 0;
+    }
+
+    private static RatingMatrix randomMatrix(int users, int items, double density, long seed) {
+        Random rnd = new Random(seed);
+        RatingMatrix.Builder b = RatingMatrix.builder();
+        for (int u = 0; u < users; u++) {
+            for (int i = 0; i < items; i++) {
+                if (rnd.nextDouble() < density) b.add(1000 + u, 50 + i * 3, 1 + rnd.nextInt(10));
+            }
+        }
+        return b.build();
+    }
+}
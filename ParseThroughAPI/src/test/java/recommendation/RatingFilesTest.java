@@ -0,0 +1,96 @@
+package recommendation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.IdAnonymizer;
+import utils.SimpleDataExtract;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RatingFilesTest {
+
+    @TempDir
+    Path tmp;
+
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:files_" + System.nanoTime());
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE eval (user_id INT, anime_id INT, score INT, status VARCHAR(20))");
+            st.execute("INSERT INTO eval VALUES (7, 1, 9, 'completed'), (7, 2, NULL, 'watching'), " +
+                    "(8, 1, 6, 'completed'), (8, 3, 0, 'dropped')");
+            st.execute("CREATE TABLE delta (user_id INT, anime_id INT, score INT, status VARCHAR(20))");
+            st.execute("INSERT INTO delta VALUES (8, 2, 10, 'completed')");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    void read_singleFileWithAnonymizedUsers() throws Exception {
+        Path file = export("eval", tmp.resolve("evaluations.parquet"), Set.of("USER_ID"));
+
+        RatingFiles.Ratings ratings = RatingFiles.read(file);
+
+        RatingMatrix m = ratings.matrix();
+        assertThat(m.nnz()).isEqualTo(2);
+        assertThat(m.users()).isEqualTo(2);
+        assertThat(m.itemIndex(2)).isEqualTo(-1);
+        assertThat(ratings.userKey(0)).isEqualTo(IdAnonymizer.anonymizeId("7"));
+        assertThat(m.get(1, m.itemIndex(1))).isEqualTo(6f);
+    }
+
+    @Test
+    void read_partitionedDirectoryNeedsSuccessMarker() throws Exception {
+        Path dir = Files.createDirectory(tmp.resolve("evaluations"));
+        export("eval", dir.resolve("part-00000.parquet"), Set.of());
+        export("delta", dir.resolve("part-00001.parquet"), Set.of());
+
+        assertThrows(IllegalStateException.class, () -> RatingFiles.read(dir));
+
+        Files.writeString(dir.resolve(RatingFiles.SUCCESS_FILE), "{}");
+        RatingFiles.Ratings ratings = RatingFiles.read(dir);
+        assertThat(ratings.matrix().nnz()).isEqualTo(3);
+        assertThat(ratings.userKey(ratings.matrix().userIndex(8))).isEqualTo("8");
+    }
+
+    @Test
+    void read_incrementalDirectoryTakesEachUserFromItsNewestPart() throws Exception {
+        Path dir = Files.createDirectory(tmp.resolve("evaluations_incremental"));
+        export("eval", dir.resolve("base-00000.parquet"), Set.of());
+        export("delta", dir.resolve("delta-00001.parquet"), Set.of());
+        Files.writeString(dir.resolve(RatingFiles.MANIFEST_FILE),
+                "{\"parts\":[{\"file\":\"base-00000.parquet\"},{\"file\":\"delta-00001.parquet\"}]}");
+
+        RatingMatrix m = RatingFiles.read(dir).matrix();
+
+        int u8 = m.userIndex(8);
+        assertThat(m.rowEnd(u8) - m.rowStart(u8)).isEqualTo(1);
+        assertThat(m.get(u8, m.itemIndex(2))).isEqualTo(10f);
+        assertThat(m.get(m.userIndex(7), m.itemIndex(1))).isEqualTo(9f);
+    }
+
+    private Path export(String table, Path file, Set<String> anonymize) throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT user_id, anime_id, score, status FROM " + table)) {
+            SimpleDataExtract.writeParquet(rs, file.toFile(), anonymize);
+        }
+        return file;
+    }
+}
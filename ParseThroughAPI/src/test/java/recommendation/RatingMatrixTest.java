@@ -0,0 +1,76 @@
+package recommendation;
+
+import org.junit.jupiter.api.Test;
+import utils.SimpleDataExtract;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RatingMatrixTest {
+
+    @Test
+    void build_indexesIdsAndKeepsRowsAndColumnsSorted() {
+        RatingMatrix m = RatingMatrix.builder()
+                .add(30, 500, 7)
+                .add(10, 900, 9)
+                .add(10, 500, 8)
+                .add(20, 900, 6)
+                .build();
+
+        assertThat(m.users()).isEqualTo(3);
+        assertThat(m.items()).isEqualTo(2);
+        assertThat(m.nnz()).isEqualTo(4);
+        assertThat(m.userId(0)).isEqualTo(10);
+        assertThat(m.itemIndex(900)).isEqualTo(1);
+        assertThat(m.itemIndex(501)).isEqualTo(-1);
+
+        int u10 = m.userIndex(10);
+        assertThat(m.rowItems()).startsWith(0, 1);
+        assertThat(m.get(u10, m.itemIndex(500))).isEqualTo(8f);
+        assertThat(m.get(m.userIndex(30), m.itemIndex(900))).isNaN();
+
+        int i900 = m.itemIndex(900);
+        assertThat(m.colEnd(i900) - m.colStart(i900)).isEqualTo(2);
+        assertThat(m.colUsers()[m.colStart(i900)]).isEqualTo(m.userIndex(10));
+        assertThat(m.colUsers()[m.colStart(i900) + 1]).isEqualTo(m.userIndex(20));
+        assertThat(m.colValues()[m.colStart(i900)]).isEqualTo(9f);
+    }
+
+    @Test
+    void build_keepsTheLastScoreOfARepeatedPair() {
+        RatingMatrix m = RatingMatrix.builder()
+                .add(1, 5, 4)
+                .add(1, 6, 6)
+                .add(1, 5, 9)
+                .build();
+
+        assertThat(m.nnz()).isEqualTo(2);
+        assertThat(m.get(0, m.itemIndex(5))).isEqualTo(9f);
+        assertThat(m.colValues()[m.colStart(m.itemIndex(5))]).isEqualTo(9f);
+    }
+
+    @Test
+    void fromDatabase_skipsUnscoredRows() throws Exception {
+        String url = "jdbc:h2:mem:ratings_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE user_anime_stat (user_id INT, anime_id INT, score INT)");
+            st.execute("INSERT INTO user_anime_stat VALUES (1, 10, 8), (1, 11, 0), (2, 10, NULL), (2, 12, 6)");
+
+            Properties props = new Properties();
+            props.setProperty("jdbc.url", url);
+            props.setProperty("jdbc.user", "");
+            props.setProperty("jdbc.password", "");
+            try (SimpleDataExtract extractor = new SimpleDataExtract(props, 100)) {
+                RatingMatrix m = RatingLoader.fromDatabase(extractor);
+
+                assertThat(m.nnz()).isEqualTo(2);
+                assertThat(m.itemIndex(11)).isEqualTo(-1);
+                assertThat(m.get(m.userIndex(2), m.itemIndex(12))).isEqualTo(6f);
+            }
+        }
+    }
+}
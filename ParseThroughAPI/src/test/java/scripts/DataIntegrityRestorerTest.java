@@ -0,0 +1,162 @@
+package scripts;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataIntegrityRestorerTest {
+
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:restore_" + System.nanoTime(), "sa", "");
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE users (mal_id INT PRIMARY KEY, username VARCHAR(50), url VARCHAR(200))");
+            st.execute("CREATE TABLE user_stat (user_id INT PRIMARY KEY, total_entries INT)");
+            st.execute("CREATE TABLE user_anime_stat (user_id INT, anime_id INT, PRIMARY KEY (user_id, anime_id))");
+            for (int user = 1; user <= 12; user++) {
+                st.execute("INSERT INTO users VALUES (" + user + ", 'u" + user + "', 'https://myanimelist.net/u" + user + "')");
+                st.execute("INSERT INTO user_stat VALUES (" + user + ", 10)");
+                for (int anime = 1; anime <= 10; anime++) {
+                    st.execute("INSERT INTO user_anime_stat VALUES (" + user + ", " + anime + ")");
+                }
+            }
+            // 3 of 10 missing -> 30%
+            st.execute("DELETE FROM user_anime_stat WHERE user_id = 4 AND anime_id <= 3");
+            // 8 of 10 missing -> 80%
+            st.execute("DELETE FROM user_anime_stat WHERE user_id = 9 AND anime_id <= 8");
+            // within threshold, but the profile was never filled
+            st.execute("UPDATE users SET url = NULL WHERE mal_id = 2");
+            // no stats row and no list at all
+            st.execute("INSERT INTO users VALUES (13, 'u13', 'https://myanimelist.net/u13')");
+            // reported 0 but rows stored -> 100%
+            st.execute("INSERT INTO users VALUES (14, 'u14', NULL)");
+            st.execute("INSERT INTO user_anime_stat VALUES (14, 1)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    void findMismatches_ranksUsersOverThresholdThenProfileOnly() throws Exception {
+        List<DataIntegrityRestorer.Mismatch> worklist = DataIntegrityRestorer.findMismatches(conn, 5, 0.05);
+
+        assertThat(worklist).extracting(DataIntegrityRestorer.Mismatch::malId).containsExactly(14, 9, 4, 2);
+        DataIntegrityRestorer.Mismatch worst = worklist.get(1);
+        assertThat(worst.username()).isEqualTo("u9");
+        assertThat(worst.nativeCount()).isEqualTo(2);
+        assertThat(worst.reported()).isEqualTo(10);
+        assertThat(worst.diffPercent()).isEqualTo(0.8);
+        assertThat(worklist.get(0).missingProfile()).isTrue();
+        assertThat(worklist.get(3).missingProfile()).isTrue();
+        assertThat(worklist.get(3).diffPercent()).isZero();
+    }
+
+    @Test
+    void findMismatches_withInSyncUsers_appendsStoredListsForRoutineRefresh() throws Exception {
+        List<DataIntegrityRestorer.Mismatch> worklist = DataIntegrityRestorer.findMismatches(conn, 5, 0.05, true);
+
+        // mismatches keep their rank and go to the full fetch; 13 has no list to refresh
+        assertThat(worklist).extracting(DataIntegrityRestorer.Mismatch::malId)
+                .containsExactly(14, 9, 4, 1, 2, 3, 5, 6, 7, 8, 10, 11, 12);
+        assertThat(worklist.get(4).missingProfile()).isTrue();
+        assertThat(worklist.subList(3, worklist.size())).allMatch(m -> m.diffPercent() <= 0.05);
+    }
+
+    @Test
+    void findMismatches_pageSizeDoesNotChangeResult() throws Exception {
+        List<DataIntegrityRestorer.Mismatch> single = DataIntegrityRestorer.findMismatches(conn, 1, 0.05);
+        List<DataIntegrityRestorer.Mismatch> large = DataIntegrityRestorer.findMismatches(conn, 1000, 0.05);
+        List<DataIntegrityRestorer.Mismatch> exactPage = DataIntegrityRestorer.findMismatches(conn, 14, 0.05);
+
+        assertThat(single).isEqualTo(large).isEqualTo(exactPage);
+    }
+
+    @Test
+    void findMismatches_higherThresholdKeepsOnlyLargeDiffs() throws Exception {
+        List<DataIntegrityRestorer.Mismatch> worklist = DataIntegrityRestorer.findMismatches(conn, 5, 0.5);
+
+        assertThat(worklist).extracting(DataIntegrityRestorer.Mismatch::malId).containsExactly(14, 9, 2);
+    }
+
+    @Test
+    void computeDiffPercent_handlesZeroReported() {
+        assertThat(DataIntegrityRestorer.computeDiffPercent(0, 0)).isZero();
+        assertThat(DataIntegrityRestorer.computeDiffPercent(3, 0)).isEqualTo(1.0);
+        assertThat(DataIntegrityRestorer.computeDiffPercent(9, 10)).isEqualTo(0.1, org.assertj.core.data.Offset.offset(1e-9));
+    }
+
+    @Test
+    void processWorklist_serial_keepsRankOrderAndCountsFailures() {
+        List<DataIntegrityRestorer.Mismatch> worklist = worklist(5);
+        List<Integer> seen = new ArrayList<>();
+
+        RestoreProgress progress = DataIntegrityRestorer.processWorklist(worklist, 1, m -> {
+            seen.add(m.malId());
+            if (m.malId() == 2) throw new IllegalStateException("boom");
+            return m.malId() != 4;
+        });
+
+        assertThat(seen).containsExactly(0, 1, 2, 3, 4);
+        assertThat(progress.done()).isEqualTo(5);
+        assertThat(progress.failed()).isEqualTo(2);
+    }
+
+    @Test
+    void processWorklist_parallel_processesEveryUserOnceOnSeveralThreads() {
+        List<DataIntegrityRestorer.Mismatch> worklist = worklist(40);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch overlap = new CountDownLatch(3);
+
+        RestoreProgress progress = DataIntegrityRestorer.processWorklist(worklist, 3, m -> {
+            threads.add(Thread.currentThread().getName());
+            overlap.countDown();
+            try {
+                overlap.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return seen.add(m.malId());
+        });
+
+        assertThat(seen).hasSize(40);
+        assertThat(threads).hasSize(3);
+        assertThat(progress.done()).isEqualTo(40);
+        assertThat(progress.failed()).isZero();
+    }
+
+    @Test
+    void restoreProgress_reportsThroughputAndEta() {
+        RestoreProgress progress = new RestoreProgress(10, 0L);
+        for (int i = 0; i < 4; i++) progress.record(i != 0);
+
+        long twoMinutes = TimeUnit.MINUTES.toNanos(2);
+        assertThat(progress.perMinute(twoMinutes)).isEqualTo(2.0);
+        assertThat(progress.summary(twoMinutes))
+                .isEqualTo("4/10 users (40.0%), failed 1, 2.0 users/min, ETA 3.0 min");
+    }
+
+    private static List<DataIntegrityRestorer.Mismatch> worklist(int n) {
+        return IntStream.range(0, n)
+                .mapToObj(i -> new DataIntegrityRestorer.Mismatch(i, "u" + i, 0, 10, 1.0, false))
+                .toList();
+    }
+}
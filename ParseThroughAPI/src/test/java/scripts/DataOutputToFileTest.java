@@ -0,0 +1,267 @@
+package scripts;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mapper.UserAnimeStatBulkWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataOutputToFileTest {
+
+    @TempDir
+    File tmp;
+
+    private String url;
+    private Connection keepAlive;
+    private DataOutputToFile export;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = "jdbc:h2:mem:export_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("CREATE TABLE user_stat (user_id INT PRIMARY KEY, completed INT, total_entries INT, mean_score DOUBLE)");
+            st.execute("CREATE TABLE user_anime_stat (user_id INT, anime_id INT, score INT, status VARCHAR(20), " +
+                    "last_updated TIMESTAMP, PRIMARY KEY (user_id, anime_id))");
+            st.execute("CREATE TABLE users (mal_id INT PRIMARY KEY, updated_at TIMESTAMP)");
+            for (int user = 1; user <= 40; user++) {
+                st.execute("INSERT INTO users VALUES (" + user + ", TIMESTAMP '2024-01-01 00:00:00')");
+                st.execute("INSERT INTO user_stat VALUES (" + user + ", 5, 5, 7.0)");
+                for (int anime = 1; anime <= 3; anime++) {
+                    st.execute("INSERT INTO user_anime_stat VALUES (" + user + ", " + anime +
+                            ", 7, 'completed', TIMESTAMP '2024-01-01 00:00:00')");
+                }
+            }
+            // filtered out by the default mean_score filter
+            st.execute("UPDATE user_stat SET mean_score = 10 WHERE user_id = 13");
+        }
+        Properties props = new Properties();
+        props.setProperty("jdbc.url", url);
+        props.setProperty("jdbc.user", "sa");
+        props.setProperty("jdbc.password", "");
+        export = new DataOutputToFile(0, 0, 0, props);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        export.close();
+        keepAlive.close();
+    }
+
+    @Test
+    void splitRange_coversEveryIdWithoutOverlap() {
+        List<long[]> ranges = DataOutputToFile.splitRange(5, 104, 3);
+
+        assertThat(ranges).hasSize(3);
+        assertThat(ranges.get(0)).containsExactly(5, 39);
+        assertThat(ranges.get(1)).containsExactly(39, 73);
+        assertThat(ranges.get(2)).containsExactly(73, 105);
+        assertThat(DataOutputToFile.splitRange(7, 8, 10)).hasSize(2);
+        assertThat(DataOutputToFile.splitRange(1, 0, 4)).isEmpty();
+    }
+
+    @Test
+    void saveEvaluationsPartitioned_writesPartsAndManifest() throws Exception {
+        export.setPartitions(4);
+        export.setExportThreads(2);
+        File dir = new File(tmp, "evaluations");
+
+        export.saveEvaluationsPartitioned(dir);
+
+        JsonNode manifest = new ObjectMapper().readTree(new File(dir, DataOutputToFile.SUCCESS_FILE));
+        assertThat(manifest.get("total_rows").asLong()).isEqualTo(39 * 3);
+        assertThat(manifest.get("parts").size()).isEqualTo(4);
+
+        long rows = 0;
+        Set<String> users = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            File part = new File(dir, DataOutputToFile.partFileName(i));
+            try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(
+                    HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(part.getAbsolutePath()), new Configuration())).build()) {
+                for (GenericRecord r = reader.read(); r != null; r = reader.read()) {
+                    rows++;
+                    users.add(r.get("USER_ID").toString());
+                }
+            }
+            assertThat(manifest.get("parts").get(part.getName()).asLong()).isPositive();
+        }
+        assertThat(rows).isEqualTo(39 * 3);
+        assertThat(users).hasSize(39).doesNotContain("13");
+    }
+
+    @Test
+    void saveEvaluationsPartitioned_replacesOnlyItsOwnOutput() throws Exception {
+        export.setPartitions(2);
+        File dir = new File(tmp, "evaluations");
+        File stalePart = new File(dir, DataOutputToFile.partFileName(7));
+        File notes = new File(dir, "notes.txt");
+        File nested = new File(dir, "nested");
+        Files.createDirectories(nested.toPath());
+        Files.writeString(stalePart.toPath(), "stale");
+        Files.writeString(notes.toPath(), "keep me");
+        Files.writeString(new File(nested, "data.parquet").toPath(), "keep me");
+
+        export.saveEvaluationsPartitioned(dir);
+
+        assertThat(stalePart).doesNotExist();
+        assertThat(new File(dir, DataOutputToFile.partFileName(1))).exists();
+        assertThat(notes).hasContent("keep me");
+        assertThat(new File(nested, "data.parquet")).exists();
+    }
+
+    @Test
+    void saveEvaluationsIncremental_writesBaseThenOnlyTouchedUsers() throws Exception {
+        File dir = new File(tmp, "evaluations_incremental");
+
+        export.saveEvaluationsIncremental(dir);
+        try (Statement st = keepAlive.createStatement()) {
+            // a list write stamps the user along with the rows
+            st.execute("UPDATE user_anime_stat SET score = 9, last_updated = TIMESTAMP '2024-02-01 00:00:00' " +
+                    "WHERE user_id = 5 AND anime_id = 2");
+            st.execute("UPDATE users SET updated_at = TIMESTAMP '2024-02-01 00:00:00' WHERE mal_id = 5");
+            // an entry time change alone is not a write of ours
+            st.execute("UPDATE user_anime_stat SET last_updated = TIMESTAMP '2024-03-01 00:00:00' " +
+                    "WHERE user_id = 6 AND anime_id = 1");
+            st.execute("UPDATE users SET updated_at = TIMESTAMP '2024-02-02 00:00:00' WHERE mal_id = 7");
+        }
+        export.saveEvaluationsIncremental(dir);
+        export.saveEvaluationsIncremental(dir);
+
+        JsonNode manifest = new ObjectMapper().readTree(new File(dir, DataOutputToFile.MANIFEST_FILE));
+        JsonNode parts = manifest.get("parts");
+        assertThat(parts.size()).isEqualTo(2);
+        assertThat(parts.get(0).get("kind").asText()).isEqualTo("base");
+        assertThat(parts.get(0).get("rows").asLong()).isEqualTo(39 * 3);
+        assertThat(parts.get(1).get("file").asText()).isEqualTo("delta-00001.parquet");
+        // every row of users 5 and 7
+        assertThat(parts.get(1).get("rows").asLong()).isEqualTo(6);
+        assertThat(parts.get(1).get("users").asLong()).isEqualTo(2);
+        assertThat(readUsers(new File(dir, parts.get(1).get("users_file").asText()))).containsExactlyInAnyOrder("5", "7");
+        assertThat(manifest.get("users_updated_watermark").asText())
+                .isEqualTo(java.sql.Timestamp.valueOf("2024-02-02 00:00:00").toInstant().toString());
+        assertThat(manifest.has("last_updated_watermark")).isFalse();
+        assertThat(new File(dir, "delta-00002.parquet")).doesNotExist();
+        assertThat(new File(dir, "delta-00002.users.parquet")).doesNotExist();
+    }
+
+    @Test
+    void saveEvaluationsIncremental_listsTouchedUsersThatLeftTheExport() throws Exception {
+        File dir = new File(tmp, "evaluations_incremental");
+        export.saveEvaluationsIncremental(dir);
+
+        try (Statement st = keepAlive.createStatement()) {
+            // no longer passes the mean_score filter
+            st.execute("UPDATE user_stat SET mean_score = 10 WHERE user_id = 8");
+            // the whole list was deleted on resync
+            st.execute("DELETE FROM user_anime_stat WHERE user_id = 11");
+            st.execute("UPDATE users SET updated_at = TIMESTAMP '2024-02-01 00:00:00' WHERE mal_id IN (8, 11)");
+        }
+        export.saveEvaluationsIncremental(dir);
+
+        JsonNode parts = new ObjectMapper().readTree(new File(dir, DataOutputToFile.MANIFEST_FILE)).get("parts");
+        assertThat(parts.size()).isEqualTo(2);
+        JsonNode delta = parts.get(1);
+        assertThat(delta.get("rows").asLong()).isZero();
+        assertThat(delta.get("users").asLong()).isEqualTo(2);
+        assertThat(delta.get("users_file").asText()).isEqualTo("delta-00001.users.parquet");
+        assertThat(readUsers(new File(dir, delta.get("users_file").asText()))).containsExactlyInAnyOrder("8", "11");
+        assertThat(readUsers(new File(dir, delta.get("file").asText()))).isEmpty();
+        assertThat(parts.get(0).has("users_file")).isFalse();
+    }
+
+    @Test
+    void saveEvaluationsIncremental_exportsListWrittenAfterTheMarkWithOlderEntryTimes() throws Exception {
+        File dir = new File(tmp, "evaluations_incremental");
+        export.saveEvaluationsIncremental(dir);
+
+        // a list crawled after the export whose MAL entry times predate every watermark
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("INSERT INTO user_anime_stat VALUES (9, 4, 8, 'completed', TIMESTAMP '2019-05-01 00:00:00')");
+        }
+        UserAnimeStatBulkWriter.touchUser(keepAlive, 9);
+        export.saveEvaluationsIncremental(dir);
+
+        JsonNode parts = new ObjectMapper().readTree(new File(dir, DataOutputToFile.MANIFEST_FILE)).get("parts");
+        assertThat(parts.size()).isEqualTo(2);
+        assertThat(readUsers(new File(dir, parts.get(1).get("file").asText()))).containsOnly("9").hasSize(4);
+
+        // the mark stays an overlap behind the DB clock, so a commit racing the export is read again
+        export.saveEvaluationsIncremental(dir);
+        parts = new ObjectMapper().readTree(new File(dir, DataOutputToFile.MANIFEST_FILE)).get("parts");
+        assertThat(parts.size()).isEqualTo(3);
+        assertThat(parts.get(2).get("rows").asLong()).isEqualTo(4);
+    }
+
+    private static List<String> readUsers(File part) throws Exception {
+        List<String> users = new java.util.ArrayList<>();
+        try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(
+                HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(part.getAbsolutePath()), new Configuration())).build()) {
+            for (GenericRecord r = reader.read(); r != null; r = reader.read()) users.add(r.get("USER_ID").toString());
+        }
+        return users;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void saveAnimes_writesAssociationsAsListColumns() throws Exception {
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("CREATE TABLE anime (mal_id INT PRIMARY KEY, title VARCHAR(100), approved BOOLEAN)");
+            st.execute("CREATE TABLE genre (mal_id INT PRIMARY KEY, name VARCHAR(50))");
+            st.execute("CREATE TABLE demographic (mal_id INT PRIMARY KEY, name VARCHAR(50))");
+            st.execute("CREATE TABLE producer (mal_id INT PRIMARY KEY, name VARCHAR(50))");
+            st.execute("CREATE TABLE anime_genre (anime_id INT, genre_id INT)");
+            st.execute("CREATE TABLE anime_theme (anime_id INT, genre_id INT)");
+            st.execute("CREATE TABLE anime_demographic (anime_id INT, demographic_id INT)");
+            st.execute("CREATE TABLE anime_studio (anime_id INT, producer_id INT)");
+            st.execute("INSERT INTO anime VALUES (1, 'Cowboy Bebop', TRUE), (2, 'Unnamed', TRUE), (3, 'Hidden', FALSE)");
+            st.execute("INSERT INTO genre VALUES (1, 'Action'), (24, 'Sci-Fi'), (50, 'Space')");
+            st.execute("INSERT INTO producer VALUES (14, 'Sunrise')");
+            // the duplicate row must not duplicate the genre
+            st.execute("INSERT INTO anime_genre VALUES (1, 24), (1, 1), (1, 24), (3, 1)");
+            st.execute("INSERT INTO anime_theme VALUES (1, 50)");
+            st.execute("INSERT INTO anime_studio VALUES (1, 14)");
+        }
+        export.setAnimeColumns(List.of("mal_id", "title"));
+        File out = new File(tmp, "anime.parquet");
+
+        export.saveAnimes(out);
+
+        Configuration conf = new Configuration();
+        // read the standard 3-level LIST as plain Avro arrays
+        conf.setBoolean("parquet.avro.add-list-element-records", false);
+        List<GenericRecord> rows = new java.util.ArrayList<>();
+        try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(
+                HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(out.getAbsolutePath()), conf)).build()) {
+            for (GenericRecord r = reader.read(); r != null; r = reader.read()) rows.add(r);
+        }
+        rows.sort(java.util.Comparator.comparingInt(r -> (Integer) r.get("MAL_ID")));
+
+        assertThat(rows).hasSize(2);
+        GenericRecord bebop = rows.get(0);
+        assertThat((List<Object>) bebop.get("GENRE_IDS")).containsExactly(1, 24);
+        assertThat(((List<Object>) bebop.get("GENRES")).stream().map(Object::toString)).containsExactly("Action", "Sci-Fi");
+        assertThat((List<Object>) bebop.get("THEME_IDS")).containsExactly(50);
+        assertThat(((List<Object>) bebop.get("STUDIOS")).stream().map(Object::toString)).containsExactly("Sunrise");
+        assertThat(bebop.get("DEMOGRAPHIC_IDS")).isNull();
+        assertThat(rows.get(1).get("GENRE_IDS")).isNull();
+    }
+}
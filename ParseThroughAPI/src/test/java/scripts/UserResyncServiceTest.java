@@ -0,0 +1,151 @@
+package scripts;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.Query;
+import mapper.UserAnimeStatBulkWriter;
+import mapper.UserListState;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import user_parsing.CategoryStats;
+import user_parsing.StatsData;
+import user_parsing.UserAnimeEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UserResyncServiceTest {
+
+    private static final long WATERMARK = 1_600_000_000L;
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private EntityTransaction tx;
+    private UserResyncService.ListSource mal;
+    private MockedStatic<UserListState> state;
+    private MockedStatic<UserAnimeStatBulkWriter> writer;
+    private UserResyncService service;
+
+    @BeforeEach
+    void setUp() {
+        emf = mock(EntityManagerFactory.class);
+        em = mock(EntityManager.class);
+        tx = mock(EntityTransaction.class);
+        when(emf.createEntityManager()).thenReturn(em);
+        when(em.getTransaction()).thenReturn(tx);
+        mal = mock(UserResyncService.ListSource.class);
+        state = mockStatic(UserListState.class);
+        writer = mockStatic(UserAnimeStatBulkWriter.class);
+        service = new UserResyncService(emf, mal, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        state.close();
+        writer.close();
+    }
+
+    @Test
+    void refreshUserIncremental_unchangedList_doesNotStampUser() throws Exception {
+        state.when(() -> UserListState.read(emf, 5)).thenReturn(new UserListState(3, WATERMARK));
+        // the newest stored entry comes back, since the fetch keeps entries at the watermark
+        when(mal.listSince(eq("alice"), eq(WATERMARK), any())).thenAnswer(inv -> {
+            inv.<Consumer<List<UserAnimeEntry>>>getArgument(2).accept(List.of(entry(1)));
+            return true;
+        });
+        // the database finds the row identical and reports nothing written
+        writer.when(() -> UserAnimeStatBulkWriter.upsert(eq(em), eq(5), anyCollection())).thenReturn(0);
+
+        boolean ok = service.refreshUserIncremental("alice", 5, 3, 0.05, 1, 0);
+
+        assertThat(ok).isTrue();
+        verify(tx).commit();
+        verify(em, never()).createNativeQuery(anyString());
+        verify(em, never()).unwrap(Session.class);
+        writer.verify(() -> UserAnimeStatBulkWriter.touchUser(any(), anyInt()), never());
+        verify(mal, never()).list(anyString(), any());
+    }
+
+    @Test
+    void refreshUserIncremental_nothingNewer_skipsTheTransaction() throws Exception {
+        state.when(() -> UserListState.read(emf, 5)).thenReturn(new UserListState(3, WATERMARK));
+        when(mal.listSince(eq("alice"), eq(WATERMARK), any())).thenReturn(true);
+
+        boolean ok = service.refreshUserIncremental("alice", 5, 3, 0.05, 1, 0);
+
+        assertThat(ok).isTrue();
+        verifyNoInteractions(tx);
+        writer.verifyNoInteractions();
+    }
+
+    @Test
+    void resync_downloadMatchingTheReportedTotal_deletesEntriesGoneFromTheList() throws Exception {
+        Session session = mock(Session.class);
+        when(em.unwrap(Session.class)).thenReturn(session);
+        Query stored = storedAnime(em, 1, 2, 3, 4);
+        Query delete = mock(Query.class, RETURNS_SELF);
+        when(delete.executeUpdate()).thenReturn(1);
+        when(em.createNativeQuery(startsWith("DELETE FROM user_anime_stat"))).thenReturn(delete);
+        listOf("alice", 3, 3);
+
+        boolean ok = service.resyncUserUpsertFetchWithRetries("alice", 5, 0.05, 1, 0);
+
+        assertThat(ok).isTrue();
+        verify(delete).setParameter("ids", List.of(4));
+        verify(stored).getResultList();
+        // the deletion stamps the user for the incremental export
+        verify(session).doWork(any());
+        verify(tx).commit();
+    }
+
+    @Test
+    void resync_shortDownload_upsertsWithoutDeleting() throws Exception {
+        // 3 of 10 passes the 25% abort but is no proof the other 7 were removed
+        listOf("alice", 10, 3);
+
+        boolean ok = service.resyncUserUpsertFetchWithRetries("alice", 5, 0.05, 1, 0);
+
+        assertThat(ok).isTrue();
+        writer.verify(() -> UserAnimeStatBulkWriter.upsert(eq(em), eq(5), argThat(c -> c.size() == 3)));
+        verify(em, never()).createNativeQuery(anyString());
+        verify(tx).commit();
+    }
+
+    private void listOf(String username, int reported, int downloaded) throws Exception {
+        StatsData stats = new StatsData();
+        stats.anime = new CategoryStats();
+        stats.anime.totalEntries = reported;
+        when(mal.stats(username)).thenReturn(stats);
+        List<UserAnimeEntry> page = new ArrayList<>();
+        for (int id = 1; id <= downloaded; id++) page.add(entry(id));
+        when(mal.list(eq(username), any())).thenAnswer(inv -> {
+            inv.<Consumer<List<UserAnimeEntry>>>getArgument(1).accept(page);
+            return true;
+        });
+    }
+
+    private static Query storedAnime(EntityManager em, Integer... animeIds) {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(query.getResultList()).thenReturn(List.of((Object[]) animeIds));
+        when(em.createNativeQuery(startsWith("SELECT anime_id FROM user_anime_stat"))).thenReturn(query);
+        return query;
+    }
+
+    private static UserAnimeEntry entry(int animeId) {
+        UserAnimeEntry e = new UserAnimeEntry();
+        e.animeId = animeId;
+        e.score = 7;
+        e.status = 2;
+        e.updatedAt = WATERMARK;
+        return e;
+    }
+}
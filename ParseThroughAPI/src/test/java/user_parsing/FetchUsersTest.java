@@ -0,0 +1,179 @@
+package user_parsing;
+
+import exeptions.HttpRequestException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.ResponseArchive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FetchUsersTest {
+
+    private static MockWebServer server;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        String base = server.url("/v4").toString().replaceAll("/$", "");
+        // FetchUsers reads its base url once, so this must happen before the class is initialised
+        System.setProperty("jikan.base", base);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        server.shutdown();
+        System.clearProperty("jikan.base");
+    }
+
+    @Test
+    void fetchRandomUser_decodesGzippedDataNode() throws Exception {
+        String json = "{\"data\":{\"mal_id\":42,\"username\":\"alice\",\"joined\":\"2020-01-01T00:00:00+00:00\"}}";
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(gzip(json)));
+
+        UserLite user = FetchUsers.fetchRandomUser();
+
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/v4/random/users");
+        assertThat(request.getHeader("Accept-Encoding")).isEqualTo("gzip");
+        assertThat(user.malId).isEqualTo(42);
+        assertThat(user.username).isEqualTo("alice");
+    }
+
+    @Test
+    void fetchUserStats_readsNestedAnimeStats() throws Exception {
+        String json = "{\"data\":{\"anime\":{\"total_entries\":120,\"completed\":80,\"mean_score\":7.5}}}";
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(json));
+
+        StatsData stats = FetchUsers.fetchUserStats("alice");
+
+        assertThat(server.takeRequest().getPath()).isEqualTo("/v4/users/alice/statistics");
+        assertThat(stats.anime.totalEntries).isEqualTo(120);
+        assertThat(stats.anime.completed).isEqualTo(80);
+        assertThat(stats.anime.meanScore).isEqualTo(7.5);
+    }
+
+    @Test
+    void fetchUserByUsername_throwsOnNon200() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("{\"status\":404}"));
+
+        assertThrows(HttpRequestException.class, () -> FetchUsers.fetchUserByUsername("ghost"));
+        server.takeRequest();
+    }
+
+    @Test
+    void fetchUserByUsername_throwsOnHtmlBody() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("<html><body>maintenance</body></html>"));
+
+        assertThrows(HttpRequestException.class, () -> FetchUsers.fetchUserByUsername("bob"));
+        server.takeRequest();
+    }
+
+    @Test
+    void fetchUserStats_replaysRecordedResponse(@TempDir Path archiveDir) throws Exception {
+        String json = "{\"data\":{\"anime\":{\"total_entries\":7,\"completed\":3,\"mean_score\":8.0}}}";
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(json));
+        int before = server.getRequestCount();
+        try {
+            ResponseArchive.setDefault(new ResponseArchive(archiveDir, ResponseArchive.Mode.RECORD));
+            FetchUsers.fetchUserStats("carol");
+            server.takeRequest();
+
+            ResponseArchive.setDefault(new ResponseArchive(archiveDir, ResponseArchive.Mode.REPLAY));
+            StatsData replayed = FetchUsers.fetchUserStats("carol");
+
+            assertThat(server.getRequestCount()).isEqualTo(before + 1);
+            assertThat(replayed.anime.totalEntries).isEqualTo(7);
+            assertThrows(IOException.class, () -> FetchUsers.fetchUserStats("dave"));
+        } finally {
+            ResponseArchive.setDefault(null);
+        }
+    }
+
+    @Test
+    void fetchUserStats_emitsHttpFetchFlightEvent(@TempDir Path tmp) throws Exception {
+        String json = "{\"data\":{\"anime\":{\"total_entries\":1,\"completed\":1,\"mean_score\":6.0}}}";
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(json));
+        Path file = tmp.resolve("fetch.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("ParseThroughAPI.HttpFetch");
+            recording.start();
+            FetchUsers.fetchUserStats("erin");
+            recording.stop();
+            recording.dump(file);
+        }
+        server.takeRequest();
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("url")).endsWith("/users/erin/statistics");
+        assertThat(event.getString("host")).isEqualTo(server.getHostName());
+        assertThat(event.getInt("status")).isEqualTo(200);
+        assertThat(event.getLong("bytes")).isEqualTo(json.length());
+        assertThat(event.getBoolean("replayed")).isFalse();
+    }
+
+    @Test
+    void changedSince_passesNewerEntriesAndStopsAtFirstOlderOne() {
+        List<List<UserAnimeEntry>> handled = new ArrayList<>();
+        Predicate<List<UserAnimeEntry>> handler = FetchUsers.changedSince(1_000L, handled::add);
+
+        boolean more = handler.test(List.of(entry(1, 1_200L), entry(2, 1_000L), entry(3, 999L), entry(4, 1_500L)));
+
+        assertThat(more).isFalse();
+        assertThat(handled).hasSize(1);
+        assertThat(handled.get(0)).extracting(e -> e.animeId).containsExactly(1, 2);
+    }
+
+    @Test
+    void changedSince_keepsPagingWhileWholePageChanged() {
+        List<List<UserAnimeEntry>> handled = new ArrayList<>();
+        Predicate<List<UserAnimeEntry>> handler = FetchUsers.changedSince(1_000L, handled::add);
+        UserAnimeEntry noTimestamps = entry(3, null);
+
+        assertThat(handler.test(List.of(entry(1, 2_000L), entry(2, 1_100L), noTimestamps))).isTrue();
+        assertThat(handler.test(List.of(entry(5, 10L)))).isFalse();
+        assertThat(handled).hasSize(1);
+        assertThat(handled.get(0)).hasSize(3);
+    }
+
+    private static UserAnimeEntry entry(int animeId, Long updatedAt) {
+        UserAnimeEntry e = new UserAnimeEntry();
+        e.animeId = animeId;
+        e.updatedAt = updatedAt;
+        return e;
+    }
+
+    private static Buffer gzip(String body) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+            gz.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return new Buffer().write(bytes.toByteArray());
+    }
+}
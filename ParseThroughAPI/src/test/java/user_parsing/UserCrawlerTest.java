@@ -0,0 +1,116 @@
+package user_parsing;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserCrawlerTest {
+
+    @Test
+    void crawl_stopsOnceTargetSuccessesReached() {
+        AtomicInteger calls = new AtomicInteger();
+        UserCrawler crawler = new UserCrawler(() -> calls.incrementAndGet() % 2 == 0,
+                4, Duration.ofSeconds(5), Duration.ofSeconds(5));
+
+        int done = crawler.crawl(10);
+
+        assertThat(done).isEqualTo(10);
+        assertThat(calls.get()).isGreaterThanOrEqualTo(20);
+    }
+
+    @Test
+    void crawl_neverRunsMoreThanMaxInFlight() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        UserCrawler crawler = new UserCrawler(() -> {
+            int now = active.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            Thread.sleep(10);
+            active.decrementAndGet();
+            return true;
+        }, 3, Duration.ofSeconds(5), Duration.ofSeconds(5));
+
+        crawler.crawl(20);
+
+        assertThat(peak.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void crawl_interruptsPipelinesPastDeadline() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        UserCrawler crawler = new UserCrawler(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException ie) {
+                    interrupted.incrementAndGet();
+                    throw ie;
+                }
+            }
+            return true;
+        }, 1, Duration.ofMillis(100), Duration.ofSeconds(5));
+
+        long start = System.nanoTime();
+        int done = crawler.crawl(2);
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertThat(done).isEqualTo(2);
+        assertThat(interrupted.get()).isEqualTo(1);
+        assertThat(elapsedMs).isLessThan(5_000);
+    }
+
+    @Test
+    void crawl_countsExpiredPipelineTowardTheTarget() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger saved = new AtomicInteger();
+        UserCrawler crawler = new UserCrawler(() -> {
+            if (calls.incrementAndGet() == 1) {
+                // ignores the interrupt and saves its user anyway
+                long until = System.nanoTime() + Duration.ofMillis(400).toNanos();
+                while (System.nanoTime() < until) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+            saved.incrementAndGet();
+            return true;
+        }, 1, Duration.ofMillis(100), Duration.ofSeconds(5));
+
+        int done = crawler.crawl(2);
+
+        assertThat(done).isEqualTo(2);
+        assertThat(saved.get()).isEqualTo(2);
+    }
+
+    @Test
+    void crawl_backsOffAfterConsecutiveFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        long[] startedAt = new long[UserCrawler.FAILURE_BACKOFF_AFTER + 1];
+        UserCrawler crawler = new UserCrawler(() -> {
+            int call = calls.incrementAndGet();
+            if (call <= startedAt.length) startedAt[call - 1] = System.nanoTime();
+            if (call <= UserCrawler.FAILURE_BACKOFF_AFTER) throw new java.io.IOException("HTTP 503");
+            return true;
+        }, 1, Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofMillis(300));
+
+        int done = crawler.crawl(1);
+
+        assertThat(done).isEqualTo(1);
+        int last = UserCrawler.FAILURE_BACKOFF_AFTER;
+        assertThat(Duration.ofNanos(startedAt[last] - startedAt[last - 1]).toMillis()).isGreaterThanOrEqualTo(250);
+        assertThat(Duration.ofNanos(startedAt[1] - startedAt[0]).toMillis()).isLessThan(250);
+    }
+
+    @Test
+    void rejectsNonPositiveMaxInFlight() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new UserCrawler(() -> true, 0, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,120 @@
+package user_parsing;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+class UserListWriterTest {
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private EntityTransaction tx;
+    private UserListWriter writer;
+    private AtomicInteger written;
+    private UserListWriter.PageSink sink;
+
+    @BeforeEach
+    void setUp() {
+        emf = mock(EntityManagerFactory.class);
+        em = mock(EntityManager.class);
+        tx = mock(EntityTransaction.class);
+        when(emf.createEntityManager()).thenReturn(em);
+        when(em.getTransaction()).thenReturn(tx);
+        written = new AtomicInteger();
+        sink = (em, userId, entries) -> written.addAndGet(entries.size());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) writer.close();
+    }
+
+    @Test
+    void submit_writesPageAndCompletesWithEntryCount() throws Exception {
+        writer = new UserListWriter(emf, sink, 4, 1, 1_000).start();
+
+        CompletableFuture<Integer> done = writer.submit(7, "alice", List.of(entry(1), entry(2), entry(3)));
+
+        assertThat(done.get(5, TimeUnit.SECONDS)).isEqualTo(3);
+        verify(tx).begin();
+        verify(tx).commit();
+        assertThat(written.get()).isEqualTo(3);
+        verify(em).close();
+    }
+
+    @Test
+    void submit_emptyPageCompletesImmediately() throws Exception {
+        writer = new UserListWriter(emf, sink, 4, 1, 1_000).start();
+
+        CompletableFuture<Integer> done = writer.submit(7, "alice", List.of());
+
+        assertThat(done.get(1, TimeUnit.SECONDS)).isZero();
+        verifyNoInteractions(emf);
+    }
+
+    @Test
+    void failedGroup_fallsBackToPerPageTransactions() throws Exception {
+        AtomicInteger commits = new AtomicInteger();
+        doAnswer(inv -> {
+            if (commits.incrementAndGet() == 1) throw new RuntimeException("boom");
+            return null;
+        }).when(tx).commit();
+        when(tx.isActive()).thenReturn(true);
+
+        // no writer threads: both pages are queued first, then drained as one group
+        writer = new UserListWriter(emf, sink, 4, 0, 1_000);
+        CompletableFuture<Integer> a = writer.submit(1, "a", List.of(entry(1)));
+        CompletableFuture<Integer> b = writer.submit(2, "b", List.of(entry(2)));
+
+        assertThat(writer.drainOnce(0)).isTrue();
+
+        assertThat(a.get(1, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(b.get(1, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(commits.get()).isEqualTo(3);
+        verify(tx).rollback();
+    }
+
+    @Test
+    void close_drainsPagesQueuedByRunningWriters() throws Exception {
+        writer = new UserListWriter(emf, sink, 4, 1, 1_000).start();
+        CompletableFuture<Integer> done = writer.submit(7, "alice", List.of(entry(1), entry(2)));
+
+        writer.close();
+
+        assertThat(done.get(1, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(written.get()).isEqualTo(2);
+    }
+
+    @Test
+    void close_failsPagesThatWereNeverWritten() throws Exception {
+        writer = new UserListWriter(emf, sink, 4, 0, 1_000);
+        CompletableFuture<Integer> pending = writer.submit(1, "a", List.of(entry(1)));
+
+        writer.close();
+
+        assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> writer.submit(1, "a", List.of(entry(2))));
+    }
+
+    private static UserAnimeEntry entry(int animeId) {
+        UserAnimeEntry e = new UserAnimeEntry();
+        e.animeId = animeId;
+        e.score = 7;
+        e.status = 2;
+        e.updatedAt = 1_700_000_000L;
+        return e;
+    }
+}
@@ -0,0 +1,171 @@
+package utils;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ColumnWriterPlanTest {
+
+    private static final String QUERY =
+            "SELECT user_id, anime_id, score, rating, completed, status, last_updated FROM eval ORDER BY anime_id";
+
+    @TempDir
+    File tmp;
+
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:h2:mem:plan_" + System.nanoTime());
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE eval (user_id INT, anime_id BIGINT, score INT, rating NUMERIC(4,2), " +
+                    "completed BOOLEAN, status VARCHAR(20), last_updated TIMESTAMP)");
+            st.execute("INSERT INTO eval VALUES (7, 1, 9, 8.25, TRUE, 'completed', TIMESTAMP '2024-01-02 03:04:05')");
+            st.execute("INSERT INTO eval VALUES (7, 2, NULL, NULL, NULL, NULL, NULL)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    void fromMetaData_mapsSqlTypesToOptionalParquetColumns() throws Exception {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(QUERY)) {
+            MessageType schema = ColumnWriterPlan.fromMetaData(rs.getMetaData(), Set.of("USER_ID")).schema();
+
+            assertThat(schema.getFieldCount()).isEqualTo(7);
+            assertThat(schema.getType("USER_ID").asPrimitiveType().getPrimitiveTypeName()).isEqualTo(PrimitiveTypeName.BINARY);
+            assertThat(schema.getType("ANIME_ID").asPrimitiveType().getPrimitiveTypeName()).isEqualTo(PrimitiveTypeName.INT64);
+            assertThat(schema.getType("SCORE").asPrimitiveType().getPrimitiveTypeName()).isEqualTo(PrimitiveTypeName.INT32);
+            assertThat(schema.getType("RATING").asPrimitiveType().getPrimitiveTypeName()).isEqualTo(PrimitiveTypeName.DOUBLE);
+            assertThat(schema.getType("COMPLETED").asPrimitiveType().getPrimitiveTypeName()).isEqualTo(PrimitiveTypeName.BOOLEAN);
+            assertThat(schema.getFields()).allMatch(f -> f.isRepetition(org.apache.parquet.schema.Type.Repetition.OPTIONAL));
+        }
+    }
+
+    @Test
+    void write_skipsNullCells() throws Exception {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(QUERY)) {
+            ColumnWriterPlan plan = ColumnWriterPlan.fromMetaData(rs.getMetaData(), null);
+            RecordConsumer rc = mock(RecordConsumer.class);
+            rs.next();
+            rs.next();
+
+            plan.write(rs, rc);
+
+            verify(rc).startMessage();
+            verify(rc).startField("USER_ID", 0);
+            verify(rc).startField("ANIME_ID", 1);
+            verify(rc, times(2)).startField(anyString(), anyInt());
+            verify(rc).endMessage();
+        }
+    }
+
+    @Test
+    void write_blankStringsAreNullAsInTheAvroExport() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO eval VALUES (8, 3, 5, NULL, NULL, '  ', NULL)");
+        }
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT status FROM eval WHERE anime_id = 3")) {
+            ColumnWriterPlan plan = ColumnWriterPlan.fromMetaData(rs.getMetaData(), null);
+            RecordConsumer rc = mock(RecordConsumer.class);
+            rs.next();
+
+            plan.write(rs, rc);
+
+            verify(rc, never()).startField(anyString(), anyInt());
+            verify(rc, never()).addBinary(any());
+        }
+    }
+
+    @Test
+    void writeParquet_emitsExportFileFlightEvent() throws Exception {
+        File out = new File(tmp, "events.parquet");
+        java.nio.file.Path jfr = new File(tmp, "export.jfr").toPath();
+
+        try (Recording recording = new Recording()) {
+            recording.enable("ParseThroughAPI.ExportFile");
+            recording.start();
+            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(QUERY)) {
+                SimpleDataExtract.writeParquet(rs, out, Set.of());
+            }
+            recording.stop();
+            recording.dump(jfr);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getLong("rows")).isEqualTo(2);
+        assertThat(events.get(0).getString("file")).isEqualTo(out.getPath());
+        assertThat(events.get(0).getLong("bytes")).isEqualTo(out.length());
+    }
+
+    @Test
+    void writeParquet_roundTripsValues() throws Exception {
+        File out = new File(tmp, "eval.parquet");
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(QUERY)) {
+            assertThat(SimpleDataExtract.writeParquet(rs, out, Set.of("USER_ID"))).isEqualTo(2);
+        }
+
+        List<GenericRecord> rows = new ArrayList<>();
+        try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(
+                HadoopInputFile.fromPath(new Path(out.getAbsolutePath()), new Configuration())).build()) {
+            for (GenericRecord r = reader.read(); r != null; r = reader.read()) rows.add(r);
+        }
+
+        assertThat(rows).hasSize(2);
+        GenericRecord first = rows.get(0);
+        assertThat(first.get("USER_ID").toString()).isEqualTo(IdAnonymizer.anonymizeId("7"));
+        assertThat(first.get("ANIME_ID")).isEqualTo(1L);
+        assertThat(first.get("SCORE")).isEqualTo(9);
+        assertThat(first.get("RATING")).isEqualTo(8.25);
+        assertThat(first.get("COMPLETED")).isEqualTo(true);
+        assertThat(first.get("STATUS").toString()).isEqualTo("completed");
+        assertThat(first.get("LAST_UPDATED").toString()).endsWith("Z");
+
+        GenericRecord second = rows.get(1);
+        assertThat(second.get("SCORE")).isNull();
+        assertThat(second.get("RATING")).isNull();
+        assertThat(second.get("STATUS")).isNull();
+        assertThat(second.get("LAST_UPDATED")).isNull();
+    }
+
+    @Test
+    void arrayElementType_readsPostgresAndH2TypeNames() {
+        assertThat(ColumnWriterPlan.arrayElementType("_int4")).isEqualTo(PrimitiveTypeName.INT32);
+        assertThat(ColumnWriterPlan.arrayElementType("_int8")).isEqualTo(PrimitiveTypeName.INT64);
+        assertThat(ColumnWriterPlan.arrayElementType("_text")).isEqualTo(PrimitiveTypeName.BINARY);
+        assertThat(ColumnWriterPlan.arrayElementType("INTEGER ARRAY")).isEqualTo(PrimitiveTypeName.INT32);
+        assertThat(ColumnWriterPlan.arrayElementType("CHARACTER VARYING ARRAY")).isEqualTo(PrimitiveTypeName.BINARY);
+        assertThat(ColumnWriterPlan.arrayElementType(null)).isEqualTo(PrimitiveTypeName.BINARY);
+    }
+}
@@ -0,0 +1,81 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CrawlCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopen_restoresPlanPagesAndUsers() throws Exception {
+        Path file = dir.resolve("job.journal");
+        try (CrawlCheckpoint cp = CrawlCheckpoint.open(file)) {
+            cp.setPlannedTotal(120);
+            cp.markPageDone(1);
+            cp.markPageDone(7);
+            cp.markPageDone(7);
+            cp.markUserDone(42);
+            cp.markUserDone(43);
+        }
+
+        try (CrawlCheckpoint cp = CrawlCheckpoint.open(file)) {
+            assertThat(cp.plannedTotal()).isEqualTo(120);
+            assertThat(cp.isPageDone(1)).isTrue();
+            assertThat(cp.isPageDone(2)).isFalse();
+            assertThat(cp.completedPages()).isEqualTo(2);
+            assertThat(cp.isUserDone(42)).isTrue();
+            assertThat(cp.completedUsers()).isEqualTo(2);
+        }
+        assertThat(Files.readAllLines(file)).hasSize(5);
+    }
+
+    @Test
+    void open_ignoresTornLastLine() throws Exception {
+        Path file = dir.resolve("job.journal");
+        Files.writeString(file, "plan,3\npage,2\npage,1", StandardCharsets.UTF_8);
+
+        try (CrawlCheckpoint cp = CrawlCheckpoint.open(file)) {
+            assertThat(cp.isPageDone(2)).isTrue();
+            assertThat(cp.isPageDone(1)).isFalse();
+            cp.markPageDone(3);
+        }
+
+        assertThat(Files.readAllLines(file)).containsExactly("plan,3", "page,2", "page,1", "page,3");
+    }
+
+    @Test
+    void complete_deletesJournal() throws Exception {
+        Path file = dir.resolve("job.journal");
+        CrawlCheckpoint cp = CrawlCheckpoint.open(file);
+        cp.markPageDone(1);
+
+        cp.complete();
+
+        assertThat(file).doesNotExist();
+        try (CrawlCheckpoint fresh = CrawlCheckpoint.open(file)) {
+            assertThat(fresh.completedPages()).isZero();
+            assertThat(fresh.plannedTotal()).isNull();
+        }
+    }
+
+    @Test
+    void open_skipsUnknownAndMalformedLines() throws Exception {
+        Path file = dir.resolve("job.journal");
+        Files.write(file, List.of("user,5", "bogus,1", "page,x", ","), StandardOpenOption.CREATE);
+
+        try (CrawlCheckpoint cp = CrawlCheckpoint.open(file)) {
+            assertThat(cp.completedUsers()).isEqualTo(1);
+            assertThat(cp.completedPages()).isZero();
+        }
+    }
+}
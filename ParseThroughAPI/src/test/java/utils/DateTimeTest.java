@@ -0,0 +1,72 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DateTimeTest {
+
+    private static final OffsetDateTime NOON = OffsetDateTime.of(2024, 6, 1, 12, 34, 56, 0, ZoneOffset.UTC);
+
+    @Test
+    void parseToOffsetDateTime_readsEveryIsoShapeInUtc() {
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T12:34:56Z")).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T12:34:56+00:00")).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T21:34:56+09:00")).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T07:04:56-05:30")).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime(" 2024-06-01T12:34:56 ")).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T12:34Z")).isEqualTo(NOON.withSecond(0));
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T12:34:56.125Z")).isEqualTo(NOON.withNano(125_000_000));
+    }
+
+    @Test
+    void parseToOffsetDateTime_readsEpochSecondsAndFallbackShapes() {
+        long epoch = NOON.toEpochSecond();
+        assertThat(DateTime.parseToOffsetDateTime(Long.toString(epoch))).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime(epoch)).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime(Long.valueOf(epoch))).isEqualTo(NOON);
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T24:00:00Z")).isEqualTo(OffsetDateTime.of(2024, 6, 2, 0, 0, 0, 0, ZoneOffset.UTC));
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-30T23:59:60Z")).isEqualTo(OffsetDateTime.of(2024, 6, 30, 23, 59, 59, 0, ZoneOffset.UTC));
+        assertThat(DateTime.parseToOffsetDateTime("Sat, 1 Jun 2024 12:34:56 GMT")).isEqualTo(NOON);
+    }
+
+    @Test
+    void parseToOffsetDateTime_returnsNullForInvalidInput() {
+        assertThat(DateTime.parseToOffsetDateTime((String) null)).isNull();
+        assertThat(DateTime.parseToOffsetDateTime((Long) null)).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("  ")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("2023-02-29T00:00:00Z")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T25:00:00Z")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T12:34:56+0000")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01T12:34:56+19:00")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("2024-06-01")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("9999999999999999999")).isNull();
+        assertThat(DateTime.parseToOffsetDateTime(Long.MAX_VALUE)).isNull();
+        assertThat(DateTime.parseToOffsetDateTime("garbage")).isNull();
+    }
+
+    @Test
+    void parseToLocalDate_readsDateShapes() {
+        LocalDate june = LocalDate.of(2024, 6, 1);
+        assertThat(DateTime.parseToLocalDate("2024-06-01")).isEqualTo(june);
+        assertThat(DateTime.parseToLocalDate("06-01-24")).isEqualTo(june);
+        assertThat(DateTime.parseToLocalDate("06-01-2024")).isEqualTo(june);
+        assertThat(DateTime.parseToLocalDate("02-30-24")).isEqualTo(LocalDate.of(2024, 2, 29));
+        assertThat(DateTime.parseToLocalDate("2024-06-01T23:00:00-05:00")).isEqualTo(june.plusDays(1));
+        assertThat(DateTime.parseToLocalDate(Long.toString(NOON.toEpochSecond()))).isEqualTo(june);
+        assertThat(DateTime.parseToLocalDate(NOON.toEpochSecond())).isEqualTo(june);
+    }
+
+    @Test
+    void parseToLocalDate_returnsNullForInvalidInput() {
+        assertThat(DateTime.parseToLocalDate("2024-02-30")).isNull();
+        assertThat(DateTime.parseToLocalDate("13-01-24")).isNull();
+        assertThat(DateTime.parseToLocalDate("02-32-24")).isNull();
+        assertThat(DateTime.parseToLocalDate("06-01-0000")).isNull();
+        assertThat(DateTime.parseToLocalDate("2024-6-1")).isNull();
+    }
+}
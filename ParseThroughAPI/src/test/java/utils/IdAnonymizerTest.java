@@ -0,0 +1,65 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdAnonymizerTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void anonymizeId_isDeterministic() {
+        String a = IdAnonymizer.anonymizeId("12345");
+
+        assertThat(IdAnonymizer.anonymizeId("12345")).isEqualTo(a);
+        assertThat(IdAnonymizer.anonymizeId("12346")).isNotEqualTo(a);
+        assertThat(a).hasSize(43).doesNotContain("=", "+", "/");
+    }
+
+    @Test
+    void anonymizeId_sameResultOnEveryThread() throws Exception {
+        String expected = IdAnonymizer.anonymizeId("777");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = pool.invokeAll(
+                    java.util.Collections.nCopies(16, () -> IdAnonymizer.anonymizeId("777")));
+            for (Future<String> r : results) assertThat(r.get()).isEqualTo(expected);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void loadKey_createsKeyFileOnceAndReusesIt() throws Exception {
+        Path keyFile = tmp.resolve("keys/anonymizer.key");
+
+        byte[] first = IdAnonymizer.loadKey(null, keyFile);
+        byte[] second = IdAnonymizer.loadKey(null, keyFile);
+
+        assertThat(first).hasSize(32);
+        assertThat(second).isEqualTo(first);
+        assertThat(Base64.getDecoder().decode(Files.readString(keyFile).trim())).isEqualTo(first);
+        if (keyFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(keyFile))).isEqualTo("rw-------");
+        }
+    }
+
+    @Test
+    void loadKey_prefersInlineKey() throws Exception {
+        Path keyFile = tmp.resolve("unused.key");
+        String inline = Base64.getEncoder().encodeToString("0123456789abcdef".getBytes());
+
+        assertThat(IdAnonymizer.loadKey(inline, keyFile)).isEqualTo("0123456789abcdef".getBytes());
+        assertThat(keyFile).doesNotExist();
+    }
+}
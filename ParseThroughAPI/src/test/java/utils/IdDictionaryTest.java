@@ -0,0 +1,54 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdDictionaryTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void indexOf_assignsDenseIndexesInFirstSeenOrder() throws Exception {
+        try (IdDictionary dictionary = IdDictionary.open(tmp.resolve("ids.csv"))) {
+            assertThat(dictionary.indexOf("b")).isZero();
+            assertThat(dictionary.indexOf("a")).isEqualTo(1);
+            assertThat(dictionary.indexOf("b")).isZero();
+            assertThat(dictionary.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void open_keepsIndexesAcrossRuns() throws Exception {
+        Path file = tmp.resolve("ids.csv");
+        try (IdDictionary dictionary = IdDictionary.open(file)) {
+            dictionary.indexOf("x");
+            dictionary.indexOf("y");
+        }
+
+        try (IdDictionary dictionary = IdDictionary.open(file)) {
+            assertThat(dictionary.indexOf("y")).isEqualTo(1);
+            assertThat(dictionary.indexOf("z")).isEqualTo(2);
+            assertThat(dictionary.indexOf("x")).isZero();
+        }
+    }
+
+    @Test
+    void open_skipsTornLastLine() throws Exception {
+        Path file = tmp.resolve("ids.csv");
+        Files.writeString(file, "x,0\ny,");
+
+        try (IdDictionary dictionary = IdDictionary.open(file)) {
+            assertThat(dictionary.size()).isEqualTo(1);
+            assertThat(dictionary.indexOf("y")).isEqualTo(1);
+        }
+        try (IdDictionary dictionary = IdDictionary.open(file)) {
+            assertThat(dictionary.indexOf("y")).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class MetricsTest {
+
+    @BeforeEach
+    void setUp() {
+        Metrics.resetForTests();
+    }
+
+    @Test
+    void timer_reportsCountMeanAndBucketedPercentiles() {
+        Metrics.Timer t = Metrics.timer("db.flush");
+        for (int i = 0; i < 99; i++) t.record(TimeUnit.MILLISECONDS.toNanos(1));
+        t.record(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertThat(t.count()).isEqualTo(100);
+        assertThat(t.meanMillis()).isCloseTo(1.99, within(1e-9));
+        assertThat(t.maxMillis()).isEqualTo(100.0);
+        // 1 ms falls into the (512us, 1024us] bucket
+        assertThat(t.percentileMillis(0.50)).isEqualTo(1.024);
+        assertThat(t.percentileMillis(0.99)).isEqualTo(1.024);
+        assertThat(t.percentileMillis(1.0)).isEqualTo(100.0);
+    }
+
+    @Test
+    void recordHttp_countsStatusClassesPerHost() {
+        Metrics.recordHttp("api.jikan.moe", 200, 1_000);
+        Metrics.recordHttp("api.jikan.moe", 429, 1_000);
+        Metrics.recordHttp("api.jikan.moe", 503, 1_000);
+        Metrics.recordHttp("api.jikan.moe", 503, 1_000);
+
+        assertThat(Metrics.snapshot())
+                .containsEntry("http.api.jikan.moe.status.2xx", 1L)
+                .containsEntry("http.api.jikan.moe.status.429", 1L)
+                .containsEntry("http.api.jikan.moe.status.5xx", 2L)
+                .containsEntry("http.api.jikan.moe.latency.count", 4L)
+                .doesNotContainKey("http.api.jikan.moe.status.4xx");
+    }
+
+    @Test
+    void summary_showsCounterGrowthSinceThePreviousSummary() {
+        Metrics.counter("export.rows").add(10);
+        Metrics.gauge("users.write.queue", () -> 3);
+        assertThat(Metrics.summary()).contains("export.rows = 10 (+10,").contains("users.write.queue = 3");
+
+        Metrics.counter("export.rows").add(5);
+        assertThat(Metrics.summary()).contains("export.rows = 15 (+5,");
+    }
+
+    @Test
+    void snapshot_reportsFailingGaugeAsMinusOne() {
+        Metrics.gauge("db.users.active", () -> { throw new IllegalStateException("pool closed"); });
+
+        assertThat(Metrics.snapshot()).containsEntry("db.users.active", -1L);
+    }
+
+    @Test
+    void mbean_exposesSnapshotAsAttributes() throws Exception {
+        Metrics.counter("anime.top.pages").add(7);
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        server.registerMBean(new Metrics.MetricsMBean(), name);
+
+        assertThat(server.getAttribute(name, "anime.top.pages")).isEqualTo(7L);
+        assertThat(Arrays.stream(server.getMBeanInfo(name).getAttributes()).map(a -> a.getName()))
+                .contains("anime.top.pages");
+    }
+}
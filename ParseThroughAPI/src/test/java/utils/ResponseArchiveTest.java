@@ -0,0 +1,72 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void store_thenLookup_returnsEntryAndBody() throws Exception {
+        ResponseArchive archive = new ResponseArchive(dir, ResponseArchive.Mode.RECORD);
+        byte[] body = "{\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+
+        archive.store("https://api.jikan.moe/v4/top/anime?page=1", 200,
+                Map.of("ETag", List.of("\"abc\""), "Set-Cookie", List.of("s=1"), "Content-Type", List.of("application/json")),
+                body);
+        ResponseArchive.Entry entry = archive.lookup("https://api.jikan.moe/v4/top/anime?page=1");
+
+        assertThat(entry.status()).isEqualTo(200);
+        assertThat(entry.header("ETag")).isEqualTo("\"abc\"");
+        assertThat(entry.header("Content-Type")).isEqualTo("application/json");
+        assertThat(entry.headers()).doesNotContainKey("set-cookie");
+        assertThat(entry.bodySha256()).isEqualTo(ResponseArchive.sha256(body));
+        assertThat(entry.fetchedAt()).endsWith("Z");
+        assertThat(archive.readBody(entry)).isEqualTo(body);
+        assertThat(archive.lookup("https://api.jikan.moe/v4/top/anime?page=2")).isNull();
+    }
+
+    @Test
+    void store_identicalBodies_areKeptOnce() throws Exception {
+        ResponseArchive archive = new ResponseArchive(dir, ResponseArchive.Mode.RECORD);
+        byte[] body = "{\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+
+        archive.store("https://a/1", 200, Map.of(), body);
+        archive.store("https://a/2", 200, Map.of(), body);
+
+        try (Stream<Path> files = Files.walk(dir.resolve("bodies"))) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(1);
+        }
+        try (Stream<Path> files = Files.walk(dir.resolve("index"))) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void store_skipsTransientResponses() throws Exception {
+        ResponseArchive archive = new ResponseArchive(dir, ResponseArchive.Mode.RECORD);
+
+        assertThat(archive.store("https://a/429", 429, Map.of(), new byte[0])).isNull();
+        assertThat(archive.store("https://a/503", 503, Map.of(), new byte[0])).isNull();
+        assertThat(archive.store("https://a/404", 404, Map.of(), new byte[0])).isNotNull();
+
+        assertThat(archive.lookup("https://a/429")).isNull();
+        assertThat(archive.lookup("https://a/404").status()).isEqualTo(404);
+    }
+
+    @Test
+    void fromConfig_defaultsToDisabled() {
+        assertThat(ResponseArchive.fromConfig().isEnabled()).isFalse();
+    }
+}
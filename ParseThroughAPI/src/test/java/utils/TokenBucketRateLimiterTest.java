@@ -0,0 +1,81 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TokenBucketRateLimiterTest {
+
+    @Test
+    void burstIsServedWithoutWaiting() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1.0, 3, 0);
+
+        assertThat(limiter.acquire()).isZero();
+        assertThat(limiter.acquire()).isZero();
+        assertThat(limiter.acquire()).isZero();
+        assertThat(limiter.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void reserveReturnsWaitOnceBucketIsEmpty() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10.0, 1, 0);
+
+        assertThat(limiter.reserve()).isZero();
+        long second = limiter.reserve();
+        long third = limiter.reserve();
+
+        assertThat(second).isBetween(TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(third).isGreaterThan(second);
+    }
+
+    @Test
+    void concurrentCallersGetDistinctSlots() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(200.0, 1, 0);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            pool.submit(() -> {
+                start.await();
+                for (int j = 0; j < 5; j++) limiter.acquire();
+                done.incrementAndGet();
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertThat(done.get()).isEqualTo(threads);
+        // 40 permits at 200/s with a burst of 1 can't finish faster than ~195 ms
+        assertThat(elapsedMs).isGreaterThanOrEqualTo(180);
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(1, 0, 0));
+    }
+
+    @Test
+    void knownHostsResolveToSharedBuckets() {
+        TokenBucketRateLimiter jikan = HostRateLimiters.forUrl("https://api.jikan.moe/v4/top/anime?page=1");
+        TokenBucketRateLimiter mal = HostRateLimiters.forUrl("https://myanimelist.net/animelist/x/load.json");
+
+        assertThat(jikan).isNotNull();
+        assertThat(mal).isNotNull().isNotSameAs(jikan);
+        assertThat(HostRateLimiters.forUrl("https://www.myanimelist.net/profile/x")).isSameAs(mal);
+        assertThat(HostRateLimiters.forUrl("http://localhost:8080/v4")).isNull();
+    }
+}